@@ -0,0 +1,4 @@
+-- Partial index for the bulk expiry sweep (OtpCodeRepository.expireBefore)
+-- Created: 2025-06-14 12:00:00
+
+CREATE INDEX idx_otp_codes_active_expires_at ON otp_codes(expires_at) WHERE status = 'ACTIVE';
@@ -0,0 +1,4 @@
+-- Partial index for the single-statement OTP consume (OtpCodeRepository.consume)
+-- Created: 2025-06-15 12:00:00
+
+CREATE INDEX idx_otp_codes_active_user_code ON otp_codes(user_id, code) WHERE status = 'ACTIVE';
@@ -0,0 +1,50 @@
+-- Range partitioning of otp_codes by created_at, one partition per day.
+-- Future partitions are created and old ones dropped by OtpPartitionMaintenanceTask.
+-- Created: 2025-06-16 12:00:00
+
+ALTER TABLE otp_codes RENAME TO otp_codes_legacy;
+ALTER TABLE otp_codes_legacy RENAME CONSTRAINT otp_codes_pkey TO otp_codes_legacy_pkey;
+
+-- The partition key has to be part of the primary key
+CREATE TABLE otp_codes (
+    id UUID NOT NULL DEFAULT uuid_generate_v4(),
+    user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    code VARCHAR(8) NOT NULL,
+    operation_id VARCHAR(255),
+    status VARCHAR(20) NOT NULL DEFAULT 'ACTIVE' CHECK (status IN ('ACTIVE', 'EXPIRED', 'USED')),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP NOT NULL,
+    used_at TIMESTAMP,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+-- Daily partitions from the oldest existing code up to a week ahead
+DO $$
+DECLARE
+    first_day DATE := LEAST(
+        COALESCE((SELECT MIN(created_at)::date FROM otp_codes_legacy), CURRENT_DATE), CURRENT_DATE);
+    partition_day DATE;
+BEGIN
+    FOR partition_day IN
+        SELECT generate_series(first_day, CURRENT_DATE + 7, INTERVAL '1 day')::date
+    LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF otp_codes FOR VALUES FROM (%L) TO (%L)',
+                       'otp_codes_p' || to_char(partition_day, 'YYYYMMDD'),
+                       partition_day, partition_day + 1);
+    END LOOP;
+END $$;
+
+-- Safety net for rows outside the pre-created range; never dropped by retention
+CREATE TABLE otp_codes_default PARTITION OF otp_codes DEFAULT;
+
+INSERT INTO otp_codes (id, user_id, code, operation_id, status, created_at, expires_at, used_at)
+SELECT id, user_id, code, operation_id, status, COALESCE(created_at, CURRENT_TIMESTAMP), expires_at, used_at
+FROM otp_codes_legacy;
+
+DROP TABLE otp_codes_legacy;
+
+-- Indexes are created per partition; plain status/expires_at indexes are covered by the partial ones
+CREATE INDEX idx_otp_codes_code ON otp_codes(code);
+CREATE INDEX idx_otp_codes_user_id ON otp_codes(user_id);
+CREATE INDEX idx_otp_codes_active_expires_at ON otp_codes(expires_at) WHERE status = 'ACTIVE';
+CREATE INDEX idx_otp_codes_active_user_code ON otp_codes(user_id, code) WHERE status = 'ACTIVE';
@@ -0,0 +1,4 @@
+-- Index for keyset pagination of users by (created_at, id) (UserRepository.findAll / findAllExceptAdmins)
+-- Created: 2025-06-17 12:00:00
+
+CREATE INDEX idx_users_created_at_id ON users(created_at, id);
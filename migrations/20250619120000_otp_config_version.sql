@@ -0,0 +1,18 @@
+-- Versioned OTP configuration: nodes keep the config in memory and reload it on otp_config_changed
+-- Created: 2025-06-19 12:00:00
+
+ALTER TABLE otp_config ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
+
+-- Config version each code was generated with (NULL for codes created before this migration)
+ALTER TABLE otp_codes ADD COLUMN config_version BIGINT;
+
+CREATE OR REPLACE FUNCTION notify_otp_config_changed() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('otp_config_changed', NEW.version::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER otp_config_changed_notify
+    AFTER INSERT OR UPDATE ON otp_config
+    FOR EACH ROW EXECUTE FUNCTION notify_otp_config_changed();
@@ -0,0 +1,22 @@
+-- Revoked subjects: tokens of the subject issued at or before revoked_at are rejected.
+-- A row is useless after expires_at (revoked_at + token lifetime) and can be deleted
+-- Created: 2025-06-20 12:00:00
+
+CREATE TABLE token_revocations (
+    subject VARCHAR(255) PRIMARY KEY,
+    revoked_at TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_token_revocations_expires_at ON token_revocations (expires_at);
+
+CREATE OR REPLACE FUNCTION notify_token_revoked() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('token_revoked', NEW.subject);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER token_revoked_notify
+    AFTER INSERT OR UPDATE ON token_revocations
+    FOR EACH ROW EXECUTE FUNCTION notify_token_revoked();
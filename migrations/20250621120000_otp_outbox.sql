@@ -0,0 +1,34 @@
+-- Transactional outbox for OTP delivery: a row is inserted in the same transaction as its
+-- otp_codes row and deleted once the code has been delivered. Dispatchers claim PENDING rows
+-- with FOR UPDATE SKIP LOCKED and lease them by moving available_at forward; a row whose
+-- dispatcher died becomes claimable again when the lease runs out
+-- Created: 2025-06-21 12:00:00
+
+CREATE TABLE otp_outbox (
+    id UUID PRIMARY KEY,
+    -- otp_codes is partitioned, so its primary key is (id, created_at) and cannot be referenced here
+    otp_code_id UUID NOT NULL,
+    channel VARCHAR(20) NOT NULL,
+    destination VARCHAR(255) NOT NULL,
+    code VARCHAR(8) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    attempts INTEGER NOT NULL DEFAULT 0,
+    available_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    last_error VARCHAR(500)
+);
+
+CREATE INDEX idx_otp_outbox_pending ON otp_outbox (available_at) WHERE status = 'PENDING';
+
+-- One notification per inserting statement wakes idle dispatchers; they poll as a fallback
+CREATE OR REPLACE FUNCTION notify_otp_outbox() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('otp_outbox', '');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER otp_outbox_notify
+    AFTER INSERT ON otp_outbox
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_otp_outbox();
@@ -0,0 +1,11 @@
+-- Hedged delivery: an outbox row may carry fallback destinations that are tried in order when
+-- the primary channel has not delivered within the latency budget. The channel that delivered
+-- first is recorded on the code
+-- Created: 2025-06-22 12:00:00
+
+-- JSON array of {"channel", "destination"}; NULL when the code goes to the primary channel only
+ALTER TABLE otp_outbox ADD COLUMN fallbacks TEXT;
+-- NULL means the budget follows the primary channel's recent p99 delivery latency
+ALTER TABLE otp_outbox ADD COLUMN latency_budget_ms INTEGER;
+
+ALTER TABLE otp_codes ADD COLUMN delivered_channel VARCHAR(20);
@@ -0,0 +1,9 @@
+-- Outbox rows must not keep plaintext codes once they are no longer needed: a FAILED row drops
+-- its code, and rows whose code expired are purged in batches by the scheduler
+-- Created: 2025-06-23 12:00:00
+
+ALTER TABLE otp_outbox ALTER COLUMN code DROP NOT NULL;
+
+UPDATE otp_outbox SET code = NULL WHERE status = 'FAILED';
+
+CREATE INDEX idx_otp_outbox_expires_at ON otp_outbox (expires_at);
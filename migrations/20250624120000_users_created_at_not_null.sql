@@ -0,0 +1,8 @@
+-- users.created_at is the first key of keyset pagination (idx_users_created_at_id); a NULL there
+-- cannot be put in a cursor and is never matched by (created_at, id) > (?, ?), so such rows were skipped.
+-- Rows without it take their updated_at, or the migration time, as repository code always sets it
+-- Created: 2025-06-24 12:00:00
+
+UPDATE users SET created_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE created_at IS NULL;
+
+ALTER TABLE users ALTER COLUMN created_at SET NOT NULL;
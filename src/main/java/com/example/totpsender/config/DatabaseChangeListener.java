@@ -0,0 +1,188 @@
+package com.example.totpsender.config;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Delivers Postgres NOTIFY messages to in-memory caches on every node. Uses its own connection
+// outside the pool, since LISTEN only lasts as long as the session that issued it
+public class DatabaseChangeListener implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseChangeListener.class);
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int pollMillis;
+    private final long reconnectDelayMillis;
+    private final Map<String, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile Connection connection;
+    private Thread worker;
+
+    public DatabaseChangeListener(String url, String username, String password,
+                                  int pollMillis, long reconnectDelayMillis) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.pollMillis = pollMillis;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+    }
+
+    // onMessage gets the NOTIFY payload. onReset runs whenever notifications may have been missed
+    // (first connect and every reconnect), so the subscriber must drop everything it has cached
+    public void subscribe(String channel, Consumer<String> onMessage, Runnable onReset) {
+        if (running) {
+            throw new IllegalStateException("Subscriptions must be registered before the listener starts");
+        }
+        if (!channel.matches("[a-z_]+")) {
+            throw new IllegalArgumentException("Invalid notification channel: " + channel);
+        }
+        subscriptions.computeIfAbsent(channel, key -> new CopyOnWriteArrayList<>())
+                .add(new Subscription(onMessage, onReset));
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::listenLoop, "db-change-listener");
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("Database change listener started for channels: {}", subscriptions.keySet());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(pollMillis * 2L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeConnection();
+        logger.info("Database change listener stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isConnected() {
+        return connection != null;
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try {
+                if (connection == null) {
+                    connect();
+                }
+
+                PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(pollMillis);
+                if (notifications != null) {
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getName(), notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    break;
+                }
+                logger.warn("Database change listener lost its connection, reconnecting in {} ms: {}",
+                        reconnectDelayMillis, e.getMessage());
+                closeConnection();
+                sleepBeforeReconnect();
+            }
+        }
+    }
+
+    private void connect() throws SQLException {
+        Connection newConnection = DriverManager.getConnection(url, username, password);
+        try (Statement stmt = newConnection.createStatement()) {
+            for (String channel : subscriptions.keySet()) {
+                stmt.execute("LISTEN " + channel);
+            }
+        } catch (SQLException e) {
+            newConnection.close();
+            throw e;
+        }
+        connection = newConnection;
+
+        // Anything sent while we were not listening is lost
+        for (List<Subscription> channelSubscriptions : subscriptions.values()) {
+            for (Subscription subscription : channelSubscriptions) {
+                runSafely(subscription.onReset);
+            }
+        }
+        logger.info("Listening for database changes on channels: {}", subscriptions.keySet());
+    }
+
+    private void dispatch(String channel, String payload) {
+        List<Subscription> channelSubscriptions = subscriptions.get(channel);
+        if (channelSubscriptions == null) {
+            return;
+        }
+        logger.debug("Database change on {}: {}", channel, payload);
+        for (Subscription subscription : channelSubscriptions) {
+            runSafely(() -> subscription.onMessage.accept(payload));
+        }
+    }
+
+    private void runSafely(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            logger.error("Database change subscriber failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(reconnectDelayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeConnection() {
+        Connection current = connection;
+        connection = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (SQLException e) {
+                logger.debug("Error closing database change listener connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static class Subscription {
+        private final Consumer<String> onMessage;
+        private final Runnable onReset;
+
+        private Subscription(Consumer<String> onMessage, Runnable onReset) {
+            this.onMessage = onMessage;
+            this.onReset = onReset;
+        }
+    }
+}
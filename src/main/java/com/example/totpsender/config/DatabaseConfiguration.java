@@ -1,7 +1,11 @@
 package com.example.totpsender.config;
 
 import com.example.totpsender.util.PropertiesLoader;
-import org.postgresql.ds.PGSimpleDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
@@ -16,46 +20,106 @@ import java.util.Properties;
 public class DatabaseConfiguration {
 
     private static final Logger logger = LoggerFactory.getLogger(DatabaseConfiguration.class);
-    private static DataSource dataSource;
+    private static final String POOL_NAME = "totp-sender-pool";
+
+    private static HikariDataSource dataSource;
 
     public DatabaseConfiguration() {
         // Public constructor required for Spring @Configuration
     }
 
-    @Bean
+    // The pool is closed through closeDataSource(), not by Spring's inferred close()
+    @Bean(destroyMethod = "")
     @Primary
-    public DataSource dataSource() {
-        return getDataSource();
+    public DataSource dataSource(MeterRegistry meterRegistry) {
+        return getDataSource(meterRegistry);
+    }
+
+    // Stopped as a SmartLifecycle; it holds its own connection, not one from the pool
+    @Bean(destroyMethod = "")
+    public DatabaseChangeListener databaseChangeListener() {
+        Properties props = PropertiesLoader.loadProperties("database.properties");
+        return new DatabaseChangeListener(
+                props.getProperty("db.url"),
+                props.getProperty("db.username"),
+                props.getProperty("db.password"),
+                Integer.parseInt(props.getProperty("db.listener.poll_millis", "500")),
+                Long.parseLong(props.getProperty("db.listener.reconnect_delay_millis", "5000")));
     }
 
     public static synchronized DataSource getDataSource() {
-        if (dataSource == null) {
-            dataSource = createDataSource();
+        return getDataSource(null);
+    }
+
+    private static synchronized DataSource getDataSource(MeterRegistry meterRegistry) {
+        if (dataSource == null || dataSource.isClosed()) {
+            dataSource = createDataSource(meterRegistry);
         }
         return dataSource;
     }
 
-        public static DataSource createDataSource() {
-        logger.info("Initializing database connection...");
+    public static HikariDataSource createDataSource() {
+        return createDataSource(null);
+    }
+
+    public static HikariDataSource createDataSource(MeterRegistry meterRegistry) {
+        logger.info("Initializing database connection pool...");
 
         Properties props = PropertiesLoader.loadProperties("database.properties");
 
         String dbUrl = props.getProperty("db.url");
         String dbUsername = props.getProperty("db.username");
-        String dbPassword = props.getProperty("db.password");
 
         logger.info("Database properties loaded: url={}, username={}", dbUrl, dbUsername);
 
-        PGSimpleDataSource dataSource = new PGSimpleDataSource();
-        dataSource.setUrl(dbUrl);
-        dataSource.setUser(dbUsername);
-        dataSource.setPassword(dbPassword);
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(POOL_NAME);
+        config.setJdbcUrl(dbUrl);
+        config.setUsername(dbUsername);
+        config.setPassword(props.getProperty("db.password"));
+        config.setDriverClassName(props.getProperty("db.driver", "org.postgresql.Driver"));
 
-        logger.info("Database connection initialized successfully");
-        return dataSource;
+        config.setMaximumPoolSize(Integer.parseInt(props.getProperty("db.pool.maximumPoolSize", "10")));
+        config.setMinimumIdle(Integer.parseInt(props.getProperty("db.pool.minimumIdle", "2")));
+        config.setConnectionTimeout(Long.parseLong(props.getProperty("db.pool.connectionTimeout", "30000")));
+        config.setIdleTimeout(Long.parseLong(props.getProperty("db.pool.idleTimeout", "600000")));
+        config.setMaxLifetime(Long.parseLong(props.getProperty("db.pool.maxLifetime", "1800000")));
+
+        // Lets JDBC batches (OtpOutboxRepository.saveAllWithCodes) go out as multi-row INSERTs
+        config.addDataSourceProperty("reWriteBatchedInserts", "true");
+
+        // Publishes hikaricp.connections.{active,idle,pending,acquire,timeout}
+        if (meterRegistry != null) {
+            config.setMetricRegistry(meterRegistry);
+        }
+
+        HikariDataSource pool = new HikariDataSource(config);
+
+        logger.info("Database connection pool initialized: maxPoolSize={}, minIdle={}",
+                config.getMaximumPoolSize(), config.getMinimumIdle());
+        return pool;
+    }
+
+    public static synchronized void closeDataSource() {
+        if (dataSource == null || dataSource.isClosed()) {
+            logger.info("Database connection pool already closed");
+            return;
+        }
+
+        HikariPoolMXBean poolStats = dataSource.getHikariPoolMXBean();
+        if (poolStats != null) {
+            logger.info("Draining database connection pool: active={}, idle={}, pending={}",
+                    poolStats.getActiveConnections(), poolStats.getIdleConnections(),
+                    poolStats.getThreadsAwaitingConnection());
+        }
+
+        dataSource.close();
+        dataSource = null;
+        logger.info("Database connection pool closed");
     }
 
-    public static void closeDataSource() {
-        logger.info("Database connection cleanup (no action needed for PGSimpleDataSource)");
+    @PreDestroy
+    public void shutdown() {
+        closeDataSource();
     }
 }
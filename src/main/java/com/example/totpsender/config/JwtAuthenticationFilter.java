@@ -1,5 +1,7 @@
 package com.example.totpsender.config;
 
+import com.example.totpsender.model.UserPrincipal;
+import com.example.totpsender.service.TokenRevocationService;
 import com.example.totpsender.util.JwtUtil;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -15,15 +17,18 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
     private final JwtUtil jwtUtil;
+    private final TokenRevocationService tokenRevocationService;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, ServiceFactory serviceFactory) {
         this.jwtUtil = jwtUtil;
+        this.tokenRevocationService = serviceFactory.getTokenRevocationService();
     }
 
     @Override
@@ -36,21 +41,28 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String token = authHeader.substring(7);
 
             try {
-                if (jwtUtil.validateToken(token)) {
-                    String username = jwtUtil.extractUsername(token);
-                    String role = jwtUtil.extractRole(token);
+                // One signature check per request; controllers receive the result as @AuthenticationPrincipal
+                Optional<UserPrincipal> principal = jwtUtil.parseToken(token);
 
-                    if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                        List<SimpleGrantedAuthority> authorities = List.of(
-                            new SimpleGrantedAuthority("ROLE_" + role.toUpperCase())
-                        );
+                // In-memory check, also for tokens answered from the verified-token cache
+                if (principal.isPresent() && tokenRevocationService.isRevoked(principal.get())) {
+                    logger.warn("Rejected revoked token of user: {}", principal.get().getUsername());
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    response.getWriter().write("{\"error\":\"Token revoked\"}");
+                    return;
+                }
+
+                if (principal.isPresent() && SecurityContextHolder.getContext().getAuthentication() == null) {
+                    String role = principal.get().getRole();
+                    List<SimpleGrantedAuthority> authorities = List.of(
+                        new SimpleGrantedAuthority("ROLE_" + role.toUpperCase())
+                    );
 
-                        UsernamePasswordAuthenticationToken authToken =
-                            new UsernamePasswordAuthenticationToken(username, null, authorities);
+                    UsernamePasswordAuthenticationToken authToken =
+                        new UsernamePasswordAuthenticationToken(principal.get(), null, authorities);
 
-                        SecurityContextHolder.getContext().setAuthentication(authToken);
-                        logger.debug("Authenticated user: {} with role: {}", username, role);
-                    }
+                    SecurityContextHolder.getContext().setAuthentication(authToken);
+                    logger.debug("Authenticated user: {} with role: {}", principal.get().getUsername(), role);
                 }
             } catch (Exception e) {
                 logger.warn("JWT validation failed: {}", e.getMessage());
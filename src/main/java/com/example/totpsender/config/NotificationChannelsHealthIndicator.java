@@ -0,0 +1,31 @@
+package com.example.totpsender.config;
+
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.service.NotificationChannelRegistry;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Reported as "notificationChannels" under /actuator/health. One unavailable channel is only a detail;
+// the node is DOWN when no channel can deliver codes at all
+@Component
+public class NotificationChannelsHealthIndicator implements HealthIndicator {
+
+    private final NotificationChannelRegistry registry;
+
+    public NotificationChannelsHealthIndicator(ServiceFactory serviceFactory) {
+        this.registry = serviceFactory.getNotificationChannelRegistry();
+    }
+
+    @Override
+    public Health health() {
+        Map<NotificationChannel, Boolean> availability = registry.getAvailability();
+        Health.Builder builder = availability.containsValue(true) ? Health.up() : Health.down();
+        for (Map.Entry<NotificationChannel, Boolean> entry : availability.entrySet()) {
+            builder.withDetail(entry.getKey().name(), entry.getValue() ? "available" : "unavailable");
+        }
+        return builder.build();
+    }
+}
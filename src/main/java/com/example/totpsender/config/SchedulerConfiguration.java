@@ -0,0 +1,25 @@
+package com.example.totpsender.config;
+
+import com.example.totpsender.service.OtpOutboxDispatcher;
+import com.example.totpsender.service.ScheduledTaskService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class SchedulerConfiguration {
+
+    // Stopped as a SmartLifecycle, which happens before any bean (including the pool) is destroyed
+    @Bean(destroyMethod = "")
+    public ScheduledTaskService scheduledTaskService(DataSource dataSource) {
+        return new ScheduledTaskService(dataSource);
+    }
+
+    // Built by ServiceFactory, which also subscribes it to otp_outbox notifications;
+    // registered here so its lifecycle stops it before the channels and the pool are closed
+    @Bean(destroyMethod = "")
+    public OtpOutboxDispatcher otpOutboxDispatcher(ServiceFactory serviceFactory) {
+        return serviceFactory.getOtpOutboxDispatcher();
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.totpsender.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -33,17 +34,25 @@ public class SecurityConfig {
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                // Завершение потоковых ответов (bulk-генерация); доступ уже проверен на исходном запросе
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                 // Публичные эндпоинты
                 .requestMatchers(HttpMethod.POST, "/auth/register").permitAll()
                 .requestMatchers(HttpMethod.POST, "/auth/login").permitAll()
 
                 // Эндпоинты пользователей (требуют аутентификации)
                 .requestMatchers(HttpMethod.POST, "/user/otp/generate").hasAnyRole("USER", "ADMIN")
+                .requestMatchers(HttpMethod.POST, "/user/otp/generate/bulk").hasAnyRole("USER", "ADMIN")
                 .requestMatchers(HttpMethod.POST, "/user/otp/validate").hasAnyRole("USER", "ADMIN")
 
                 // Эндпоинты администратора
                 .requestMatchers("/admin/**").hasRole("ADMIN")
 
+                // Метрики и health-check
+                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
+
                 // Все остальные требуют аутентификации
                 .anyRequest().authenticated()
             )
@@ -1,18 +1,35 @@
 package com.example.totpsender.config;
 
+import com.example.totpsender.model.NotificationChannel;
 import com.example.totpsender.repository.OtpCodeRepository;
 import com.example.totpsender.repository.OtpConfigRepository;
+import com.example.totpsender.repository.OtpOutboxRepository;
+import com.example.totpsender.repository.TokenRevocationRepository;
 import com.example.totpsender.repository.UserRepository;
+import com.example.totpsender.repository.impl.CachingUserRepository;
+import com.example.totpsender.repository.impl.GroupCommitOtpOutboxRepository;
 import com.example.totpsender.repository.impl.OtpCodeRepositoryImpl;
 import com.example.totpsender.repository.impl.OtpConfigRepositoryImpl;
+import com.example.totpsender.repository.impl.OtpOutboxRepositoryImpl;
+import com.example.totpsender.repository.impl.TokenRevocationRepositoryImpl;
 import com.example.totpsender.repository.impl.UserRepositoryImpl;
 import com.example.totpsender.service.*;
+import com.example.totpsender.util.AdaptiveConcurrencyLimit;
 import com.example.totpsender.util.JwtUtil;
+import com.example.totpsender.util.PropertiesLoader;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 @Component
 public class ServiceFactory {
@@ -23,29 +40,227 @@ public class ServiceFactory {
     private final UserRepository userRepository;
     private final OtpConfigRepository otpConfigRepository;
     private final OtpCodeRepository otpCodeRepository;
+    private final TokenRevocationRepository tokenRevocationRepository;
+    private final OtpOutboxRepository otpOutboxRepository;
 
     // Utilities
     private final JwtUtil jwtUtil;
+    private final PasswordHasher passwordHasher;
 
     // Services
     private final AuthService authService;
     private final UserService userService;
     private final OtpConfigService otpConfigService;
+    private final TokenRevocationService tokenRevocationService;
     private final OtpService otpService;
+    private final BulkOtpService bulkOtpService;
+    private final NotificationChannelRegistry notificationChannelRegistry;
+    private final OtpOutboxDispatcher otpOutboxDispatcher;
 
-    public ServiceFactory(DataSource dataSource) {
+    public ServiceFactory(DataSource dataSource, MeterRegistry meterRegistry, DatabaseChangeListener changeListener,
+                          JwtUtil jwtUtil) {
         logger.info("Initializing ServiceFactory...");
-        this.userRepository = new UserRepositoryImpl(dataSource);
+        this.userRepository = createUserRepository(dataSource, meterRegistry, changeListener);
         this.otpConfigRepository = new OtpConfigRepositoryImpl(dataSource);
         this.otpCodeRepository = new OtpCodeRepositoryImpl(dataSource);
-        this.jwtUtil = new JwtUtil();
+        this.tokenRevocationRepository = new TokenRevocationRepositoryImpl(dataSource);
+        this.otpOutboxRepository = createOtpOutboxRepository(dataSource, meterRegistry);
+        this.jwtUtil = jwtUtil;
         this.otpConfigService = new OtpConfigService(otpConfigRepository);
-        this.authService = new AuthService(userRepository, jwtUtil);
-        this.userService = new UserService(userRepository, otpCodeRepository);
-        this.otpService = new OtpService(otpCodeRepository, otpConfigService);
+        changeListener.subscribe("otp_config_changed",
+                version -> otpConfigService.onConfigChanged(Long.parseLong(version)),
+                otpConfigService::reload);
+        this.tokenRevocationService = createTokenRevocationService(tokenRevocationRepository, jwtUtil, meterRegistry);
+        changeListener.subscribe("token_revoked",
+                tokenRevocationService::onRevoked,
+                tokenRevocationService::reload);
+        this.passwordHasher = createPasswordHasher(meterRegistry);
+        this.authService = new AuthService(userRepository, jwtUtil, passwordHasher);
+        this.userService = new UserService(userRepository, otpCodeRepository, tokenRevocationService);
+        this.otpService = new OtpService(otpCodeRepository, otpConfigService, otpOutboxRepository,
+                partitionRetention());
+        this.notificationChannelRegistry = createNotificationChannelRegistry(meterRegistry);
+        this.otpOutboxDispatcher = createOtpOutboxDispatcher(dataSource, notificationChannelRegistry, meterRegistry);
+        changeListener.subscribe("otp_outbox",
+                payload -> otpOutboxDispatcher.wakeUp(),
+                otpOutboxDispatcher::wakeUp);
+        this.bulkOtpService = new BulkOtpService(userRepository, otpService, notificationChannelRegistry,
+                BulkOtpService.DEFAULT_CHUNK_SIZE);
         logger.info("ServiceFactory initialized successfully");
     }
 
+    // Same setting the partition maintenance and cleanup tasks use
+    private static Duration partitionRetention() {
+        Properties props = PropertiesLoader.loadProperties("scheduler.properties");
+        return Duration.ofDays(Integer.parseInt(props.getProperty("otp.partition.retention.days", "7")));
+    }
+
+    private static UserRepository createUserRepository(DataSource dataSource, MeterRegistry meterRegistry,
+                                                       DatabaseChangeListener changeListener) {
+        UserRepository repository = new UserRepositoryImpl(dataSource);
+
+        Properties props = PropertiesLoader.loadProperties("cache.properties");
+        if (!Boolean.parseBoolean(props.getProperty("user.cache.enabled", "true"))) {
+            return repository;
+        }
+
+        CachingUserRepository cachingRepository = new CachingUserRepository(
+                repository,
+                Long.parseLong(props.getProperty("user.cache.maximum_size", "10000")),
+                Duration.ofSeconds(Long.parseLong(props.getProperty("user.cache.ttl_seconds", "300"))),
+                meterRegistry);
+
+        // The users trigger sends the id of every updated or deleted user, including from other nodes
+        changeListener.subscribe("users_changed",
+                id -> cachingRepository.invalidate(UUID.fromString(id)),
+                cachingRepository::invalidateAll);
+        return cachingRepository;
+    }
+
+    private static NotificationChannelRegistry createNotificationChannelRegistry(MeterRegistry meterRegistry) {
+        Properties props = PropertiesLoader.loadProperties("notification.properties");
+        Map<NotificationChannel, Supplier<? extends NotificationService>> factories =
+                new EnumMap<>(NotificationChannel.class);
+        factories.put(NotificationChannel.EMAIL,
+                decorate(NotificationChannel.EMAIL, EmailNotificationService::new, props, meterRegistry));
+        factories.put(NotificationChannel.SMS,
+                decorate(NotificationChannel.SMS, SmsNotificationService::new, props, meterRegistry));
+        factories.put(NotificationChannel.TELEGRAM,
+                decorate(NotificationChannel.TELEGRAM, TelegramNotificationService::new, props, meterRegistry));
+        factories.put(NotificationChannel.FILE,
+                decorate(NotificationChannel.FILE, FileNotificationService::new, props, meterRegistry));
+        return new NotificationChannelRegistry(factories);
+    }
+
+    // Each channel gets its own threads, so a hung provider cannot block sends on the other channels
+    // Outermost first: retries and circuit breaker, adaptive concurrency limit, bulkhead. An open circuit
+    // refuses a send before it counts against the limit or queues for a channel thread, backoff sleeps
+    // hold neither, and the limit sees each attempt's own latency
+    private static Supplier<NotificationService> decorate(NotificationChannel channel,
+                                                          Supplier<? extends NotificationService> factory,
+                                                          Properties props, MeterRegistry meterRegistry) {
+        Supplier<NotificationService> limited = withAdaptiveLimit(channel,
+                withBulkhead(channel, factory, props, meterRegistry), props, meterRegistry);
+        String prefix = "notification." + channel.name().toLowerCase() + ".";
+        return () -> new ResilientNotificationService(
+                limited.get(),
+                channel,
+                Integer.parseInt(props.getProperty(prefix + "retry.max_attempts", "3")),
+                Long.parseLong(props.getProperty(prefix + "retry.base_delay_millis", "200")),
+                Long.parseLong(props.getProperty(prefix + "retry.max_delay_millis", "2000")),
+                Integer.parseInt(props.getProperty(prefix + "circuit.failure_threshold", "5")),
+                Long.parseLong(props.getProperty(prefix + "circuit.open_millis", "30000")),
+                meterRegistry);
+    }
+
+    private static Supplier<NotificationService> withAdaptiveLimit(NotificationChannel channel,
+                                                                   Supplier<NotificationService> factory,
+                                                                   Properties props, MeterRegistry meterRegistry) {
+        String prefix = "notification." + channel.name().toLowerCase() + ".limit.";
+        if (!Boolean.parseBoolean(props.getProperty(prefix + "enabled", "true"))) {
+            return factory;
+        }
+        return () -> new AdaptiveConcurrencyNotificationService(
+                factory.get(),
+                channel,
+                new AdaptiveConcurrencyLimit(
+                        Integer.parseInt(props.getProperty(prefix + "initial", "4")),
+                        Integer.parseInt(props.getProperty(prefix + "min", "1")),
+                        Integer.parseInt(props.getProperty(prefix + "max", "40")),
+                        Double.parseDouble(props.getProperty(prefix + "backoff_ratio", "0.9")),
+                        Long.parseLong(props.getProperty(prefix + "probe_interval_millis", "60000")),
+                        Integer.parseInt(props.getProperty(prefix + "probe_samples", "5"))),
+                meterRegistry);
+    }
+
+    private static Supplier<NotificationService> withBulkhead(NotificationChannel channel,
+                                                              Supplier<? extends NotificationService> factory,
+                                                              Properties props, MeterRegistry meterRegistry) {
+        String prefix = "notification." + channel.name().toLowerCase() + ".bulkhead.";
+        if (!Boolean.parseBoolean(props.getProperty(prefix + "enabled", "true"))) {
+            return factory::get;
+        }
+        return () -> new BulkheadNotificationService(
+                factory.get(),
+                channel,
+                Integer.parseInt(props.getProperty(prefix + "max_concurrent", "8")),
+                Integer.parseInt(props.getProperty(prefix + "queue_capacity", "32")),
+                Long.parseLong(props.getProperty(prefix + "timeout_millis", "30000")),
+                meterRegistry);
+    }
+
+    private static OtpOutboxDispatcher createOtpOutboxDispatcher(DataSource dataSource,
+                                                                 NotificationChannelRegistry channels,
+                                                                 MeterRegistry meterRegistry) {
+        Properties props = PropertiesLoader.loadProperties("outbox.properties");
+        // Deliveries share the pool with requests, but cannot hold more than their quota
+        DataSource quotaDataSource = new ConnectionQuotaDataSource(dataSource,
+                Integer.parseInt(props.getProperty("outbox.db.max.connections", "2")),
+                Long.parseLong(props.getProperty("outbox.db.acquire.timeout.ms", "5000")));
+        return new OtpOutboxDispatcher(
+                new OtpOutboxRepositoryImpl(quotaDataSource),
+                channels,
+                Integer.parseInt(props.getProperty("outbox.dispatcher.workers", "8")),
+                Integer.parseInt(props.getProperty("outbox.claim.batch_size", "50")),
+                Duration.ofSeconds(Long.parseLong(props.getProperty("outbox.lease.seconds", "120"))),
+                Long.parseLong(props.getProperty("outbox.poll.interval.millis", "1000")),
+                Integer.parseInt(props.getProperty("outbox.max_attempts", "5")),
+                Duration.ofMillis(Long.parseLong(props.getProperty("outbox.retry.base_delay.millis", "1000"))),
+                Duration.ofMillis(Long.parseLong(props.getProperty("outbox.retry.max_delay.millis", "60000"))),
+                Duration.ofMillis(Long.parseLong(props.getProperty("outbox.rejected.retry_delay.millis", "500"))),
+                Long.parseLong(props.getProperty("outbox.shutdown.timeout.seconds", "30")),
+                new DeliveryLatencyTracker(
+                        Integer.parseInt(props.getProperty("outbox.hedge.latency_window", "1000")),
+                        Integer.parseInt(props.getProperty("outbox.hedge.min_samples", "50")),
+                        Duration.ofMillis(Long.parseLong(props.getProperty("outbox.hedge.default_budget.millis", "3000"))),
+                        Duration.ofMillis(Long.parseLong(props.getProperty("outbox.hedge.min_budget.millis", "250"))),
+                        Duration.ofMillis(Long.parseLong(props.getProperty("outbox.hedge.max_budget.millis", "15000"))),
+                        meterRegistry),
+                meterRegistry);
+    }
+
+    private static PasswordHasher createPasswordHasher(MeterRegistry meterRegistry) {
+        Properties props = PropertiesLoader.loadProperties("auth.properties");
+        int threads = Integer.parseInt(props.getProperty("auth.bcrypt.threads", "0"));
+        return new PasswordHasher(
+                threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                Integer.parseInt(props.getProperty("auth.bcrypt.queue_capacity", "64")),
+                Long.parseLong(props.getProperty("auth.bcrypt.timeout_millis", "5000")),
+                Integer.parseInt(props.getProperty("auth.bcrypt.cost", "10")),
+                Boolean.parseBoolean(props.getProperty("auth.bcrypt.adaptive.enabled", "false")),
+                Long.parseLong(props.getProperty("auth.bcrypt.adaptive.target_millis", "100")),
+                Integer.parseInt(props.getProperty("auth.bcrypt.adaptive.min_cost", "10")),
+                Integer.parseInt(props.getProperty("auth.bcrypt.adaptive.max_cost", "14")),
+                meterRegistry);
+    }
+
+    private static TokenRevocationService createTokenRevocationService(TokenRevocationRepository repository,
+                                                                       JwtUtil jwtUtil, MeterRegistry meterRegistry) {
+        Properties props = PropertiesLoader.loadProperties("jwt.properties");
+        return new TokenRevocationService(
+                repository,
+                Duration.ofSeconds(jwtUtil.getExpirationSeconds()),
+                Integer.parseInt(props.getProperty("jwt.revocation.expected_entries", "10000")),
+                Double.parseDouble(props.getProperty("jwt.revocation.false_positive_rate", "0.01")),
+                meterRegistry);
+    }
+
+    private static OtpOutboxRepository createOtpOutboxRepository(DataSource dataSource, MeterRegistry meterRegistry) {
+        OtpOutboxRepository repository = new OtpOutboxRepositoryImpl(dataSource);
+
+        Properties props = PropertiesLoader.loadProperties("database.properties");
+        if (!Boolean.parseBoolean(props.getProperty("db.group_commit.enabled", "false"))) {
+            return repository;
+        }
+
+        return new GroupCommitOtpOutboxRepository(
+                repository,
+                Integer.parseInt(props.getProperty("db.group_commit.max_batch_size", "64")),
+                Long.parseLong(props.getProperty("db.group_commit.linger_micros", "500")),
+                Integer.parseInt(props.getProperty("db.group_commit.queue_capacity", "10000")),
+                meterRegistry);
+    }
+
     // Repository getters
     public UserRepository getUserRepository() {
         return userRepository;
@@ -59,11 +274,23 @@ public class ServiceFactory {
         return otpCodeRepository;
     }
 
+    public TokenRevocationRepository getTokenRevocationRepository() {
+        return tokenRevocationRepository;
+    }
+
+    public OtpOutboxRepository getOtpOutboxRepository() {
+        return otpOutboxRepository;
+    }
+
     // Utility getters
     public JwtUtil getJwtUtil() {
         return jwtUtil;
     }
 
+    public PasswordHasher getPasswordHasher() {
+        return passwordHasher;
+    }
+
     // Service getters
     public AuthService getAuthService() {
         return authService;
@@ -77,30 +304,35 @@ public class ServiceFactory {
         return otpConfigService;
     }
 
-    public OtpService getOtpService() {
-        return otpService;
+    public TokenRevocationService getTokenRevocationService() {
+        return tokenRevocationService;
     }
 
-    // Cleanup resources
-    public void shutdown() {
-        logger.info("Shutting down ServiceFactory...");
-        DatabaseConfiguration.closeDataSource();
-        logger.info("ServiceFactory shutdown complete");
+    public OtpService getOtpService() {
+        return otpService;
     }
 
-    public NotificationService getEmailNotificationService() {
-        return new EmailNotificationService();
+    public BulkOtpService getBulkOtpService() {
+        return bulkOtpService;
     }
 
-    public NotificationService getSmsNotificationService() {
-        return new SmsNotificationService();
+    public NotificationChannelRegistry getNotificationChannelRegistry() {
+        return notificationChannelRegistry;
     }
 
-    public NotificationService getTelegramNotificationService() {
-        return new TelegramNotificationService();
+    public OtpOutboxDispatcher getOtpOutboxDispatcher() {
+        return otpOutboxDispatcher;
     }
 
-    public NotificationService getFileNotificationService() {
-        return new FileNotificationService();
+    // Cleanup resources; runs before the connection pool is closed
+    @PreDestroy
+    public void shutdown() {
+        logger.info("Shutting down ServiceFactory...");
+        if (otpOutboxRepository instanceof GroupCommitOtpOutboxRepository) {
+            ((GroupCommitOtpOutboxRepository) otpOutboxRepository).shutdown();
+        }
+        passwordHasher.shutdown();
+        notificationChannelRegistry.close();
+        logger.info("ServiceFactory shutdown complete");
     }
 }
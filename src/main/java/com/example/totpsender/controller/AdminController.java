@@ -7,18 +7,28 @@ import com.example.totpsender.dto.ApiResponse;
 import com.example.totpsender.dto.UserResponse;
 import com.example.totpsender.model.OtpConfig;
 import com.example.totpsender.model.User;
+import com.example.totpsender.model.UserPrincipal;
+import com.example.totpsender.repository.KeysetCursor;
+import com.example.totpsender.service.BulkOtpService;
 import com.example.totpsender.service.OtpConfigService;
 import com.example.totpsender.service.OtpService;
 import com.example.totpsender.service.UserService;
-import com.example.totpsender.util.JwtUtil;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.UUID;
 
@@ -31,28 +41,43 @@ public class AdminController {
     private final UserService userService;
     private final OtpConfigService otpConfigService;
     private final OtpService otpService;
-    private final JwtUtil jwtUtil;
+    private final BulkOtpService bulkOtpService;
+    private final ObjectMapper objectMapper;
 
-    public AdminController(ServiceFactory serviceFactory) {
+    public AdminController(ServiceFactory serviceFactory, ObjectMapper objectMapper) {
         this.userService = serviceFactory.getUserService();
         this.otpConfigService = serviceFactory.getOtpConfigService();
         this.otpService = serviceFactory.getOtpService();
-        this.jwtUtil = serviceFactory.getJwtUtil();
+        this.bulkOtpService = serviceFactory.getBulkOtpService();
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/users")
-    public ResponseEntity<?> getAllUsers(HttpServletRequest request) {
+    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "" + UserService.DEFAULT_PAGE_SIZE) int limit,
+                                         @AuthenticationPrincipal UserPrincipal principal) {
         try {
-            if (!isAdmin(request)) {
+            if (!isAdmin(principal)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN)
                         .body(new ApiResponse(false, "Access denied"));
             }
 
-            List<UserResponse> userResponses = userService.getAllUsers();
+            KeysetCursor after = cursor == null || cursor.isBlank() ? null : KeysetCursor.decode(cursor);
+            List<UserResponse> userResponses = userService.getUsers(after, limit);
+
+            // A full page means there may be more: the client passes X-Next-Cursor back as ?cursor=
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (userResponses.size() == limit) {
+                UserResponse last = userResponses.get(userResponses.size() - 1);
+                response.header("X-Next-Cursor", new KeysetCursor(last.getCreatedAt(), last.getId()).encode());
+            }
 
             logger.info("Retrieved {} users for admin", userResponses.size());
-            return ResponseEntity.ok(userResponses);
+            return response.body(userResponses);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new ApiResponse(false, e.getMessage()));
         } catch (Exception e) {
             logger.error("Error retrieving users: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -60,10 +85,40 @@ public class AdminController {
         }
     }
 
+    @GetMapping("/users/stream")
+    public ResponseEntity<?> streamAllUsers(@AuthenticationPrincipal UserPrincipal principal) {
+        if (!isAdmin(principal)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(new ApiResponse(false, "Access denied"));
+        }
+
+        // Same JSON array as /users, written element by element while rows are read from the database
+        StreamingResponseBody body = output -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+                generator.writeStartArray();
+                userService.streamUsers(user -> {
+                    try {
+                        generator.writeObject(user);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
     @DeleteMapping("/users/{id}")
-    public ResponseEntity<ApiResponse> deleteUser(@PathVariable String id, HttpServletRequest request) {
+    public ResponseEntity<ApiResponse> deleteUser(@PathVariable String id,
+                                                  @AuthenticationPrincipal UserPrincipal principal) {
         try {
-            if (!isAdmin(request)) {
+            if (!isAdmin(principal)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN)
                         .body(new ApiResponse(false, "Access denied"));
             }
@@ -97,9 +152,9 @@ public class AdminController {
     }
 
     @GetMapping("/otp-config")
-    public ResponseEntity<?> getOtpConfig(HttpServletRequest request) {
+    public ResponseEntity<?> getOtpConfig(@AuthenticationPrincipal UserPrincipal principal) {
         try {
-            if (!isAdmin(request)) {
+            if (!isAdmin(principal)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN)
                         .body(new ApiResponse(false, "Access denied"));
             }
@@ -119,9 +174,9 @@ public class AdminController {
 
     @PutMapping("/otp-config")
     public ResponseEntity<ApiResponse> updateOtpConfig(@Valid @RequestBody OtpConfigRequest request,
-                                                       HttpServletRequest httpRequest) {
+                                                       @AuthenticationPrincipal UserPrincipal principal) {
         try {
-            if (!isAdmin(httpRequest)) {
+            if (!isAdmin(principal)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN)
                         .body(new ApiResponse(false, "Access denied"));
             }
@@ -142,15 +197,24 @@ public class AdminController {
         }
     }
 
-    private boolean isAdmin(HttpServletRequest request) {
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            if (jwtUtil.validateToken(token)) {
-                String role = jwtUtil.getRoleFromToken(token);
-                return "ADMIN".equals(role);
-            }
+    @PostMapping(value = "/otp/generate/bulk", consumes = "application/x-ndjson", produces = "application/x-ndjson")
+    public ResponseEntity<?> generateOtpBulk(@AuthenticationPrincipal UserPrincipal principal,
+                                             HttpServletRequest request) throws IOException {
+        if (!isAdmin(principal)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(new ApiResponse(false, "Access denied"));
         }
-        return false;
+
+        logger.info("Starting bulk OTP generation by admin");
+
+        InputStream body = request.getInputStream();
+        StreamingResponseBody results = output -> bulkOtpService.generateForUsers(body, output);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(results);
+    }
+
+    private boolean isAdmin(UserPrincipal principal) {
+        return principal != null && principal.isAdmin();
     }
 }
@@ -4,6 +4,7 @@ import com.example.totpsender.config.ServiceFactory;
 import com.example.totpsender.dto.LoginRequest;
 import com.example.totpsender.dto.RegisterRequest;
 import com.example.totpsender.dto.AuthResponse;
+import com.example.totpsender.exception.ServiceOverloadedException;
 import com.example.totpsender.model.User;
 import com.example.totpsender.service.AuthService;
 import org.slf4j.Logger;
@@ -37,6 +38,9 @@ public class AuthController {
             logger.info("User registered successfully: {}", request.getUsername());
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
 
+        } catch (ServiceOverloadedException e) {
+            // Answered with 503 by GlobalExceptionHandler
+            throw e;
         } catch (RuntimeException e) {
             logger.warn("Registration failed for {}: {}", request.getUsername(), e.getMessage());
             return ResponseEntity.badRequest().body(new AuthResponse(null, null, null, e.getMessage()));
@@ -57,6 +61,9 @@ public class AuthController {
             logger.info("User logged in successfully: {}", request.getUsername());
             return ResponseEntity.ok(response);
 
+        } catch (ServiceOverloadedException e) {
+            // Answered with 503 by GlobalExceptionHandler
+            throw e;
         } catch (RuntimeException e) {
             logger.warn("Login failed for {}: {}", request.getUsername(), e.getMessage());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
@@ -1,26 +1,39 @@
 package com.example.totpsender.controller;
 
 import com.example.totpsender.config.ServiceFactory;
+import com.example.totpsender.dto.FallbackDestinationRequest;
 import com.example.totpsender.dto.GenerateOtpRequest;
 import com.example.totpsender.dto.ValidateOtpRequest;
 import com.example.totpsender.dto.OtpResponse;
-import com.example.totpsender.model.OtpCode;
-import com.example.totpsender.model.User;
+import com.example.totpsender.model.DeliveryTarget;
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.model.UserPrincipal;
 import com.example.totpsender.dto.OtpGenerateRequest;
 import com.example.totpsender.dto.OtpValidateRequest;
+import com.example.totpsender.exception.UserNotFoundException;
+import com.example.totpsender.service.BulkOtpService;
+import com.example.totpsender.service.NotificationChannelRegistry;
 import com.example.totpsender.service.NotificationService;
 import com.example.totpsender.service.OtpService;
 import com.example.totpsender.service.UserService;
-import com.example.totpsender.util.JwtUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/user/otp")
@@ -29,22 +42,22 @@ public class UserController {
 
     private static final Logger logger = LoggerFactory.getLogger(UserController.class);
     private final OtpService otpService;
+    private final BulkOtpService bulkOtpService;
     private final UserService userService;
-    private final JwtUtil jwtUtil;
-    private final ServiceFactory serviceFactory;
+    private final NotificationChannelRegistry notificationChannels;
 
     public UserController(ServiceFactory serviceFactory) {
-        this.serviceFactory = serviceFactory;
+        this.notificationChannels = serviceFactory.getNotificationChannelRegistry();
         this.otpService = serviceFactory.getOtpService();
+        this.bulkOtpService = serviceFactory.getBulkOtpService();
         this.userService = serviceFactory.getUserService();
-        this.jwtUtil = serviceFactory.getJwtUtil();
     }
 
     @PostMapping("/generate")
     public ResponseEntity<OtpResponse> generateOtp(@Valid @RequestBody GenerateOtpRequest request,
-                                                   HttpServletRequest httpRequest) {
+                                                   @AuthenticationPrincipal UserPrincipal principal) {
         try {
-            String username = extractUsernameFromToken(httpRequest);
+            String username = principal != null ? principal.getUsername() : null;
             if (username == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(new OtpResponse(false, "Invalid or missing token"));
@@ -53,29 +66,34 @@ public class UserController {
             logger.info("Generating OTP for user: {} with destination: {} via channel: {}",
                     username, request.getDestination(), request.getChannel());
 
-            // Get user by username
-            User user = userService.findByUsername(username);
-            if (user == null) {
+            UUID userId = resolveUserId(principal);
+            if (userId == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(new OtpResponse(false, "User not found"));
             }
 
-            // Generate OTP code
-            OtpGenerateRequest otpRequest = new OtpGenerateRequest(
-                    request.getOperationId(), request.getChannel(), request.getDestination());
-            OtpCode otpCode = otpService.generateOtp(user, otpRequest);
+            List<DeliveryTarget> fallbacks = toDeliveryTargets(request.getFallbacks());
 
-            // Send notification based on channel
-            NotificationService notificationService = getNotificationService(request.getChannel());
-            if (notificationService == null || !notificationService.isAvailable()) {
+            // Checked before the code is stored, so unavailable channels do not leave undeliverable codes.
+            // With fallbacks one available channel is enough: delivery skips the others
+            boolean anyAvailable = isAvailable(request.getChannel())
+                    || fallbacks.stream().anyMatch(target -> isAvailable(target.getChannel().name()));
+            if (!anyAvailable) {
                 return ResponseEntity.badRequest()
                         .body(new OtpResponse(false, "Notification channel not available: " + request.getChannel()));
             }
 
-            notificationService.sendCode(request.getDestination(), otpCode.getCode());
+            // The code is stored together with an outbox row and delivered in the background
+            OtpGenerateRequest otpRequest = new OtpGenerateRequest(
+                    request.getOperationId(), request.getChannel(), request.getDestination());
+            Duration latencyBudget = request.getLatencyBudgetMillis() != null
+                    ? Duration.ofMillis(request.getLatencyBudgetMillis())
+                    : null;
+            otpService.generateOtpForDelivery(userId, otpRequest, NotificationChannel.fromName(request.getChannel()),
+                    fallbacks, latencyBudget);
 
-            logger.info("OTP generated and sent successfully for user: {}", username);
-            return ResponseEntity.ok(new OtpResponse(true, "OTP sent successfully"));
+            logger.info("OTP generated and queued for delivery for user: {}", username);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(new OtpResponse(true, "OTP accepted for delivery"));
 
         } catch (Exception e) {
             logger.error("Error generating OTP: {}", e.getMessage(), e);
@@ -84,11 +102,36 @@ public class UserController {
         }
     }
 
+    @PostMapping(value = "/generate/bulk", consumes = "application/x-ndjson", produces = "application/x-ndjson")
+    public ResponseEntity<?> generateOtpBulk(@AuthenticationPrincipal UserPrincipal principal,
+                                             HttpServletRequest httpRequest) throws IOException {
+        String username = principal != null ? principal.getUsername() : null;
+        if (username == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new OtpResponse(false, "Invalid or missing token"));
+        }
+
+        UUID userId = resolveUserId(principal);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new OtpResponse(false, "User not found"));
+        }
+
+        logger.info("Starting bulk OTP generation for user: {}", username);
+
+        // The body is read while results are written, so neither side is buffered in full
+        InputStream body = httpRequest.getInputStream();
+        StreamingResponseBody results = output -> bulkOtpService.generateForUser(userId, username, body, output);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(results);
+    }
+
     @PostMapping("/validate")
     public ResponseEntity<OtpResponse> validateOtp(@Valid @RequestBody ValidateOtpRequest request,
-                                                   HttpServletRequest httpRequest) {
+                                                   @AuthenticationPrincipal UserPrincipal principal) {
         try {
-            String username = extractUsernameFromToken(httpRequest);
+            String username = principal != null ? principal.getUsername() : null;
             if (username == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(new OtpResponse(false, "Invalid or missing token"));
@@ -96,16 +139,15 @@ public class UserController {
 
             logger.info("Validating OTP for user: {} with code: {}", username, request.getCode());
 
-            // Get user by username
-            User user = userService.findByUsername(username);
-            if (user == null) {
+            UUID userId = resolveUserId(principal);
+            if (userId == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(new OtpResponse(false, "User not found"));
             }
 
             // Validate OTP code
             OtpValidateRequest otpValidateRequest = new OtpValidateRequest(request.getCode());
-            boolean isValid = otpService.validateOtp(user, otpValidateRequest);
+            boolean isValid = otpService.validateOtp(userId, otpValidateRequest);
 
             if (isValid) {
                 logger.info("OTP validated successfully for user: {}", username);
@@ -123,29 +165,31 @@ public class UserController {
         }
     }
 
-    private String extractUsernameFromToken(HttpServletRequest request) {
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            if (jwtUtil.validateToken(token)) {
-                return jwtUtil.getUsernameFromToken(token);
-            }
+    // Current tokens carry the user id; only tokens issued before that need a users lookup
+    private UUID resolveUserId(UserPrincipal principal) {
+        if (principal.getUserId() != null) {
+            return principal.getUserId();
+        }
+        try {
+            return userService.findByUsername(principal.getUsername()).getId();
+        } catch (UserNotFoundException e) {
+            return null;
         }
-        return null;
     }
 
-    private NotificationService getNotificationService(String channel) {
-        switch (channel.toUpperCase()) {
-            case "EMAIL":
-                return serviceFactory.getEmailNotificationService();
-            case "SMS":
-                return serviceFactory.getSmsNotificationService();
-            case "TELEGRAM":
-                return serviceFactory.getTelegramNotificationService();
-            case "FILE":
-                return serviceFactory.getFileNotificationService();
-            default:
-                return null;
+    private boolean isAvailable(String channel) {
+        NotificationService notificationService = notificationChannels.get(channel);
+        return notificationService != null && notificationService.isAvailable();
+    }
+
+    private static List<DeliveryTarget> toDeliveryTargets(List<FallbackDestinationRequest> fallbacks) {
+        if (fallbacks == null) {
+            return List.of();
+        }
+        List<DeliveryTarget> targets = new ArrayList<>(fallbacks.size());
+        for (FallbackDestinationRequest fallback : fallbacks) {
+            targets.add(new DeliveryTarget(NotificationChannel.fromName(fallback.getChannel()), fallback.getDestination()));
         }
+        return targets;
     }
 }
@@ -0,0 +1,50 @@
+package com.example.totpsender.dto;
+
+public class BulkOtpItemRequest {
+
+    private String username;
+    private String operationId;
+    private String channel;
+    private String destination;
+
+    public BulkOtpItemRequest() {}
+
+    public BulkOtpItemRequest(String username, String operationId, String channel, String destination) {
+        this.username = username;
+        this.operationId = operationId;
+        this.channel = channel;
+        this.destination = destination;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getOperationId() {
+        return operationId;
+    }
+
+    public void setOperationId(String operationId) {
+        this.operationId = operationId;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public void setChannel(String channel) {
+        this.channel = channel;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public void setDestination(String destination) {
+        this.destination = destination;
+    }
+}
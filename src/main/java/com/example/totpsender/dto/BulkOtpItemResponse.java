@@ -0,0 +1,60 @@
+package com.example.totpsender.dto;
+
+public class BulkOtpItemResponse {
+
+    private long line;
+    private String username;
+    private String operationId;
+    private boolean success;
+    private String message;
+
+    public BulkOtpItemResponse() {}
+
+    public BulkOtpItemResponse(long line, String username, String operationId, boolean success, String message) {
+        this.line = line;
+        this.username = username;
+        this.operationId = operationId;
+        this.success = success;
+        this.message = message;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getOperationId() {
+        return operationId;
+    }
+
+    public void setOperationId(String operationId) {
+        this.operationId = operationId;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.totpsender.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+
+public class FallbackDestinationRequest {
+
+    @NotBlank(message = "Fallback destination is required")
+    private String destination;
+
+    @NotBlank(message = "Fallback channel is required")
+    @Pattern(regexp = "^(EMAIL|SMS|TELEGRAM|FILE)$", message = "Channel must be one of: EMAIL, SMS, TELEGRAM, FILE")
+    private String channel;
+
+    public FallbackDestinationRequest() {}
+
+    public FallbackDestinationRequest(String destination, String channel) {
+        this.destination = destination;
+        this.channel = channel;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public void setDestination(String destination) {
+        this.destination = destination;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public void setChannel(String channel) {
+        this.channel = channel;
+    }
+}
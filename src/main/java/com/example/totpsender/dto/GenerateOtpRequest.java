@@ -1,7 +1,13 @@
 package com.example.totpsender.dto;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
 
 public class GenerateOtpRequest {
 
@@ -14,6 +20,17 @@ public class GenerateOtpRequest {
 
     private String operationId;
 
+    // Tried in order when the channel above has not delivered within the latency budget
+    @Valid
+    @Size(max = 3, message = "At most 3 fallback destinations are allowed")
+    private List<FallbackDestinationRequest> fallbacks;
+
+    // Defaults to the primary channel's recent p99 delivery latency. Capped like the observed budgets
+    // (outbox.hedge.max_budget.millis)
+    @Positive(message = "Latency budget must be positive")
+    @Max(value = 15000, message = "Latency budget must not exceed 15000 ms")
+    private Long latencyBudgetMillis;
+
     public GenerateOtpRequest() {}
 
     public GenerateOtpRequest(String destination, String channel, String operationId) {
@@ -45,4 +62,20 @@ public class GenerateOtpRequest {
     public void setOperationId(String operationId) {
         this.operationId = operationId;
     }
+
+    public List<FallbackDestinationRequest> getFallbacks() {
+        return fallbacks;
+    }
+
+    public void setFallbacks(List<FallbackDestinationRequest> fallbacks) {
+        this.fallbacks = fallbacks;
+    }
+
+    public Long getLatencyBudgetMillis() {
+        return latencyBudgetMillis;
+    }
+
+    public void setLatencyBudgetMillis(Long latencyBudgetMillis) {
+        this.latencyBudgetMillis = latencyBudgetMillis;
+    }
 }
@@ -0,0 +1,12 @@
+package com.example.totpsender.exception;
+
+// The send was refused locally, before reaching the provider, because the channel is at its limit
+public class NotificationRejectedException extends NotificationException {
+    public NotificationRejectedException(String message) {
+        super(message);
+    }
+
+    public NotificationRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
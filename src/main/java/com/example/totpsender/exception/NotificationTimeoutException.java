@@ -0,0 +1,13 @@
+package com.example.totpsender.exception;
+
+// The send was given up on without an answer from the provider. It may still go through, so
+// resending at once can deliver the code twice
+public class NotificationTimeoutException extends NotificationException {
+    public NotificationTimeoutException(String message) {
+        super(message);
+    }
+
+    public NotificationTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
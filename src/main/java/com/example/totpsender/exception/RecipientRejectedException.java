@@ -0,0 +1,13 @@
+package com.example.totpsender.exception;
+
+// The provider or the client refused this particular message, e.g. a malformed address or an unknown
+// chat. Sending it again would fail the same way, and it says nothing about the channel's health
+public class RecipientRejectedException extends NotificationException {
+    public RecipientRejectedException(String message) {
+        super(message);
+    }
+
+    public RecipientRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
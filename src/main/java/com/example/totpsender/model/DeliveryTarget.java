@@ -0,0 +1,40 @@
+package com.example.totpsender.model;
+
+import java.util.Objects;
+
+// One channel and destination a code can be delivered to
+public final class DeliveryTarget {
+    private final NotificationChannel channel;
+    private final String destination;
+
+    public DeliveryTarget(NotificationChannel channel, String destination) {
+        this.channel = Objects.requireNonNull(channel, "channel");
+        this.destination = destination;
+    }
+
+    public NotificationChannel getChannel() {
+        return channel;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DeliveryTarget)) return false;
+        DeliveryTarget that = (DeliveryTarget) o;
+        return channel == that.channel && Objects.equals(destination, that.destination);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(channel, destination);
+    }
+
+    @Override
+    public String toString() {
+        return channel.name();
+    }
+}
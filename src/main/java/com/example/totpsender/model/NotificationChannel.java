@@ -0,0 +1,28 @@
+package com.example.totpsender.model;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+public enum NotificationChannel {
+    EMAIL,
+    SMS,
+    TELEGRAM,
+    FILE;
+
+    private static final String SUPPORTED = Arrays.stream(values())
+            .map(Enum::name)
+            .collect(Collectors.joining(", "));
+
+    // Case-insensitive lookup of the channel named in a request
+    public static NotificationChannel fromName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Channel is required");
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid channel: " + name + ". Supported channels: " + SUPPORTED);
+        }
+    }
+}
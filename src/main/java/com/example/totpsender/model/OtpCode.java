@@ -13,6 +13,7 @@ public class OtpCode {
     private LocalDateTime createdAt;
     private LocalDateTime expiresAt;
     private LocalDateTime usedAt;
+    private Long configVersion;
 
     public OtpCode() {
     }
@@ -104,6 +105,14 @@ public class OtpCode {
         this.usedAt = usedAt;
     }
 
+    public Long getConfigVersion() {
+        return configVersion;
+    }
+
+    public void setConfigVersion(Long configVersion) {
+        this.configVersion = configVersion;
+    }
+
     // Business methods
     public boolean isExpired() {
         return LocalDateTime.now().isAfter(expiresAt);
@@ -5,9 +5,12 @@ import java.util.Objects;
 import java.util.UUID;
 
 public class OtpConfig {
+    public static final int MAX_TTL_SECONDS = 3600;
+
     private UUID id;
     private int codeLength;
     private int ttlSeconds;
+    private long version = 1;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -30,6 +33,12 @@ public class OtpConfig {
         this.updatedAt = updatedAt;
     }
 
+    public OtpConfig(UUID id, int codeLength, int ttlSeconds, long version,
+                     LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, codeLength, ttlSeconds, createdAt, updatedAt);
+        this.version = version;
+    }
+
     // Getters and Setters
     public UUID getId() {
         return id;
@@ -61,6 +70,15 @@ public class OtpConfig {
         this.ttlSeconds = ttlSeconds;
     }
 
+    // Incremented by the database on every update of the row
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -100,6 +118,7 @@ public class OtpConfig {
                 "id=" + id +
                 ", codeLength=" + codeLength +
                 ", ttlSeconds=" + ttlSeconds +
+                ", version=" + version +
                 ", createdAt=" + createdAt +
                 ", updatedAt=" + updatedAt +
                 '}';
@@ -0,0 +1,102 @@
+package com.example.totpsender.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+// A code waiting in otp_outbox to be delivered. attempts counts claims so far and doubles as
+// the lease token: a dispatcher may only complete the row while attempts is still the value it claimed.
+// fallbacks are tried in order when the primary channel has not delivered within latencyBudget
+public final class OtpOutboxMessage {
+    private final UUID id;
+    private final UUID otpCodeId;
+    private final NotificationChannel channel;
+    private final String destination;
+    private final String code;
+    private final int attempts;
+    // Same instant as the code's created_at, which is its partition key
+    private final Instant createdAt;
+    private final Instant expiresAt;
+    private final List<DeliveryTarget> fallbacks;
+    // Null when the budget follows the primary channel's observed latency
+    private final Duration latencyBudget;
+
+    public OtpOutboxMessage(UUID id, UUID otpCodeId, NotificationChannel channel, String destination, String code,
+                            int attempts, Instant createdAt, Instant expiresAt) {
+        this(id, otpCodeId, channel, destination, code, attempts, createdAt, expiresAt, List.of(), null);
+    }
+
+    public OtpOutboxMessage(UUID id, UUID otpCodeId, NotificationChannel channel, String destination, String code,
+                            int attempts, Instant createdAt, Instant expiresAt,
+                            List<DeliveryTarget> fallbacks, Duration latencyBudget) {
+        this.id = Objects.requireNonNull(id, "id");
+        this.otpCodeId = Objects.requireNonNull(otpCodeId, "otpCodeId");
+        this.channel = Objects.requireNonNull(channel, "channel");
+        this.destination = destination;
+        this.code = Objects.requireNonNull(code, "code");
+        this.attempts = attempts;
+        this.createdAt = Objects.requireNonNull(createdAt, "createdAt");
+        this.expiresAt = Objects.requireNonNull(expiresAt, "expiresAt");
+        this.fallbacks = List.copyOf(fallbacks);
+        this.latencyBudget = latencyBudget;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getOtpCodeId() {
+        return otpCodeId;
+    }
+
+    public NotificationChannel getChannel() {
+        return channel;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public List<DeliveryTarget> getFallbacks() {
+        return fallbacks;
+    }
+
+    public Duration getLatencyBudget() {
+        return latencyBudget;
+    }
+
+    public DeliveryTarget getPrimary() {
+        return new DeliveryTarget(channel, destination);
+    }
+
+    // The code itself is left out on purpose
+    @Override
+    public String toString() {
+        return "OtpOutboxMessage{" +
+                "id=" + id +
+                ", otpCodeId=" + otpCodeId +
+                ", channel=" + channel +
+                ", fallbacks=" + fallbacks +
+                ", attempts=" + attempts +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
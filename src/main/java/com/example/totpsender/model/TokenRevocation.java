@@ -0,0 +1,52 @@
+package com.example.totpsender.model;
+
+import java.time.Instant;
+import java.util.Objects;
+
+// Tokens of the subject issued at or before revokedAt are no longer accepted.
+// After expiresAt every such token has expired on its own and the entry can be dropped
+public final class TokenRevocation {
+    private final String subject;
+    private final Instant revokedAt;
+    private final Instant expiresAt;
+
+    public TokenRevocation(String subject, Instant revokedAt, Instant expiresAt) {
+        this.subject = Objects.requireNonNull(subject, "subject");
+        this.revokedAt = Objects.requireNonNull(revokedAt, "revokedAt");
+        this.expiresAt = Objects.requireNonNull(expiresAt, "expiresAt");
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Instant getRevokedAt() {
+        return revokedAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TokenRevocation that = (TokenRevocation) o;
+        return subject.equals(that.subject) && revokedAt.equals(that.revokedAt) && expiresAt.equals(that.expiresAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(subject, revokedAt, expiresAt);
+    }
+
+    @Override
+    public String toString() {
+        return "TokenRevocation{" +
+                "subject='" + subject + '\'' +
+                ", revokedAt=" + revokedAt +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.totpsender.model;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+// Authenticated caller, built once per request from the verified JWT claims
+public final class UserPrincipal {
+    private final String username;
+    private final String role;
+    private final UUID userId;
+    private final Instant issuedAt;
+
+    public UserPrincipal(String username, String role, UUID userId, Instant issuedAt) {
+        this.username = Objects.requireNonNull(username, "username");
+        this.role = role;
+        this.userId = userId;
+        this.issuedAt = issuedAt;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    // Null for tokens that do not carry the user id
+    public UUID getUserId() {
+        return userId;
+    }
+
+    // When the token was issued (second precision); null if the token has no "iat"
+    public Instant getIssuedAt() {
+        return issuedAt;
+    }
+
+    public boolean isAdmin() {
+        return UserRole.ADMIN.name().equalsIgnoreCase(role);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UserPrincipal that = (UserPrincipal) o;
+        return username.equals(that.username) && Objects.equals(role, that.role)
+                && Objects.equals(userId, that.userId) && Objects.equals(issuedAt, that.issuedAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(username, role, userId, issuedAt);
+    }
+
+    @Override
+    public String toString() {
+        return "UserPrincipal{" +
+                "username='" + username + '\'' +
+                ", role=" + role +
+                ", userId=" + userId +
+                ", issuedAt=" + issuedAt +
+                '}';
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.totpsender.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface OtpCodePartitionRepository {
+
+    // Rows of that day already in the default partition are moved into the new one
+    void createDailyPartition(LocalDate day);
+
+    List<LocalDate> findDailyPartitions();
+
+    void dropDailyPartition(LocalDate day);
+
+    void detachDailyPartition(LocalDate day);
+
+    // Deletes rows created before that day from the default partition, which retention never drops
+    long purgeDefaultPartition(LocalDate before);
+}
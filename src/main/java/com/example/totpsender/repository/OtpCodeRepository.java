@@ -3,7 +3,7 @@ package com.example.totpsender.repository;
 import com.example.totpsender.model.OtpCode;
 import com.example.totpsender.model.OtpStatus;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -12,10 +12,13 @@ public interface OtpCodeRepository extends Repository<OtpCode, UUID> {
 
     Optional<OtpCode> findByCode(String code);
 
-    List<OtpCode> findExpiredCodes();
+    Optional<OtpCode> consume(UUID userId, String code, String operationId, Instant now);
+
+    long expireBefore(Instant cutoff, Instant createdAfter, int batchSize);
 
     void updateStatus(UUID id, OtpStatus status);
 
+    // Also deletes the outbox rows of the user's codes
     void deleteByUserId(UUID userId);
 
     List<OtpCode> findByUserIdAndOperationId(UUID userId, String operationId);
@@ -0,0 +1,39 @@
+package com.example.totpsender.repository;
+
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.model.OtpCode;
+import com.example.totpsender.model.OtpOutboxMessage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface OtpOutboxRepository {
+
+    // Inserts the code and its outbox row in one transaction
+    OtpCode saveWithCode(OtpCode otpCode, OtpOutboxMessage message);
+
+    // Batched saveWithCode: messages.get(i) belongs to otpCodes.get(i); all rows commit together
+    List<OtpCode> saveAllWithCodes(List<OtpCode> otpCodes, List<OtpOutboxMessage> messages);
+
+    // Leases up to limit due rows until now + lease; rows leased by other dispatchers are skipped
+    List<OtpOutboxMessage> claim(int limit, Duration lease, Instant now);
+
+    // The methods below only apply while the row is still held under the given claim
+
+    // Removes a delivered row and records on its code which channel delivered it. otpCodeCreatedAt
+    // is the code's partition key
+    boolean delete(UUID id, int attempts, UUID otpCodeId, Instant otpCodeCreatedAt, NotificationChannel deliveredVia);
+
+    boolean retryAt(UUID id, int attempts, Instant availableAt, String error);
+
+    // Like retryAt, but the claim does not count as an attempt: nothing was sent
+    boolean release(UUID id, int attempts, Instant availableAt, String error);
+
+    // Also drops the code: a failed row is kept for its last_error only
+    boolean markFailed(UUID id, int attempts, String error);
+
+    // Deletes rows whose code expired before expiredBefore, in batches of batchSize; returns the count
+    long purgeExpired(Instant expiredBefore, int batchSize);
+}
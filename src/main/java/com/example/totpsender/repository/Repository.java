@@ -12,6 +12,9 @@ public interface Repository<T, ID> {
 
     List<T> findAll();
 
+    // Up to limit rows ordered by (created_at, id), starting after the cursor (from the beginning when null)
+    List<T> findAll(KeysetCursor after, int limit);
+
     void deleteById(ID id);
 
     boolean existsById(ID id);
@@ -0,0 +1,19 @@
+package com.example.totpsender.repository;
+
+import com.example.totpsender.model.TokenRevocation;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface TokenRevocationRepository {
+
+    // Inserts the revocation or moves an existing one of the same subject forward
+    void save(TokenRevocation revocation);
+
+    Optional<TokenRevocation> findBySubject(String subject);
+
+    List<TokenRevocation> findActive(Instant now);
+
+    long deleteExpired(Instant now);
+}
@@ -3,17 +3,25 @@ package com.example.totpsender.repository;
 import com.example.totpsender.model.User;
 import com.example.totpsender.model.UserRole;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface UserRepository extends Repository<User, UUID> {
 
     Optional<User> findByUsername(String username);
 
+    List<User> findAllByUsernames(Collection<String> usernames);
+
     boolean existsByRole(UserRole role);
 
     long countByRole(UserRole role);
 
     List<User> findAllExceptAdmins();
+
+    List<User> findAllExceptAdmins(KeysetCursor after, int limit);
+
+    void forEachExceptAdmins(int fetchSize, Consumer<User> action);
 }
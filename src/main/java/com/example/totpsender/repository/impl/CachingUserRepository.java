@@ -0,0 +1,178 @@
+package com.example.totpsender.repository.impl;
+
+import com.example.totpsender.model.User;
+import com.example.totpsender.model.UserRole;
+import com.example.totpsender.repository.KeysetCursor;
+import com.example.totpsender.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Bounded, TTL-based cache for single-user lookups. Only found users are cached, so a new
+// registration is visible immediately; changes made on other nodes arrive through invalidate()
+public class CachingUserRepository implements UserRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingUserRepository.class);
+
+    private final UserRepository delegate;
+    private final Cache<String, User> byUsername;
+    private final Cache<UUID, User> byId;
+    // Bumped by every invalidation. A lookup that raced one must not cache what it loaded: the row
+    // it read may be the version the invalidation was about
+    private final AtomicLong generation = new AtomicLong();
+
+    public CachingUserRepository(UserRepository delegate, long maximumSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.byUsername = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        // Publishes cache.gets{result=hit|miss}, cache.evictions, cache.size per cache
+        CaffeineCacheMetrics.monitor(meterRegistry, byUsername, "users.by_username");
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "users.by_id");
+
+        logger.info("User cache enabled: maximumSize={}, ttl={}", maximumSize, ttl);
+    }
+
+    @Override
+    public Optional<User> findByUsername(String username) {
+        User cached = byUsername.getIfPresent(username);
+        if (cached != null) {
+            return Optional.of(copyOf(cached));
+        }
+
+        long loadedAt = generation.get();
+        Optional<User> user = delegate.findByUsername(username);
+        user.ifPresent(found -> put(found, loadedAt));
+        return user.map(CachingUserRepository::copyOf);
+    }
+
+    @Override
+    public Optional<User> findById(UUID id) {
+        User cached = byId.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(copyOf(cached));
+        }
+
+        long loadedAt = generation.get();
+        Optional<User> user = delegate.findById(id);
+        user.ifPresent(found -> put(found, loadedAt));
+        return user.map(CachingUserRepository::copyOf);
+    }
+
+    @Override
+    public User save(User user) {
+        boolean update = user.getId() != null;
+        User saved = delegate.save(user);
+        if (update) {
+            invalidate(saved.getId());
+        }
+        return saved;
+    }
+
+    @Override
+    public void deleteById(UUID id) {
+        invalidate(id);
+        delegate.deleteById(id);
+        // A concurrent lookup may have cached the row again before the delete committed
+        invalidate(id);
+    }
+
+    // Drops every entry of the user, whatever username it was cached under
+    public void invalidate(UUID id) {
+        generation.incrementAndGet();
+        byId.invalidate(id);
+        byUsername.asMap().values().removeIf(user -> id.equals(user.getId()));
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        byId.invalidateAll();
+        byUsername.invalidateAll();
+        logger.debug("User cache cleared");
+    }
+
+    // Caches a user loaded at the given generation. An invalidation that bumps the generation before
+    // the second check is caught by it; one that bumps it later also removes entries later, after the put
+    private void put(User user, long loadedAt) {
+        if (generation.get() != loadedAt) {
+            return;
+        }
+        User snapshot = copyOf(user);
+        byUsername.put(snapshot.getUsername(), snapshot);
+        byId.put(snapshot.getId(), snapshot);
+        if (generation.get() != loadedAt) {
+            byUsername.asMap().remove(snapshot.getUsername(), snapshot);
+            byId.asMap().remove(snapshot.getId(), snapshot);
+        }
+    }
+
+    // User is mutable; callers get their own copy so cached entries cannot be changed in place
+    private static User copyOf(User user) {
+        return new User(user.getId(), user.getUsername(), user.getPasswordHash(), user.getRole(),
+                user.getCreatedAt(), user.getUpdatedAt());
+    }
+
+    @Override
+    public List<User> findAllByUsernames(Collection<String> usernames) {
+        return delegate.findAllByUsernames(usernames);
+    }
+
+    @Override
+    public boolean existsByRole(UserRole role) {
+        return delegate.existsByRole(role);
+    }
+
+    @Override
+    public long countByRole(UserRole role) {
+        return delegate.countByRole(role);
+    }
+
+    @Override
+    public List<User> findAllExceptAdmins() {
+        return delegate.findAllExceptAdmins();
+    }
+
+    @Override
+    public List<User> findAllExceptAdmins(KeysetCursor after, int limit) {
+        return delegate.findAllExceptAdmins(after, limit);
+    }
+
+    @Override
+    public void forEachExceptAdmins(int fetchSize, Consumer<User> action) {
+        delegate.forEachExceptAdmins(fetchSize, action);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<User> findAll(KeysetCursor after, int limit) {
+        return delegate.findAll(after, limit);
+    }
+
+    @Override
+    public boolean existsById(UUID id) {
+        return delegate.existsById(id);
+    }
+}
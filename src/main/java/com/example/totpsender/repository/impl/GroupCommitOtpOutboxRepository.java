@@ -0,0 +1,241 @@
+package com.example.totpsender.repository.impl;
+
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.model.OtpCode;
+import com.example.totpsender.model.OtpOutboxMessage;
+import com.example.totpsender.repository.OtpOutboxRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Group commit for new OTP codes: concurrent saveWithCode calls are collected for up to lingerMicros
+// (or maxBatchSize codes) and a single writer inserts the codes and their outbox rows as one batch
+// in one transaction
+public class GroupCommitOtpOutboxRepository implements OtpOutboxRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitOtpOutboxRepository.class);
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final OtpOutboxRepository delegate;
+    private final BlockingQueue<PendingInsert> queue;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Thread writer;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer waitTimer;
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    public GroupCommitOtpOutboxRepository(OtpOutboxRepository delegate, int maxBatchSize, long lingerMicros,
+                                          int queueCapacity, MeterRegistry meterRegistry) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Group commit batch size must be positive");
+        }
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+
+        this.batchSizeSummary = DistributionSummary.builder("otp.codes.group_commit.batch.size")
+                .description("Number of OTP codes written per group commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("otp.codes.group_commit.wait")
+                .description("Time an OTP code insert waited for its group commit to complete")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        this.writer = new Thread(this::writeLoop, "otp-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        logger.info("OTP code group commit enabled: maxBatchSize={}, linger={}us, queueCapacity={}",
+                maxBatchSize, lingerMicros, queueCapacity);
+    }
+
+    @Override
+    public OtpCode saveWithCode(OtpCode otpCode, OtpOutboxMessage message) {
+        PendingInsert pending = new PendingInsert(otpCode, message);
+        boolean enqueued;
+        stateLock.readLock().lock();
+        try {
+            enqueued = running && queue.offer(pending);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+
+        if (!enqueued) {
+            // Queue is full or writer is stopping: write directly instead of blocking the caller
+            return delegate.saveWithCode(otpCode, message);
+        }
+
+        try {
+            return pending.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to insert OTP code with outbox message", e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingInsert first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingInsert next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopAccepting();
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Nothing can be enqueued once running is false, so this drains the last inserts
+        List<PendingInsert> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    private void flush(List<PendingInsert> batch) {
+        List<OtpCode> codes = new ArrayList<>(batch.size());
+        List<OtpOutboxMessage> messages = new ArrayList<>(batch.size());
+        for (PendingInsert pending : batch) {
+            codes.add(pending.otpCode);
+            messages.add(pending.message);
+        }
+
+        try {
+            delegate.saveAllWithCodes(codes, messages);
+            for (PendingInsert pending : batch) {
+                pending.complete(waitTimer, null);
+            }
+        } catch (RuntimeException e) {
+            // The batch was rolled back as a whole; retry row by row so one bad row fails only its caller
+            logger.warn("Group commit of {} OTP codes failed, retrying individually: {}", batch.size(), e.getMessage());
+            for (PendingInsert pending : batch) {
+                try {
+                    delegate.saveWithCode(pending.otpCode, pending.message);
+                    pending.complete(waitTimer, null);
+                } catch (RuntimeException rowFailure) {
+                    pending.complete(waitTimer, rowFailure);
+                }
+            }
+        }
+
+        batchSizeSummary.record(batch.size());
+    }
+
+    public void shutdown() {
+        logger.info("Stopping OTP code group commit writer...");
+        stopAccepting();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("OTP code group commit writer stopped");
+    }
+
+    private void stopAccepting() {
+        stateLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // Already one batch per call, so there is nothing to group
+    @Override
+    public List<OtpCode> saveAllWithCodes(List<OtpCode> otpCodes, List<OtpOutboxMessage> messages) {
+        return delegate.saveAllWithCodes(otpCodes, messages);
+    }
+
+    @Override
+    public List<OtpOutboxMessage> claim(int limit, Duration lease, Instant now) {
+        return delegate.claim(limit, lease, now);
+    }
+
+    @Override
+    public boolean delete(UUID id, int attempts, UUID otpCodeId, Instant otpCodeCreatedAt,
+                          NotificationChannel deliveredVia) {
+        return delegate.delete(id, attempts, otpCodeId, otpCodeCreatedAt, deliveredVia);
+    }
+
+    @Override
+    public boolean retryAt(UUID id, int attempts, Instant availableAt, String error) {
+        return delegate.retryAt(id, attempts, availableAt, error);
+    }
+
+    @Override
+    public boolean release(UUID id, int attempts, Instant availableAt, String error) {
+        return delegate.release(id, attempts, availableAt, error);
+    }
+
+    @Override
+    public boolean markFailed(UUID id, int attempts, String error) {
+        return delegate.markFailed(id, attempts, error);
+    }
+
+    @Override
+    public long purgeExpired(Instant expiredBefore, int batchSize) {
+        return delegate.purgeExpired(expiredBefore, batchSize);
+    }
+
+    private static class PendingInsert {
+        private final OtpCode otpCode;
+        private final OtpOutboxMessage message;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<OtpCode> future = new CompletableFuture<>();
+
+        private PendingInsert(OtpCode otpCode, OtpOutboxMessage message) {
+            this.otpCode = otpCode;
+            this.message = message;
+        }
+
+        private void complete(Timer waitTimer, RuntimeException failure) {
+            waitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+            if (failure == null) {
+                future.complete(otpCode);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.totpsender.repository.impl;
+
+import com.example.totpsender.repository.OtpCodePartitionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class OtpCodePartitionRepositoryImpl implements OtpCodePartitionRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(OtpCodePartitionRepositoryImpl.class);
+
+    private static final String PARTITION_PREFIX = "otp_codes_p";
+    private static final String DEFAULT_PARTITION = "otp_codes_default";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String FIND_PARTITIONS =
+        "SELECT child.relname FROM pg_inherits " +
+        "JOIN pg_class parent ON parent.oid = pg_inherits.inhparent " +
+        "JOIN pg_class child ON child.oid = pg_inherits.inhrelid " +
+        "WHERE parent.relname = 'otp_codes' AND child.relname LIKE 'otp\\_codes\\_p%'";
+
+    private static final String PARTITION_EXISTS = "SELECT to_regclass(?) IS NOT NULL";
+
+    private static final String DEFAULT_HAS_ROWS =
+        "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE created_at >= ? AND created_at < ?)";
+
+    // Inserts into the default partition wait until the day's rows are moved and the partition attached
+    private static final String LOCK_DEFAULT =
+        "LOCK TABLE " + DEFAULT_PARTITION + " IN SHARE ROW EXCLUSIVE MODE";
+
+    private static final String PURGE_DEFAULT =
+        "DELETE FROM " + DEFAULT_PARTITION + " WHERE created_at < ?";
+
+    private final DataSource dataSource;
+
+    public OtpCodePartitionRepositoryImpl(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    // Partition names and bounds come from LocalDate formatting only, so they are safe to inline in DDL
+    @Override
+    public void createDailyPartition(LocalDate day) {
+        String name = partitionName(day);
+        String bounds = "FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')";
+
+        try (Connection conn = dataSource.getConnection()) {
+            if (partitionExists(conn, name)) {
+                return;
+            }
+            if (!defaultHasRows(conn, day)) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF otp_codes " + bounds);
+                }
+                logger.debug("Executed OTP codes partition create for {}", day);
+                return;
+            }
+
+            // Postgres refuses to create a partition while the default partition holds rows of its range,
+            // so the day's rows are moved out of it into the new table before that is attached
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(LOCK_DEFAULT);
+                stmt.execute("CREATE TABLE " + name + " (LIKE otp_codes INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+                int moved = stmt.executeUpdate("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION +
+                    " WHERE created_at >= '" + day + "' AND created_at < '" + day.plusDays(1) + "' RETURNING *) " +
+                    "INSERT INTO " + name + " SELECT * FROM moved");
+                stmt.execute("ALTER TABLE otp_codes ATTACH PARTITION " + name + " " + bounds);
+                conn.commit();
+                logger.warn("Moved {} OTP codes of {} out of the default partition into {}", moved, day, name);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error executing OTP codes partition create for {}", day, e);
+            throw new RuntimeException("Failed to create OTP codes partition for " + day, e);
+        }
+    }
+
+    @Override
+    public List<LocalDate> findDailyPartitions() {
+        List<LocalDate> days = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(FIND_PARTITIONS);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                String name = rs.getString(1);
+                try {
+                    days.add(LocalDate.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX));
+                } catch (DateTimeParseException e) {
+                    logger.warn("Skipping OTP codes partition with unexpected name: {}", name);
+                }
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error listing OTP codes partitions", e);
+            throw new RuntimeException("Failed to list OTP codes partitions", e);
+        }
+
+        Collections.sort(days);
+        return days;
+    }
+
+    @Override
+    public void dropDailyPartition(LocalDate day) {
+        executeDdl("DROP TABLE IF EXISTS " + partitionName(day), "drop", day);
+    }
+
+    @Override
+    public void detachDailyPartition(LocalDate day) {
+        executeDdl("ALTER TABLE otp_codes DETACH PARTITION " + partitionName(day), "detach", day);
+    }
+
+    @Override
+    public long purgeDefaultPartition(LocalDate before) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(PURGE_DEFAULT)) {
+
+            stmt.setTimestamp(1, Timestamp.valueOf(before.atStartOfDay()));
+            return stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            logger.error("Error purging OTP codes default partition before {}", before, e);
+            throw new RuntimeException("Failed to purge OTP codes default partition", e);
+        }
+    }
+
+    private static boolean partitionExists(Connection conn, String name) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(PARTITION_EXISTS)) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static boolean defaultHasRows(Connection conn, LocalDate day) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(DEFAULT_HAS_ROWS)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(day.atStartOfDay()));
+            stmt.setTimestamp(2, Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void executeDdl(String sql, String action, LocalDate day) {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.execute(sql);
+            logger.debug("Executed OTP codes partition {} for {}", action, day);
+
+        } catch (SQLException e) {
+            logger.error("Error executing OTP codes partition {} for {}", action, day, e);
+            throw new RuntimeException("Failed to " + action + " OTP codes partition for " + day, e);
+        }
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+    }
+}
@@ -2,13 +2,17 @@ package com.example.totpsender.repository.impl;
 
 import com.example.totpsender.config.DatabaseConfiguration;
 import com.example.totpsender.model.OtpCode;
+import com.example.totpsender.model.OtpConfig;
 import com.example.totpsender.model.OtpStatus;
+import com.example.totpsender.repository.KeysetCursor;
 import com.example.totpsender.repository.OtpCodeRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -17,32 +21,59 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
     private static final Logger logger = LoggerFactory.getLogger(OtpCodeRepositoryImpl.class);
     private final DataSource dataSource;
 
-    private static final String INSERT_CODE =
-        "INSERT INTO otp_codes (id, user_id, code, operation_id, status, created_at, expires_at, used_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    // otp_codes is partitioned by created_at: lookups of live codes are bounded by the longest
+    // possible code lifetime (plus clock skew slack) so only the recent partitions are scanned
+    private static final Duration LIVE_CODE_LOOKBACK = Duration.ofSeconds(OtpConfig.MAX_TTL_SECONDS).plusMinutes(5);
+
+    // Shared with OtpOutboxRepositoryImpl, which inserts codes together with their outbox rows
+    static final String INSERT_CODE =
+        "INSERT INTO otp_codes (id, user_id, code, operation_id, status, created_at, expires_at, used_at, config_version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
     private static final String UPDATE_CODE =
         "UPDATE otp_codes SET user_id = ?, code = ?, operation_id = ?, status = ?, expires_at = ?, used_at = ? WHERE id = ?";
 
     private static final String FIND_BY_ID =
-        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at FROM otp_codes WHERE id = ?";
+        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at, config_version FROM otp_codes WHERE id = ?";
 
     private static final String FIND_BY_CODE =
-        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at FROM otp_codes WHERE code = ?";
+        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at, config_version FROM otp_codes WHERE code = ? AND created_at >= ?";
+
+    // Ownership, status and expiry are checked and the row is marked USED by one conditional
+    // UPDATE: of two concurrent requests for the same code only one gets a row back
+    private static final String CONSUME_CODE =
+        "UPDATE otp_codes SET status = 'USED', used_at = ? " +
+        "WHERE user_id = ? AND code = ? AND status = 'ACTIVE' AND expires_at > ? AND created_at >= ? " +
+        "AND (CAST(? AS VARCHAR) IS NULL OR operation_id IS NULL OR operation_id = ?) " +
+        "RETURNING id, user_id, code, operation_id, status, created_at, expires_at, used_at, config_version";
 
     private static final String FIND_BY_USER_ID_AND_OPERATION_ID =
-        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at FROM otp_codes WHERE user_id = ? AND operation_id = ? ORDER BY created_at DESC";
+        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at, config_version FROM otp_codes WHERE user_id = ? AND operation_id = ? AND created_at >= ? ORDER BY created_at DESC";
+
+    private static final String FIND_PAGE =
+        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at, config_version FROM otp_codes ORDER BY created_at, id LIMIT ?";
+
+    private static final String FIND_PAGE_AFTER =
+        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at, config_version FROM otp_codes " +
+        "WHERE (created_at, id) > (?, ?) ORDER BY created_at, id LIMIT ?";
 
     private static final String FIND_ALL =
-        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at FROM otp_codes ORDER BY created_at DESC";
+        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at, config_version FROM otp_codes ORDER BY created_at DESC";
 
-    private static final String FIND_EXPIRED_CODES =
-        "SELECT id, user_id, code, operation_id, status, created_at, expires_at, used_at FROM otp_codes WHERE status = 'ACTIVE' AND expires_at < ?";
+    // Каждая пачка - отдельная короткая транзакция, строки, занятые валидацией, пропускаются
+    private static final String EXPIRE_BATCH =
+        "UPDATE otp_codes SET status = 'EXPIRED' WHERE id IN (" +
+        "SELECT id FROM otp_codes WHERE status = 'ACTIVE' AND expires_at < ? AND created_at >= ? " +
+        "LIMIT ? FOR UPDATE SKIP LOCKED)";
 
     private static final String UPDATE_STATUS = "UPDATE otp_codes SET status = ? WHERE id = ?";
 
     private static final String DELETE_BY_ID = "DELETE FROM otp_codes WHERE id = ?";
 
-    private static final String DELETE_BY_USER_ID = "DELETE FROM otp_codes WHERE user_id = ?";
+    // otp_outbox cannot reference the partitioned otp_codes, so the codes' outbox rows are deleted
+    // in the same statement; otherwise the dispatcher would still send them
+    private static final String DELETE_BY_USER_ID =
+        "WITH deleted AS (DELETE FROM otp_codes WHERE user_id = ? RETURNING id) " +
+        "DELETE FROM otp_outbox WHERE otp_code_id IN (SELECT id FROM deleted)";
 
     private static final String EXISTS_BY_ID = "SELECT 1 FROM otp_codes WHERE id = ?";
 
@@ -64,19 +95,7 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
         try (Connection conn = dataSource.getConnection();
              PreparedStatement stmt = conn.prepareStatement(INSERT_CODE)) {
 
-            stmt.setObject(1, otpCode.getId());
-            stmt.setObject(2, otpCode.getUserId());
-            stmt.setString(3, otpCode.getCode());
-            stmt.setString(4, otpCode.getOperationId());
-            stmt.setString(5, otpCode.getStatus().name());
-            stmt.setTimestamp(6, Timestamp.valueOf(otpCode.getCreatedAt()));
-            stmt.setTimestamp(7, Timestamp.valueOf(otpCode.getExpiresAt()));
-
-            if (otpCode.getUsedAt() != null) {
-                stmt.setTimestamp(8, Timestamp.valueOf(otpCode.getUsedAt()));
-            } else {
-                stmt.setNull(8, Types.TIMESTAMP);
-            }
+            bindInsert(stmt, otpCode);
 
             int affected = stmt.executeUpdate();
             if (affected == 0) {
@@ -92,6 +111,28 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
         }
     }
 
+    static void bindInsert(PreparedStatement stmt, OtpCode otpCode) throws SQLException {
+        stmt.setObject(1, otpCode.getId());
+        stmt.setObject(2, otpCode.getUserId());
+        stmt.setString(3, otpCode.getCode());
+        stmt.setString(4, otpCode.getOperationId());
+        stmt.setString(5, otpCode.getStatus().name());
+        stmt.setTimestamp(6, Timestamp.valueOf(otpCode.getCreatedAt()));
+        stmt.setTimestamp(7, Timestamp.valueOf(otpCode.getExpiresAt()));
+
+        if (otpCode.getUsedAt() != null) {
+            stmt.setTimestamp(8, Timestamp.valueOf(otpCode.getUsedAt()));
+        } else {
+            stmt.setNull(8, Types.TIMESTAMP);
+        }
+
+        if (otpCode.getConfigVersion() != null) {
+            stmt.setLong(9, otpCode.getConfigVersion());
+        } else {
+            stmt.setNull(9, Types.BIGINT);
+        }
+    }
+
     private OtpCode update(OtpCode otpCode) {
         try (Connection conn = dataSource.getConnection();
              PreparedStatement stmt = conn.prepareStatement(UPDATE_CODE)) {
@@ -150,6 +191,7 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
              PreparedStatement stmt = conn.prepareStatement(FIND_BY_CODE)) {
 
             stmt.setString(1, code);
+            stmt.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now().minus(LIVE_CODE_LOOKBACK)));
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -164,6 +206,33 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
         }
     }
 
+    @Override
+    public Optional<OtpCode> consume(UUID userId, String code, String operationId, Instant now) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(CONSUME_CODE)) {
+
+            Timestamp nowTimestamp = Timestamp.from(now);
+            stmt.setTimestamp(1, nowTimestamp);
+            stmt.setObject(2, userId);
+            stmt.setString(3, code);
+            stmt.setTimestamp(4, nowTimestamp);
+            stmt.setTimestamp(5, Timestamp.from(now.minus(LIVE_CODE_LOOKBACK)));
+            stmt.setString(6, operationId);
+            stmt.setString(7, operationId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(mapResultSetToOtpCode(rs));
+                }
+                return Optional.empty();
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error consuming OTP code for user id: {}", userId, e);
+            throw new RuntimeException("Failed to consume OTP code", e);
+        }
+    }
+
     @Override
     public List<OtpCode> findByUserIdAndOperationId(UUID userId, String operationId) {
         List<OtpCode> codes = new ArrayList<>();
@@ -173,6 +242,7 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
 
             stmt.setObject(1, userId);
             stmt.setString(2, operationId);
+            stmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now().minus(LIVE_CODE_LOOKBACK)));
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -189,26 +259,38 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
     }
 
     @Override
-    public List<OtpCode> findExpiredCodes() {
-        List<OtpCode> codes = new ArrayList<>();
+    public long expireBefore(Instant cutoff, Instant createdAfter, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+
+        long total = 0;
+        int batches = 0;
 
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(FIND_EXPIRED_CODES)) {
+             PreparedStatement stmt = conn.prepareStatement(EXPIRE_BATCH)) {
 
-            stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.setTimestamp(1, Timestamp.from(cutoff));
+            stmt.setTimestamp(2, Timestamp.from(createdAfter));
+            stmt.setInt(3, batchSize);
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    codes.add(mapResultSetToOtpCode(rs));
-                }
-            }
+            int affected;
+            do {
+                long startedAt = System.nanoTime();
+                affected = stmt.executeUpdate();
+                long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+
+                total += affected;
+                batches++;
+                logger.debug("Expired OTP codes batch #{}: {} rows in {} ms", batches, affected, elapsedMillis);
+            } while (affected == batchSize);
 
         } catch (SQLException e) {
-            logger.error("Error finding expired OTP codes", e);
-            throw new RuntimeException("Failed to find expired OTP codes", e);
+            logger.error("Error expiring OTP codes before {} after {} rows", cutoff, total, e);
+            throw new RuntimeException("Failed to expire OTP codes", e);
         }
 
-        return codes;
+        return total;
     }
 
     @Override
@@ -252,6 +334,34 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
         }
     }
 
+    @Override
+    public List<OtpCode> findAll(KeysetCursor after, int limit) {
+        List<OtpCode> codes = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(after == null ? FIND_PAGE : FIND_PAGE_AFTER)) {
+
+            int index = 1;
+            if (after != null) {
+                stmt.setTimestamp(index++, Timestamp.valueOf(after.getCreatedAt()));
+                stmt.setObject(index++, after.getId());
+            }
+            stmt.setInt(index, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    codes.add(mapResultSetToOtpCode(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error finding page of OTP codes after {}", after, e);
+            throw new RuntimeException("Failed to find page of OTP codes", e);
+        }
+
+        return codes;
+    }
+
     @Override
     public void deleteById(UUID id) {
         try (Connection conn = dataSource.getConnection();
@@ -280,7 +390,7 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
             stmt.setObject(1, userId);
 
             int affected = stmt.executeUpdate();
-            logger.debug("Deleted {} OTP codes for user id: {}", affected, userId);
+            logger.debug("Deleted OTP codes and {} outbox messages for user id: {}", affected, userId);
 
         } catch (SQLException e) {
             logger.error("Error deleting OTP codes by user id: {}", userId, e);
@@ -309,7 +419,7 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
         Timestamp usedAtTimestamp = rs.getTimestamp("used_at");
         LocalDateTime usedAt = usedAtTimestamp != null ? usedAtTimestamp.toLocalDateTime() : null;
 
-        return new OtpCode(
+        OtpCode otpCode = new OtpCode(
             (UUID) rs.getObject("id"),
             (UUID) rs.getObject("user_id"),
             rs.getString("code"),
@@ -319,5 +429,11 @@ public class OtpCodeRepositoryImpl implements OtpCodeRepository {
             rs.getTimestamp("expires_at").toLocalDateTime(),
             usedAt
         );
+
+        long configVersion = rs.getLong("config_version");
+        if (!rs.wasNull()) {
+            otpCode.setConfigVersion(configVersion);
+        }
+        return otpCode;
     }
 }
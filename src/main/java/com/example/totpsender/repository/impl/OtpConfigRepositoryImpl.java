@@ -2,6 +2,7 @@ package com.example.totpsender.repository.impl;
 
 import com.example.totpsender.config.DatabaseConfiguration;
 import com.example.totpsender.model.OtpConfig;
+import com.example.totpsender.repository.KeysetCursor;
 import com.example.totpsender.repository.OtpConfigRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,19 +17,26 @@ public class OtpConfigRepositoryImpl implements OtpConfigRepository {
     private final DataSource dataSource;
 
     private static final String INSERT_CONFIG =
-        "INSERT INTO otp_config (id, code_length, ttl_seconds, created_at, updated_at) VALUES (?, ?, ?, ?, ?)";
+        "INSERT INTO otp_config (id, code_length, ttl_seconds, version, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?)";
 
     private static final String UPDATE_CONFIG =
-        "UPDATE otp_config SET code_length = ?, ttl_seconds = ?, updated_at = ? WHERE id = ?";
+        "UPDATE otp_config SET code_length = ?, ttl_seconds = ?, version = version + 1, updated_at = ? WHERE id = ? RETURNING version";
 
     private static final String FIND_BY_ID =
-        "SELECT id, code_length, ttl_seconds, created_at, updated_at FROM otp_config WHERE id = ?";
+        "SELECT id, code_length, ttl_seconds, version, created_at, updated_at FROM otp_config WHERE id = ?";
 
     private static final String FIND_FIRST =
-        "SELECT id, code_length, ttl_seconds, created_at, updated_at FROM otp_config ORDER BY created_at LIMIT 1";
+        "SELECT id, code_length, ttl_seconds, version, created_at, updated_at FROM otp_config ORDER BY created_at LIMIT 1";
+
+    private static final String FIND_PAGE =
+        "SELECT id, code_length, ttl_seconds, version, created_at, updated_at FROM otp_config ORDER BY created_at, id LIMIT ?";
+
+    private static final String FIND_PAGE_AFTER =
+        "SELECT id, code_length, ttl_seconds, version, created_at, updated_at FROM otp_config " +
+        "WHERE (created_at, id) > (?, ?) ORDER BY created_at, id LIMIT ?";
 
     private static final String FIND_ALL =
-        "SELECT id, code_length, ttl_seconds, created_at, updated_at FROM otp_config ORDER BY created_at";
+        "SELECT id, code_length, ttl_seconds, version, created_at, updated_at FROM otp_config ORDER BY created_at";
 
     private static final String DELETE_BY_ID = "DELETE FROM otp_config WHERE id = ?";
 
@@ -55,8 +63,9 @@ public class OtpConfigRepositoryImpl implements OtpConfigRepository {
             stmt.setObject(1, config.getId());
             stmt.setInt(2, config.getCodeLength());
             stmt.setInt(3, config.getTtlSeconds());
-            stmt.setTimestamp(4, Timestamp.valueOf(config.getCreatedAt()));
-            stmt.setTimestamp(5, Timestamp.valueOf(config.getUpdatedAt()));
+            stmt.setLong(4, config.getVersion());
+            stmt.setTimestamp(5, Timestamp.valueOf(config.getCreatedAt()));
+            stmt.setTimestamp(6, Timestamp.valueOf(config.getUpdatedAt()));
 
             int affected = stmt.executeUpdate();
             if (affected == 0) {
@@ -83,12 +92,15 @@ public class OtpConfigRepositoryImpl implements OtpConfigRepository {
             stmt.setTimestamp(3, Timestamp.valueOf(config.getUpdatedAt()));
             stmt.setObject(4, config.getId());
 
-            int affected = stmt.executeUpdate();
-            if (affected == 0) {
-                throw new RuntimeException("Failed to update OTP config, no rows affected");
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new RuntimeException("Failed to update OTP config, no rows affected");
+                }
+                config.setVersion(rs.getLong("version"));
             }
 
-            logger.debug("Updated OTP config: length={}, ttl={}", config.getCodeLength(), config.getTtlSeconds());
+            logger.debug("Updated OTP config: length={}, ttl={}, version={}",
+                    config.getCodeLength(), config.getTtlSeconds(), config.getVersion());
             return config;
 
         } catch (SQLException e) {
@@ -154,6 +166,34 @@ public class OtpConfigRepositoryImpl implements OtpConfigRepository {
         return configs;
     }
 
+    @Override
+    public List<OtpConfig> findAll(KeysetCursor after, int limit) {
+        List<OtpConfig> configs = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(after == null ? FIND_PAGE : FIND_PAGE_AFTER)) {
+
+            int index = 1;
+            if (after != null) {
+                stmt.setTimestamp(index++, Timestamp.valueOf(after.getCreatedAt()));
+                stmt.setObject(index++, after.getId());
+            }
+            stmt.setInt(index, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    configs.add(mapResultSetToOtpConfig(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error finding page of OTP configs after {}", after, e);
+            throw new RuntimeException("Failed to find page of OTP configs", e);
+        }
+
+        return configs;
+    }
+
     @Override
     public void deleteById(UUID id) {
         try (Connection conn = dataSource.getConnection();
@@ -196,6 +236,7 @@ public class OtpConfigRepositoryImpl implements OtpConfigRepository {
             (UUID) rs.getObject("id"),
             rs.getInt("code_length"),
             rs.getInt("ttl_seconds"),
+            rs.getLong("version"),
             rs.getTimestamp("created_at").toLocalDateTime(),
             rs.getTimestamp("updated_at").toLocalDateTime()
         );
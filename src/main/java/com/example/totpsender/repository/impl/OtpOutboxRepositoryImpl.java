@@ -0,0 +1,349 @@
+package com.example.totpsender.repository.impl;
+
+import com.example.totpsender.model.DeliveryTarget;
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.model.OtpCode;
+import com.example.totpsender.model.OtpOutboxMessage;
+import com.example.totpsender.repository.OtpOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class OtpOutboxRepositoryImpl implements OtpOutboxRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(OtpOutboxRepositoryImpl.class);
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private final DataSource dataSource;
+
+    private static final String INSERT_MESSAGE =
+        "INSERT INTO otp_outbox (id, otp_code_id, channel, destination, code, status, attempts, available_at, created_at, expires_at, " +
+        "fallbacks, latency_budget_ms) VALUES (?, ?, ?, ?, ?, 'PENDING', 0, ?, ?, ?, ?, ?)";
+
+    // The claim is committed right away: the lease (available_at in the future) keeps other
+    // dispatchers off the row without holding a transaction open during delivery
+    private static final String CLAIM =
+        "UPDATE otp_outbox SET attempts = attempts + 1, available_at = ? WHERE id IN (" +
+        "SELECT id FROM otp_outbox WHERE status = 'PENDING' AND available_at <= ? " +
+        "ORDER BY available_at LIMIT ? FOR UPDATE SKIP LOCKED) " +
+        "RETURNING id, otp_code_id, channel, destination, code, attempts, created_at, expires_at, fallbacks, latency_budget_ms";
+
+    private static final String DELETE = "DELETE FROM otp_outbox WHERE id = ? AND attempts = ?";
+
+    // created_at prunes the update to the code's own partition
+    private static final String RECORD_DELIVERY =
+        "UPDATE otp_codes SET delivered_channel = ? WHERE id = ? AND created_at = ?";
+
+    private static final String RETRY_AT =
+        "UPDATE otp_outbox SET available_at = ?, last_error = ? WHERE id = ? AND attempts = ?";
+
+    private static final String RELEASE =
+        "UPDATE otp_outbox SET attempts = attempts - 1, available_at = ?, last_error = ? WHERE id = ? AND attempts = ?";
+
+    private static final String MARK_FAILED =
+        "UPDATE otp_outbox SET status = 'FAILED', code = NULL, last_error = ? WHERE id = ? AND attempts = ?";
+
+    private static final String PURGE_EXPIRED_BATCH =
+        "DELETE FROM otp_outbox WHERE id IN (" +
+        "SELECT id FROM otp_outbox WHERE expires_at < ? LIMIT ? FOR UPDATE SKIP LOCKED)";
+
+    public OtpOutboxRepositoryImpl(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public OtpCode saveWithCode(OtpCode otpCode, OtpOutboxMessage message) {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement codeStmt = conn.prepareStatement(OtpCodeRepositoryImpl.INSERT_CODE);
+                 PreparedStatement outboxStmt = conn.prepareStatement(INSERT_MESSAGE)) {
+                OtpCodeRepositoryImpl.bindInsert(codeStmt, otpCode);
+                codeStmt.executeUpdate();
+
+                bindMessage(outboxStmt, message);
+                outboxStmt.executeUpdate();
+
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+
+            logger.debug("Inserted OTP code {} with outbox message {}", otpCode.getId(), message.getId());
+            return otpCode;
+
+        } catch (SQLException e) {
+            logger.error("Error inserting OTP code with outbox message for user id: {}", otpCode.getUserId(), e);
+            throw new RuntimeException("Failed to insert OTP code with outbox message", e);
+        }
+    }
+
+    @Override
+    public List<OtpCode> saveAllWithCodes(List<OtpCode> otpCodes, List<OtpOutboxMessage> messages) {
+        if (otpCodes.size() != messages.size()) {
+            throw new IllegalArgumentException("Each OTP code must have exactly one outbox message");
+        }
+        if (otpCodes.isEmpty()) {
+            return otpCodes;
+        }
+
+        // Two JDBC batches in one transaction; the NOTIFY trigger fires once per statement
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement codeStmt = conn.prepareStatement(OtpCodeRepositoryImpl.INSERT_CODE);
+                 PreparedStatement outboxStmt = conn.prepareStatement(INSERT_MESSAGE)) {
+                for (OtpCode otpCode : otpCodes) {
+                    OtpCodeRepositoryImpl.bindInsert(codeStmt, otpCode);
+                    codeStmt.addBatch();
+                }
+                codeStmt.executeBatch();
+
+                for (OtpOutboxMessage message : messages) {
+                    bindMessage(outboxStmt, message);
+                    outboxStmt.addBatch();
+                }
+                outboxStmt.executeBatch();
+
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+
+            logger.debug("Inserted batch of {} OTP codes with outbox messages", otpCodes.size());
+            return otpCodes;
+
+        } catch (SQLException e) {
+            logger.error("Error inserting batch of {} OTP codes with outbox messages", otpCodes.size(), e);
+            throw new RuntimeException("Failed to insert OTP codes batch with outbox messages", e);
+        }
+    }
+
+    private static void bindMessage(PreparedStatement stmt, OtpOutboxMessage message) throws SQLException {
+        stmt.setObject(1, message.getId());
+        stmt.setObject(2, message.getOtpCodeId());
+        stmt.setString(3, message.getChannel().name());
+        stmt.setString(4, message.getDestination());
+        stmt.setString(5, message.getCode());
+        stmt.setTimestamp(6, Timestamp.from(message.getCreatedAt()));
+        stmt.setTimestamp(7, Timestamp.from(message.getCreatedAt()));
+        stmt.setTimestamp(8, Timestamp.from(message.getExpiresAt()));
+        stmt.setString(9, encodeFallbacks(message.getFallbacks()));
+        if (message.getLatencyBudget() != null) {
+            stmt.setInt(10, Math.toIntExact(message.getLatencyBudget().toMillis()));
+        } else {
+            stmt.setNull(10, Types.INTEGER);
+        }
+    }
+
+    @Override
+    public List<OtpOutboxMessage> claim(int limit, Duration lease, Instant now) {
+        List<OtpOutboxMessage> messages = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(CLAIM)) {
+
+            stmt.setTimestamp(1, Timestamp.from(now.plus(lease)));
+            stmt.setTimestamp(2, Timestamp.from(now));
+            stmt.setInt(3, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(mapResultSetToMessage(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error claiming outbox messages", e);
+            throw new RuntimeException("Failed to claim outbox messages", e);
+        }
+
+        return messages;
+    }
+
+    @Override
+    public boolean delete(UUID id, int attempts, UUID otpCodeId, Instant otpCodeCreatedAt,
+                          NotificationChannel deliveredVia) {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement deleteStmt = conn.prepareStatement(DELETE);
+                 PreparedStatement recordStmt = conn.prepareStatement(RECORD_DELIVERY)) {
+                deleteStmt.setObject(1, id);
+                deleteStmt.setInt(2, attempts);
+                if (deleteStmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    return false;
+                }
+
+                recordStmt.setString(1, deliveredVia.name());
+                recordStmt.setObject(2, otpCodeId);
+                recordStmt.setTimestamp(3, Timestamp.from(otpCodeCreatedAt));
+                recordStmt.executeUpdate();
+
+                conn.commit();
+                return true;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error deleting outbox message: {}", id, e);
+            throw new RuntimeException("Failed to delete outbox message", e);
+        }
+    }
+
+    @Override
+    public boolean retryAt(UUID id, int attempts, Instant availableAt, String error) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(RETRY_AT)) {
+
+            stmt.setTimestamp(1, Timestamp.from(availableAt));
+            stmt.setString(2, truncate(error));
+            stmt.setObject(3, id);
+            stmt.setInt(4, attempts);
+            return stmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            logger.error("Error rescheduling outbox message: {}", id, e);
+            throw new RuntimeException("Failed to reschedule outbox message", e);
+        }
+    }
+
+    @Override
+    public boolean release(UUID id, int attempts, Instant availableAt, String error) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(RELEASE)) {
+
+            stmt.setTimestamp(1, Timestamp.from(availableAt));
+            stmt.setString(2, truncate(error));
+            stmt.setObject(3, id);
+            stmt.setInt(4, attempts);
+            return stmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            logger.error("Error releasing outbox message: {}", id, e);
+            throw new RuntimeException("Failed to release outbox message", e);
+        }
+    }
+
+    @Override
+    public boolean markFailed(UUID id, int attempts, String error) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(MARK_FAILED)) {
+
+            stmt.setString(1, truncate(error));
+            stmt.setObject(2, id);
+            stmt.setInt(3, attempts);
+            return stmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            logger.error("Error marking outbox message as failed: {}", id, e);
+            throw new RuntimeException("Failed to mark outbox message as failed", e);
+        }
+    }
+
+    @Override
+    public long purgeExpired(Instant expiredBefore, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+
+        long total = 0;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(PURGE_EXPIRED_BATCH)) {
+
+            stmt.setTimestamp(1, Timestamp.from(expiredBefore));
+            stmt.setInt(2, batchSize);
+
+            int affected;
+            do {
+                affected = stmt.executeUpdate();
+                total += affected;
+            } while (affected == batchSize);
+
+        } catch (SQLException e) {
+            logger.error("Error purging outbox messages expired before {} after {} rows", expiredBefore, total, e);
+            throw new RuntimeException("Failed to purge outbox messages", e);
+        }
+
+        return total;
+    }
+
+    private static String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    private static String encodeFallbacks(List<DeliveryTarget> fallbacks) {
+        if (fallbacks.isEmpty()) {
+            return null;
+        }
+        ArrayNode array = objectMapper.createArrayNode();
+        for (DeliveryTarget target : fallbacks) {
+            array.addObject()
+                .put("channel", target.getChannel().name())
+                .put("destination", target.getDestination());
+        }
+        return array.toString();
+    }
+
+    private static List<DeliveryTarget> decodeFallbacks(String json) throws SQLException {
+        if (json == null) {
+            return List.of();
+        }
+        try {
+            List<DeliveryTarget> fallbacks = new ArrayList<>();
+            for (JsonNode node : objectMapper.readTree(json)) {
+                fallbacks.add(new DeliveryTarget(
+                    NotificationChannel.valueOf(node.path("channel").asText()),
+                    node.path("destination").asText()));
+            }
+            return fallbacks;
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Malformed outbox fallbacks: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private OtpOutboxMessage mapResultSetToMessage(ResultSet rs) throws SQLException {
+        int latencyBudgetMillis = rs.getInt("latency_budget_ms");
+        Duration latencyBudget = rs.wasNull() ? null : Duration.ofMillis(latencyBudgetMillis);
+        return new OtpOutboxMessage(
+            (UUID) rs.getObject("id"),
+            (UUID) rs.getObject("otp_code_id"),
+            NotificationChannel.valueOf(rs.getString("channel")),
+            rs.getString("destination"),
+            rs.getString("code"),
+            rs.getInt("attempts"),
+            rs.getTimestamp("created_at").toInstant(),
+            rs.getTimestamp("expires_at").toInstant(),
+            decodeFallbacks(rs.getString("fallbacks")),
+            latencyBudget
+        );
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.totpsender.repository.impl;
+
+import com.example.totpsender.model.TokenRevocation;
+import com.example.totpsender.repository.TokenRevocationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class TokenRevocationRepositoryImpl implements TokenRevocationRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationRepositoryImpl.class);
+    private final DataSource dataSource;
+
+    private static final String UPSERT_REVOCATION =
+        "INSERT INTO token_revocations (subject, revoked_at, expires_at) VALUES (?, ?, ?) " +
+        "ON CONFLICT (subject) DO UPDATE SET " +
+        "revoked_at = GREATEST(token_revocations.revoked_at, EXCLUDED.revoked_at), " +
+        "expires_at = GREATEST(token_revocations.expires_at, EXCLUDED.expires_at)";
+
+    private static final String FIND_BY_SUBJECT =
+        "SELECT subject, revoked_at, expires_at FROM token_revocations WHERE subject = ?";
+
+    private static final String FIND_ACTIVE =
+        "SELECT subject, revoked_at, expires_at FROM token_revocations WHERE expires_at > ?";
+
+    private static final String DELETE_EXPIRED =
+        "DELETE FROM token_revocations WHERE expires_at <= ?";
+
+    public TokenRevocationRepositoryImpl(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void save(TokenRevocation revocation) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(UPSERT_REVOCATION)) {
+
+            stmt.setString(1, revocation.getSubject());
+            stmt.setTimestamp(2, Timestamp.from(revocation.getRevokedAt()));
+            stmt.setTimestamp(3, Timestamp.from(revocation.getExpiresAt()));
+            stmt.executeUpdate();
+
+            logger.debug("Saved token revocation for subject: {}", revocation.getSubject());
+
+        } catch (SQLException e) {
+            logger.error("Error saving token revocation for subject: {}", revocation.getSubject(), e);
+            throw new RuntimeException("Failed to save token revocation", e);
+        }
+    }
+
+    @Override
+    public Optional<TokenRevocation> findBySubject(String subject) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(FIND_BY_SUBJECT)) {
+
+            stmt.setString(1, subject);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(mapResultSetToRevocation(rs));
+                }
+                return Optional.empty();
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error finding token revocation for subject: {}", subject, e);
+            throw new RuntimeException("Failed to find token revocation", e);
+        }
+    }
+
+    @Override
+    public List<TokenRevocation> findActive(Instant now) {
+        List<TokenRevocation> revocations = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(FIND_ACTIVE)) {
+
+            stmt.setTimestamp(1, Timestamp.from(now));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    revocations.add(mapResultSetToRevocation(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error finding active token revocations", e);
+            throw new RuntimeException("Failed to find active token revocations", e);
+        }
+
+        return revocations;
+    }
+
+    @Override
+    public long deleteExpired(Instant now) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(DELETE_EXPIRED)) {
+
+            stmt.setTimestamp(1, Timestamp.from(now));
+            return stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            logger.error("Error deleting expired token revocations", e);
+            throw new RuntimeException("Failed to delete expired token revocations", e);
+        }
+    }
+
+    private TokenRevocation mapResultSetToRevocation(ResultSet rs) throws SQLException {
+        return new TokenRevocation(
+            rs.getString("subject"),
+            rs.getTimestamp("revoked_at").toInstant(),
+            rs.getTimestamp("expires_at").toInstant()
+        );
+    }
+}
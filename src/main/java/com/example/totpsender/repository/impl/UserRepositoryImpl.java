@@ -3,6 +3,7 @@ package com.example.totpsender.repository.impl;
 import com.example.totpsender.config.DatabaseConfiguration;
 import com.example.totpsender.model.User;
 import com.example.totpsender.model.UserRole;
+import com.example.totpsender.repository.KeysetCursor;
 import com.example.totpsender.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +12,7 @@ import javax.sql.DataSource;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class UserRepositoryImpl implements UserRepository {
 
@@ -29,12 +31,36 @@ public class UserRepositoryImpl implements UserRepository {
     private static final String FIND_BY_USERNAME =
         "SELECT id, username, password_hash, role, created_at, updated_at FROM users WHERE username = ?";
 
+    private static final String FIND_ALL_BY_USERNAMES =
+        "SELECT id, username, password_hash, role, created_at, updated_at FROM users WHERE username = ANY(?)";
+
     private static final String FIND_ALL =
         "SELECT id, username, password_hash, role, created_at, updated_at FROM users ORDER BY created_at";
 
     private static final String FIND_ALL_EXCEPT_ADMINS =
         "SELECT id, username, password_hash, role, created_at, updated_at FROM users WHERE role != 'ADMIN' ORDER BY created_at";
 
+    // Keyset pages: (created_at, id) > (?, ?) walks idx_users_created_at_id instead of skipping OFFSET rows
+    private static final String FIND_PAGE =
+        "SELECT id, username, password_hash, role, created_at, updated_at FROM users " +
+        "ORDER BY created_at, id LIMIT ?";
+
+    private static final String FIND_PAGE_AFTER =
+        "SELECT id, username, password_hash, role, created_at, updated_at FROM users " +
+        "WHERE (created_at, id) > (?, ?) ORDER BY created_at, id LIMIT ?";
+
+    private static final String FIND_PAGE_EXCEPT_ADMINS =
+        "SELECT id, username, password_hash, role, created_at, updated_at FROM users " +
+        "WHERE role != 'ADMIN' ORDER BY created_at, id LIMIT ?";
+
+    private static final String FIND_PAGE_EXCEPT_ADMINS_AFTER =
+        "SELECT id, username, password_hash, role, created_at, updated_at FROM users " +
+        "WHERE role != 'ADMIN' AND (created_at, id) > (?, ?) ORDER BY created_at, id LIMIT ?";
+
+    private static final String STREAM_EXCEPT_ADMINS =
+        "SELECT id, username, password_hash, role, created_at, updated_at FROM users " +
+        "WHERE role != 'ADMIN' ORDER BY created_at, id";
+
     private static final String DELETE_BY_ID = "DELETE FROM users WHERE id = ?";
 
     private static final String EXISTS_BY_ID = "SELECT 1 FROM users WHERE id = ?";
@@ -148,6 +174,38 @@ public class UserRepositoryImpl implements UserRepository {
         }
     }
 
+    @Override
+    public List<User> findAllByUsernames(Collection<String> usernames) {
+        List<User> users = new ArrayList<>();
+        if (usernames.isEmpty()) {
+            return users;
+        }
+
+        // One round trip for the whole set instead of a lookup per username
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(FIND_ALL_BY_USERNAMES)) {
+
+            Array usernameArray = conn.createArrayOf("varchar", usernames.toArray());
+            try {
+                stmt.setArray(1, usernameArray);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        users.add(mapResultSetToUser(rs));
+                    }
+                }
+            } finally {
+                usernameArray.free();
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error finding {} users by username", usernames.size(), e);
+            throw new RuntimeException("Failed to find users by username", e);
+        }
+
+        return users;
+    }
+
     @Override
     public List<User> findAll() {
         return executeQuery(FIND_ALL);
@@ -158,6 +216,73 @@ public class UserRepositoryImpl implements UserRepository {
         return executeQuery(FIND_ALL_EXCEPT_ADMINS);
     }
 
+    @Override
+    public List<User> findAll(KeysetCursor after, int limit) {
+        return executePageQuery(after == null ? FIND_PAGE : FIND_PAGE_AFTER, after, limit);
+    }
+
+    @Override
+    public List<User> findAllExceptAdmins(KeysetCursor after, int limit) {
+        return executePageQuery(after == null ? FIND_PAGE_EXCEPT_ADMINS : FIND_PAGE_EXCEPT_ADMINS_AFTER, after, limit);
+    }
+
+    @Override
+    public void forEachExceptAdmins(int fetchSize, Consumer<User> action) {
+        try (Connection conn = dataSource.getConnection()) {
+            // The driver only fetches in chunks of fetchSize rows inside a transaction;
+            // with autocommit it would materialize the whole result set first
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(STREAM_EXCEPT_ADMINS)) {
+                stmt.setFetchSize(fetchSize);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        action.accept(mapResultSetToUser(rs));
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error streaming users", e);
+            throw new RuntimeException("Failed to stream users", e);
+        }
+    }
+
+    private List<User> executePageQuery(String sql, KeysetCursor after, int limit) {
+        List<User> users = new ArrayList<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            if (after != null) {
+                stmt.setTimestamp(index++, Timestamp.valueOf(after.getCreatedAt()));
+                stmt.setObject(index++, after.getId());
+            }
+            stmt.setInt(index, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    users.add(mapResultSetToUser(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            logger.error("Error executing page query after {}: {}", after, sql, e);
+            throw new RuntimeException("Failed to execute page query", e);
+        }
+
+        return users;
+    }
+
     private List<User> executeQuery(String sql) {
         List<User> users = new ArrayList<>();
 
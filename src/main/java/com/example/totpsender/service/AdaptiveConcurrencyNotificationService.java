@@ -0,0 +1,96 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.exception.RecipientRejectedException;
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.util.AdaptiveConcurrencyLimit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Caps a channel's in-flight sends at a limit that follows the provider's latency instead of a fixed
+// thread count. Sends over the limit are rejected at once. Provider failures, including local
+// rejections further down such as a saturated bulkhead, shrink the limit; a rejected recipient does not
+public class AdaptiveConcurrencyNotificationService implements NotificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyNotificationService.class);
+
+    private final NotificationService delegate;
+    private final NotificationChannel channel;
+    private final AdaptiveConcurrencyLimit limit;
+    private final Counter rejectedCounter;
+
+    public AdaptiveConcurrencyNotificationService(NotificationService delegate, NotificationChannel channel,
+                                                  AdaptiveConcurrencyLimit limit, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.channel = channel;
+        this.limit = limit;
+
+        String tag = channel.name();
+        this.rejectedCounter = Counter.builder("notification.concurrency.rejected")
+                .tag("channel", tag)
+                .description("Notifications rejected because the channel was at its concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("notification.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .tag("channel", tag)
+                .description("Current adaptive concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("notification.concurrency.in_flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .tag("channel", tag)
+                .description("Notifications being sent")
+                .register(meterRegistry);
+
+        logger.info("{} channel adaptive concurrency limit starts at {}", channel, limit.getLimit());
+    }
+
+    @Override
+    public void sendCode(String destination, String code) {
+        AdaptiveConcurrencyLimit.Permit permit = limit.tryAcquire();
+        if (permit == null) {
+            rejectedCounter.increment();
+            throw new NotificationRejectedException("Notification channel " + channel
+                    + " is at its concurrency limit of " + limit.getLimit());
+        }
+
+        long startedAt = System.nanoTime();
+        try {
+            delegate.sendCode(destination, code);
+        } catch (RecipientRejectedException e) {
+            permit.release();
+            throw e;
+        } catch (NotificationException e) {
+            permit.onDropped();
+            throw e;
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+        permit.onSuccess(System.nanoTime() - startedAt);
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public NotificationService getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getChannelName() {
+        return delegate.getChannelName();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return delegate.isAvailable();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
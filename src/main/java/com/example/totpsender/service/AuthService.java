@@ -13,7 +13,6 @@ import com.example.totpsender.repository.UserRepository;
 import com.example.totpsender.util.JwtUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.util.Optional;
 
@@ -23,12 +22,12 @@ public class AuthService {
 
     private final UserRepository userRepository;
     private final JwtUtil jwtUtil;
-    private final BCryptPasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
 
-    public AuthService(UserRepository userRepository, JwtUtil jwtUtil) {
+    public AuthService(UserRepository userRepository, JwtUtil jwtUtil, PasswordHasher passwordHasher) {
         this.userRepository = userRepository;
         this.jwtUtil = jwtUtil;
-        this.passwordEncoder = new BCryptPasswordEncoder();
+        this.passwordHasher = passwordHasher;
     }
 
     public AuthResponse register(RegisterRequest request, boolean isAdmin) {
@@ -46,15 +45,15 @@ public class AuthService {
             throw new AdminAlreadyExistsException("Admin user already exists. Only one admin is allowed.");
         }
 
-        // Hash password
-        String hashedPassword = passwordEncoder.encode(request.getPassword());
+        // Hash password (on the bcrypt pool; throws ServiceOverloadedException when it is saturated)
+        String hashedPassword = passwordHasher.encode(request.getPassword());
 
         // Create and save user
         User user = new User(request.getUsername(), hashedPassword, role);
         user = userRepository.save(user);
 
         // Generate JWT token
-        String token = jwtUtil.generateToken(user.getUsername(), user.getRole().name());
+        String token = jwtUtil.generateToken(user.getId(), user.getUsername(), user.getRole().name());
 
         logger.info("Successfully registered user: {} with role: {}", user.getUsername(), user.getRole());
 
@@ -73,13 +72,13 @@ public class AuthService {
         User user = userOpt.get();
 
         // Verify password
-        if (!passwordEncoder.matches(request.getPassword(), user.getPasswordHash())) {
+        if (!passwordHasher.matches(request.getPassword(), user.getPasswordHash())) {
             logger.warn("Failed login attempt for user: {}", request.getUsername());
             throw new InvalidCredentialsException("Invalid username or password");
         }
 
         // Generate JWT token
-        String token = jwtUtil.generateToken(user.getUsername(), user.getRole().name());
+        String token = jwtUtil.generateToken(user.getId(), user.getUsername(), user.getRole().name());
 
         logger.info("Successfully logged in user: {} with role: {}", user.getUsername(), user.getRole());
 
@@ -110,13 +109,13 @@ public class AuthService {
         User user = userOpt.get();
 
         // Verify password
-        if (!passwordEncoder.matches(password, user.getPasswordHash())) {
+        if (!passwordHasher.matches(password, user.getPasswordHash())) {
             logger.warn("Failed login attempt for user: {}", username);
             throw new InvalidCredentialsException("Invalid username or password");
         }
 
         // Generate JWT token
-        String token = jwtUtil.generateToken(user.getUsername(), user.getRole().name());
+        String token = jwtUtil.generateToken(user.getId(), user.getUsername(), user.getRole().name());
 
         logger.info("Successfully logged in user: {} with role: {}", user.getUsername(), user.getRole());
 
@@ -124,7 +123,7 @@ public class AuthService {
     }
 
     public String generateToken(User user) {
-        return jwtUtil.generateToken(user.getUsername(), user.getRole().name());
+        return jwtUtil.generateToken(user.getId(), user.getUsername(), user.getRole().name());
     }
 
     public User findUserByUsername(String username) {
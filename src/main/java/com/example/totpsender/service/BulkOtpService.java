@@ -0,0 +1,281 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.dto.BulkOtpItemRequest;
+import com.example.totpsender.dto.BulkOtpItemResponse;
+import com.example.totpsender.dto.OtpGenerateRequest;
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.model.User;
+import com.example.totpsender.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// Generates OTP codes for an NDJSON stream of requests. Input is read and answered chunk by chunk,
+// so memory use depends on the chunk size only, not on the size of the request body. Each chunk's
+// codes are committed together with their outbox rows and OtpOutboxDispatcher delivers them
+public class BulkOtpService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkOtpService.class);
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    // Far above any valid item; a longer line is answered with an error instead of being buffered
+    public static final int DEFAULT_MAX_LINE_LENGTH = 4096;
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final UserRepository userRepository;
+    private final OtpService otpService;
+    private final NotificationChannelRegistry notificationChannels;
+    private final int chunkSize;
+    private final int maxLineLength;
+    private final ObjectMapper objectMapper;
+
+    public BulkOtpService(UserRepository userRepository, OtpService otpService,
+                          NotificationChannelRegistry notificationChannels, int chunkSize) {
+        this(userRepository, otpService, notificationChannels, chunkSize, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    public BulkOtpService(UserRepository userRepository, OtpService otpService,
+                          NotificationChannelRegistry notificationChannels, int chunkSize, int maxLineLength) {
+        if (chunkSize <= 0 || maxLineLength <= 0) {
+            throw new IllegalArgumentException("Bulk chunk size and max line length must be positive");
+        }
+        this.userRepository = userRepository;
+        this.otpService = otpService;
+        this.notificationChannels = notificationChannels;
+        this.chunkSize = chunkSize;
+        this.maxLineLength = maxLineLength;
+        this.objectMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    // Every line is generated for the given user; a username in the line is ignored
+    public void generateForUser(UUID userId, String username, InputStream input, OutputStream output)
+            throws IOException {
+        process(new Owner(userId, username), input, output);
+    }
+
+    // Every line names its own user
+    public void generateForUsers(InputStream input, OutputStream output) throws IOException {
+        process(null, input, output);
+    }
+
+    private void process(Owner owner, InputStream input, OutputStream output) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        List<BulkItem> chunk = new ArrayList<>(chunkSize);
+        long lineNumber = 0;
+        long queued = 0;
+        long total = 0;
+        long startedAt = System.nanoTime();
+
+        StringBuilder line = new StringBuilder();
+        int length;
+        while ((length = readLine(reader, line)) >= 0) {
+            lineNumber++;
+            if (length > maxLineLength) {
+                chunk.add(BulkItem.failed(lineNumber, new BulkOtpItemRequest(),
+                        "Line exceeds " + maxLineLength + " characters"));
+            } else if (line.toString().isBlank()) {
+                continue;
+            } else {
+                chunk.add(parse(lineNumber, line.toString(), owner));
+            }
+            if (chunk.size() == chunkSize) {
+                queued += processChunk(chunk, owner, output);
+                total += chunk.size();
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            queued += processChunk(chunk, owner, output);
+            total += chunk.size();
+        }
+
+        logger.info("Bulk OTP generation finished: {} of {} items queued in {} ms",
+                queued, total, (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    // Reads the next line into line, keeping no more than maxLineLength characters of it. Returns the
+    // line's length, maxLineLength + 1 for any longer line, or -1 at the end of the input
+    private int readLine(BufferedReader reader, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int length = 0;
+        int c;
+        while ((c = reader.read()) != -1 && c != '\n') {
+            if (length <= maxLineLength) {
+                length++;
+                line.append((char) c);
+            }
+        }
+        if (c == -1 && length == 0) {
+            return -1;
+        }
+        if (length <= maxLineLength && line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+            line.setLength(line.length() - 1);
+            length--;
+        }
+        return length;
+    }
+
+    private BulkItem parse(long lineNumber, String line, Owner owner) {
+        BulkOtpItemRequest request;
+        try {
+            request = objectMapper.readValue(line, BulkOtpItemRequest.class);
+        } catch (JsonProcessingException e) {
+            return BulkItem.failed(lineNumber, new BulkOtpItemRequest(), "Malformed JSON");
+        }
+
+        if (owner != null) {
+            request.setUsername(owner.username);
+        }
+
+        if (request.getUsername() == null || request.getUsername().isBlank()) {
+            return BulkItem.failed(lineNumber, request, "Username is required");
+        }
+        if (request.getDestination() == null || request.getDestination().isBlank()) {
+            return BulkItem.failed(lineNumber, request, "Destination is required");
+        }
+        NotificationChannel channel;
+        try {
+            channel = otpService.validateChannel(request.getChannel());
+        } catch (IllegalArgumentException e) {
+            return BulkItem.failed(lineNumber, request, e.getMessage());
+        }
+
+        BulkItem item = new BulkItem(lineNumber, request);
+        item.channel = channel;
+        return item;
+    }
+
+    private long processChunk(List<BulkItem> chunk, Owner owner, OutputStream output) throws IOException {
+        Map<String, UUID> userIds = resolveUserIds(chunk, owner);
+
+        List<BulkItem> accepted = new ArrayList<>(chunk.size());
+        List<UUID> acceptedUserIds = new ArrayList<>(chunk.size());
+        List<OtpGenerateRequest> acceptedRequests = new ArrayList<>(chunk.size());
+        for (BulkItem item : chunk) {
+            if (item.message != null) {
+                continue;
+            }
+            UUID userId = userIds.get(item.request.getUsername());
+            if (userId == null) {
+                item.fail("User not found");
+                continue;
+            }
+            // Checked before the code is stored, so unavailable channels do not leave undeliverable codes
+            NotificationService notificationService = notificationChannels.get(item.channel);
+            if (notificationService == null || !notificationService.isAvailable()) {
+                item.fail("Notification channel not available: " + item.channel);
+                continue;
+            }
+            accepted.add(item);
+            acceptedUserIds.add(userId);
+            acceptedRequests.add(new OtpGenerateRequest(
+                    item.request.getOperationId(), item.request.getChannel(), item.request.getDestination()));
+        }
+
+        if (!accepted.isEmpty()) {
+            try {
+                otpService.generateOtpsForDelivery(acceptedUserIds, acceptedRequests);
+                for (BulkItem item : accepted) {
+                    item.queue();
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to generate OTP codes for a chunk of {} items: {}", accepted.size(), e.getMessage(), e);
+                for (BulkItem item : accepted) {
+                    item.fail("Failed to generate OTP");
+                }
+            }
+        }
+
+        long queued = 0;
+        for (BulkItem item : chunk) {
+            if (item.success) {
+                queued++;
+            }
+            output.write(objectMapper.writeValueAsBytes(item.toResponse()));
+            output.write(NEWLINE);
+        }
+        output.flush();
+
+        return queued;
+    }
+
+    private Map<String, UUID> resolveUserIds(List<BulkItem> chunk, Owner owner) {
+        Map<String, UUID> userIds = new HashMap<>();
+        if (owner != null) {
+            userIds.put(owner.username, owner.userId);
+            return userIds;
+        }
+
+        Set<String> usernames = new HashSet<>();
+        for (BulkItem item : chunk) {
+            if (item.message == null) {
+                usernames.add(item.request.getUsername());
+            }
+        }
+
+        for (User user : userRepository.findAllByUsernames(usernames)) {
+            userIds.put(user.getUsername(), user.getId());
+        }
+        return userIds;
+    }
+
+    private static class Owner {
+        private final UUID userId;
+        private final String username;
+
+        private Owner(UUID userId, String username) {
+            this.userId = userId;
+            this.username = username;
+        }
+    }
+
+    private static class BulkItem {
+        private final long lineNumber;
+        private final BulkOtpItemRequest request;
+        private NotificationChannel channel;
+        private boolean success;
+        private String message;
+
+        private BulkItem(long lineNumber, BulkOtpItemRequest request) {
+            this.lineNumber = lineNumber;
+            this.request = request;
+        }
+
+        private static BulkItem failed(long lineNumber, BulkOtpItemRequest request, String message) {
+            BulkItem item = new BulkItem(lineNumber, request);
+            item.fail(message);
+            return item;
+        }
+
+        private void queue() {
+            this.success = true;
+            this.message = "OTP queued for delivery";
+        }
+
+        private void fail(String message) {
+            this.success = false;
+            this.message = message;
+        }
+
+        private BulkOtpItemResponse toResponse() {
+            return new BulkOtpItemResponse(lineNumber, request.getUsername(), request.getOperationId(), success, message);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.exception.NotificationTimeoutException;
+import com.example.totpsender.model.NotificationChannel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs one channel's sends on its own bounded pool, so a hung provider can only tie up that
+// channel's threads. When maxConcurrent sends are running and the queue is full, callers fail
+// fast instead of waiting; a send that takes longer than timeoutMillis is abandoned. The abandoned
+// thread stays busy until the client's own connect/read timeouts let go, which is what those bound
+public class BulkheadNotificationService implements NotificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkheadNotificationService.class);
+
+    private final NotificationService delegate;
+    private final NotificationChannel channel;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final Timer sendTimer;
+    private final Counter rejectedCounter;
+    private final Counter timeoutCounter;
+
+    public BulkheadNotificationService(NotificationService delegate, NotificationChannel channel,
+                                       int maxConcurrent, int queueCapacity, long timeoutMillis,
+                                       MeterRegistry meterRegistry) {
+        if (maxConcurrent <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Bulkhead concurrency and queue capacity must be positive");
+        }
+        this.delegate = delegate;
+        this.channel = channel;
+        this.timeoutMillis = timeoutMillis;
+
+        String threadPrefix = "notify-" + channel.name().toLowerCase() + "-";
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, threadPrefix + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        String tag = channel.name();
+        this.sendTimer = Timer.builder("notification.send")
+                .tag("channel", tag)
+                .description("Time the provider took to accept a notification")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("notification.bulkhead.rejected")
+                .tag("channel", tag)
+                .description("Notifications rejected because the channel was saturated")
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder("notification.bulkhead.timeouts")
+                .tag("channel", tag)
+                .description("Notifications abandoned after the channel timeout")
+                .register(meterRegistry);
+        Gauge.builder("notification.bulkhead.active", executor, ThreadPoolExecutor::getActiveCount)
+                .tag("channel", tag)
+                .description("Notifications being sent")
+                .register(meterRegistry);
+        Gauge.builder("notification.bulkhead.queue.size", executor, pool -> pool.getQueue().size())
+                .tag("channel", tag)
+                .description("Notifications waiting for a channel thread")
+                .register(meterRegistry);
+
+        logger.info("{} channel bulkhead: maxConcurrent={}, queueCapacity={}, timeout={} ms",
+                channel, maxConcurrent, queueCapacity, timeoutMillis);
+    }
+
+    @Override
+    public void sendCode(String destination, String code) {
+        Future<?> future;
+        try {
+            future = executor.submit(() -> sendTimer.record(() -> delegate.sendCode(destination, code)));
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new NotificationRejectedException("Notification channel " + channel + " is saturated", e);
+        }
+
+        try {
+            future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeoutCounter.increment();
+            throw new NotificationTimeoutException("Notification channel " + channel + " timed out after " + timeoutMillis + " ms", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new NotificationException("Interrupted while sending via " + channel, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new NotificationException("Failed to send via " + channel, e.getCause());
+        }
+    }
+
+    public NotificationService getDelegate() {
+        return delegate;
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public String getChannelName() {
+        return delegate.getChannelName();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return delegate.isAvailable();
+    }
+
+    // Sends already accepted get timeoutMillis to finish before the delegate's clients are closed
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+}
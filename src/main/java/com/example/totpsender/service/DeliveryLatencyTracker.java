@@ -0,0 +1,100 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.model.NotificationChannel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+// p99 of each channel's recent successful sends, over the last `window` samples. It sets how long
+// a hedged delivery waits for the primary channel before trying the next one: a channel that
+// usually answers in 300 ms gets a short budget, one that is slow at the best of times a long one
+public class DeliveryLatencyTracker {
+
+    private final int minSamples;
+    private final Duration defaultBudget;
+    private final Duration minBudget;
+    private final Duration maxBudget;
+    private final Map<NotificationChannel, Window> windows = new EnumMap<>(NotificationChannel.class);
+
+    public DeliveryLatencyTracker(int window, int minSamples, Duration defaultBudget, Duration minBudget,
+                                  Duration maxBudget, MeterRegistry meterRegistry) {
+        if (window <= 0 || minSamples > window) {
+            throw new IllegalArgumentException("Latency window must be positive and hold at least minSamples");
+        }
+        this.minSamples = minSamples;
+        this.defaultBudget = defaultBudget;
+        this.minBudget = minBudget;
+        this.maxBudget = maxBudget;
+
+        for (NotificationChannel channel : NotificationChannel.values()) {
+            Window samples = new Window(window);
+            windows.put(channel, samples);
+            Gauge.builder("otp.delivery.latency.p99", samples, w -> w.percentileNanos(0.99) / 1e9)
+                    .tag("channel", channel.name())
+                    .description("p99 of recent successful sends, in seconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    public void record(NotificationChannel channel, Duration latency) {
+        windows.get(channel).add(latency.toNanos());
+    }
+
+    // Null until the channel has minSamples samples
+    public Duration p99(NotificationChannel channel) {
+        Window samples = windows.get(channel);
+        if (samples.size() < minSamples) {
+            return null;
+        }
+        return Duration.ofNanos(samples.percentileNanos(0.99));
+    }
+
+    public Duration budgetFor(NotificationChannel channel) {
+        Duration p99 = p99(channel);
+        if (p99 == null) {
+            return defaultBudget;
+        }
+        if (p99.compareTo(minBudget) < 0) {
+            return minBudget;
+        }
+        return p99.compareTo(maxBudget) > 0 ? maxBudget : p99;
+    }
+
+    private static final class Window {
+        private final long[] samples;
+        // Guarded by this
+        private int next;
+        private int size;
+
+        private Window(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        private synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private long percentileNanos(double percentile) {
+            long[] sorted;
+            synchronized (this) {
+                if (size == 0) {
+                    return 0;
+                }
+                sorted = Arrays.copyOf(samples, size);
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(index, 0)];
+        }
+    }
+}
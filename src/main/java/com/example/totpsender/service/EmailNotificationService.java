@@ -1,11 +1,14 @@
 package com.example.totpsender.service;
 
 import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.RecipientRejectedException;
 import com.example.totpsender.util.PropertiesLoader;
+import com.sun.mail.smtp.SMTPSendFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.mail.*;
+import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import java.util.Properties;
@@ -18,9 +21,13 @@ public class EmailNotificationService implements NotificationService {
     private final String password;
     private final String fromEmail;
     private final Session session;
+    private final SmtpTransportPool transportPool;
 
     public EmailNotificationService() {
-        Properties config = PropertiesLoader.loadProperties("email.properties");
+        this(PropertiesLoader.loadProperties("email.properties"));
+    }
+
+    public EmailNotificationService(Properties config) {
         this.username = config.getProperty("email.username");
         this.password = config.getProperty("email.password");
         this.fromEmail = config.getProperty("email.from");
@@ -29,6 +36,11 @@ public class EmailNotificationService implements NotificationService {
                 return new PasswordAuthentication(username, password);
             }
         });
+        this.transportPool = new SmtpTransportPool(session, username, password,
+                Integer.parseInt(config.getProperty("email.smtp.pool.size", "4")),
+                Integer.parseInt(config.getProperty("email.smtp.pool.max_messages_per_connection", "100")),
+                Long.parseLong(config.getProperty("email.smtp.pool.validate_after_idle_millis", "5000")),
+                Long.parseLong(config.getProperty("email.smtp.pool.acquire_timeout_millis", "10000")));
     }
 
     @Override
@@ -40,14 +52,37 @@ public class EmailNotificationService implements NotificationService {
             message.setSubject("Your OTP Code");
             message.setText("Your verification code is: " + code);
 
-            Transport.send(message);
+            transportPool.send(message);
             logger.info("Email with OTP code sent successfully to: {}", destination);
         } catch (MessagingException e) {
             logger.error("Failed to send email to: {}", destination, e);
+            if (rejectedForGood(e)) {
+                throw new RecipientRejectedException("Email rejected: " + e.getMessage(), e);
+            }
             throw new NotificationException("Failed to send email", e);
         }
     }
 
+    // A malformed address, a refused recipient or a 5xx reply: the server is fine, this message is not
+    private static boolean rejectedForGood(MessagingException e) {
+        if (e instanceof AddressException) {
+            return true;
+        }
+        if (e instanceof SMTPSendFailedException) {
+            return ((SMTPSendFailedException) e).getReturnCode() / 100 == 5;
+        }
+        if (e instanceof SendFailedException) {
+            Address[] invalid = ((SendFailedException) e).getInvalidAddresses();
+            return invalid != null && invalid.length > 0;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        transportPool.close();
+    }
+
     @Override
     public String getChannelName() {
         return "EMAIL";
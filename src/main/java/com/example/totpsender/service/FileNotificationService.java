@@ -1,18 +1,22 @@
 package com.example.totpsender.service;
 
 import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.exception.NotificationTimeoutException;
+import com.example.totpsender.util.AsyncFileAppender;
 import com.example.totpsender.util.PropertiesLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class FileNotificationService implements NotificationService {
 
@@ -22,30 +26,75 @@ public class FileNotificationService implements NotificationService {
     private final String outputDirectory;
     private final String filename;
     private final boolean appendMode;
+    // Codes are written by the appender's single writer thread; sendCode waits until its entry is
+    // written, so a send only succeeds, and the outbox only drops the row, once the code is in the file
+    private final AsyncFileAppender appender;
+    private final long writeTimeoutMillis;
 
     public FileNotificationService() {
-        Properties config = PropertiesLoader.loadProperties("file.properties");
+        this(PropertiesLoader.loadProperties("file.properties"));
+    }
+
+    public FileNotificationService(Properties config) {
         this.outputDirectory = config.getProperty("file.output.directory");
         this.filename = config.getProperty("file.output.filename");
         this.appendMode = Boolean.parseBoolean(config.getProperty("file.append.mode", "true"));
+        this.writeTimeoutMillis = Long.parseLong(config.getProperty("file.write.timeout_millis", "5000"));
+
+        this.appender = isAvailable()
+                ? new AsyncFileAppender(Paths.get(outputDirectory, filename), appendMode,
+                        Integer.parseInt(config.getProperty("file.queue.capacity", "10000")),
+                        Integer.parseInt(config.getProperty("file.batch.max_entries", "512")),
+                        AsyncFileAppender.FsyncPolicy.valueOf(
+                                config.getProperty("file.fsync.policy", "interval").toUpperCase(Locale.ROOT)),
+                        Long.parseLong(config.getProperty("file.fsync.interval_millis", "1000")),
+                        Long.parseLong(config.getProperty("file.rotate.max_bytes", "0")),
+                        Long.parseLong(config.getProperty("file.rotate.interval_millis", "0")),
+                        Integer.parseInt(config.getProperty("file.rotate.max_files", "10")))
+                : null;
     }
 
     @Override
     public void sendCode(String destination, String code) {
+        if (appender == null) {
+            throw new NotificationException("File channel is not configured");
+        }
+
+        StringBuilder entry = new StringBuilder(64 + destination.length());
+        entry.append('[');
+        TIMESTAMP_FORMAT.formatTo(LocalDateTime.now(), entry);
+        entry.append("] Destination: ").append(destination)
+                .append(", Code: ").append(code)
+                .append(System.lineSeparator());
+
+        CompletableFuture<Void> written = appender.submit(entry.toString());
+        if (written == null) {
+            logger.error("File channel queue is full, dropping OTP code for destination: {}", destination);
+            throw new NotificationRejectedException("Failed to save OTP code to file: queue is full");
+        }
+
         try {
-            Path filePath = Paths.get(outputDirectory, filename);
-            String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMAT);
-            String logEntry = String.format("[%s] Destination: %s, Code: %s%n", timestamp, destination, code);
-
-            try (PrintWriter writer = new PrintWriter(new FileWriter(filePath.toFile(), appendMode))) {
-                writer.print(logEntry);
-                writer.flush();
-            }
-
-            logger.info("OTP code saved to file for destination: {}", destination);
-        } catch (IOException e) {
-            logger.error("Failed to save OTP code to file for destination: {}", destination, e);
-            throw new NotificationException("Failed to save OTP code to file", e);
+            written.get(writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            logger.error("Failed to save OTP code to file for destination: {}", destination, e.getCause());
+            throw new NotificationException("Failed to save OTP code to file", e.getCause());
+        } catch (TimeoutException e) {
+            throw new NotificationTimeoutException("OTP code was not written to file within " + writeTimeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotificationException("Interrupted while saving OTP code to file", e);
+        }
+        logger.debug("OTP code saved to file for destination: {}", destination);
+    }
+
+    public long getDroppedEntries() {
+        return appender == null ? 0 : appender.getDroppedEntries();
+    }
+
+    @Override
+    public void close() {
+        if (appender != null) {
+            appender.close();
         }
     }
 
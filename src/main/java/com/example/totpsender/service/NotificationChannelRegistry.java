@@ -0,0 +1,63 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.model.NotificationChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// One long-lived NotificationService per channel, created at startup and shared by all requests,
+// so sending does not re-read configuration or rebuild clients
+public class NotificationChannelRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationChannelRegistry.class);
+
+    private final Map<NotificationChannel, NotificationService> services = new EnumMap<>(NotificationChannel.class);
+
+    public NotificationChannelRegistry(Map<NotificationChannel, Supplier<? extends NotificationService>> factories) {
+        for (Map.Entry<NotificationChannel, Supplier<? extends NotificationService>> entry : factories.entrySet()) {
+            try {
+                services.put(entry.getKey(), entry.getValue().get());
+            } catch (RuntimeException e) {
+                // A broken channel must not keep the others from starting; it is reported as unavailable
+                logger.error("Failed to initialize {} notification channel: {}", entry.getKey(), e.getMessage(), e);
+            }
+        }
+        logger.info("Notification channels initialized: {}", getAvailability());
+    }
+
+    // Null if the channel failed to initialize
+    public NotificationService get(NotificationChannel channel) {
+        return services.get(channel);
+    }
+
+    // Null for unknown channel names as well
+    public NotificationService get(String channel) {
+        try {
+            return get(NotificationChannel.fromName(channel));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public Map<NotificationChannel, Boolean> getAvailability() {
+        Map<NotificationChannel, Boolean> availability = new EnumMap<>(NotificationChannel.class);
+        for (NotificationChannel channel : NotificationChannel.values()) {
+            NotificationService service = services.get(channel);
+            availability.put(channel, service != null && service.isAvailable());
+        }
+        return availability;
+    }
+
+    public void close() {
+        for (Map.Entry<NotificationChannel, NotificationService> entry : services.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (RuntimeException e) {
+                logger.warn("Failed to close {} notification channel: {}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+}
@@ -7,4 +7,8 @@ public interface NotificationService {
     String getChannelName();
 
     boolean isAvailable();
+
+    // Releases clients held for the lifetime of the service
+    default void close() {
+    }
 }
@@ -1,39 +1,39 @@
 package com.example.totpsender.service;
 
-import com.example.totpsender.model.OtpCode;
-import com.example.totpsender.model.OtpStatus;
 import com.example.totpsender.repository.OtpCodeRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import java.time.Duration;
+import java.time.Instant;
 
 public class OtpCleanupTask implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(OtpCleanupTask.class);
 
     private final OtpCodeRepository otpCodeRepository;
+    private final int batchSize;
+    private final Duration lookback;
 
-    public OtpCleanupTask(OtpCodeRepository otpCodeRepository) {
+    public OtpCleanupTask(OtpCodeRepository otpCodeRepository, int batchSize, int retentionDays) {
         this.otpCodeRepository = otpCodeRepository;
+        this.batchSize = batchSize;
+        this.lookback = Duration.ofDays(retentionDays);
     }
 
     @Override
     public void run() {
         try {
             logger.debug("Starting OTP cleanup task...");
+            long startedAt = System.nanoTime();
 
-            // Получаем просроченные коды
-            List<OtpCode> expiredCodes = otpCodeRepository.findExpiredCodes();
+            // Переводим просроченные коды в EXPIRED пачками на стороне БД;
+            // более старые партиции все равно удаляются по retention
+            Instant now = Instant.now();
+            long expired = otpCodeRepository.expireBefore(now, now.minus(lookback), batchSize);
+            long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
 
-            if (!expiredCodes.isEmpty()) {
-                logger.info("Found {} expired OTP codes to clean up", expiredCodes.size());
-
-                // Обновляем статус на EXPIRED
-                for (OtpCode code : expiredCodes) {
-                    otpCodeRepository.updateStatus(code.getId(), OtpStatus.EXPIRED);
-                }
-
-                logger.info("Successfully updated {} OTP codes to EXPIRED status", expiredCodes.size());
+            if (expired > 0) {
+                logger.info("Successfully updated {} OTP codes to EXPIRED status in {} ms", expired, elapsedMillis);
             } else {
                 logger.debug("No expired OTP codes found");
             }
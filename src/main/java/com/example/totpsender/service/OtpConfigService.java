@@ -7,6 +7,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class OtpConfigService {
 
@@ -14,18 +15,57 @@ public class OtpConfigService {
 
     private final OtpConfigRepository otpConfigRepository;
 
+    // The published config is never modified; an update publishes a new instance. OtpConfig is mutable,
+    // so it is never handed out either: callers get their own copy.
+    // Loaded on first use and replaced on local updates and otp_config_changed notifications
+    private final AtomicReference<OtpConfig> current = new AtomicReference<>();
+
     public OtpConfigService(OtpConfigRepository otpConfigRepository) {
         this.otpConfigRepository = otpConfigRepository;
     }
 
     public OtpConfig getCurrentConfig() {
+        OtpConfig config = current.get();
+        if (config == null) {
+            return reload();
+        }
+        return copyOf(config);
+    }
+
+    public OtpConfig reload() {
         Optional<OtpConfig> configOpt = otpConfigRepository.findFirst();
+        OtpConfig config;
         if (configOpt.isEmpty()) {
             // Create default config if none exists
             logger.info("No OTP config found, creating default configuration");
-            return createDefaultConfig();
+            config = createDefaultConfig();
+        } else {
+            config = configOpt.get();
         }
-        return configOpt.get();
+        return publish(config);
+    }
+
+    // Called with the version from an otp_config_changed notification
+    public void onConfigChanged(long version) {
+        OtpConfig config = current.get();
+        if (config != null && config.getVersion() == version) {
+            return;
+        }
+        OtpConfig reloaded = reload();
+        logger.info("OTP configuration reloaded after change notification: version={}", reloaded.getVersion());
+    }
+
+    // Returns a copy of the config that ends up published
+    private OtpConfig publish(OtpConfig config) {
+        // A late reload must not replace a newer version of the same row
+        return copyOf(current.accumulateAndGet(copyOf(config), (previous, next) ->
+                previous != null && previous.getId() != null && previous.getId().equals(next.getId())
+                        && previous.getVersion() > next.getVersion() ? previous : next));
+    }
+
+    private static OtpConfig copyOf(OtpConfig config) {
+        return new OtpConfig(config.getId(), config.getCodeLength(), config.getTtlSeconds(),
+                config.getVersion(), config.getCreatedAt(), config.getUpdatedAt());
     }
 
     public OtpConfig getOtpConfig() {
@@ -50,10 +90,10 @@ public class OtpConfigService {
             config = new OtpConfig(request.getCodeLength(), request.getTtlSeconds());
         }
 
-        config = otpConfigRepository.save(config);
+        config = publish(otpConfigRepository.save(config));
 
-        logger.info("Successfully updated OTP configuration: length={}, ttl={}",
-                   config.getCodeLength(), config.getTtlSeconds());
+        logger.info("Successfully updated OTP configuration: length={}, ttl={}, version={}",
+                   config.getCodeLength(), config.getTtlSeconds(), config.getVersion());
 
         return config;
     }
@@ -77,10 +117,10 @@ public class OtpConfigService {
             config = new OtpConfig(codeLength, ttlSeconds);
         }
 
-        config = otpConfigRepository.save(config);
+        config = publish(otpConfigRepository.save(config));
 
-        logger.info("Successfully updated OTP configuration: length={}, ttl={}",
-                   config.getCodeLength(), config.getTtlSeconds());
+        logger.info("Successfully updated OTP configuration: length={}, ttl={}, version={}",
+                   config.getCodeLength(), config.getTtlSeconds(), config.getVersion());
 
         return config;
     }
@@ -90,7 +130,7 @@ public class OtpConfigService {
             throw new IllegalArgumentException("Code length must be between 4 and 8");
         }
 
-        if (request.getTtlSeconds() < 30 || request.getTtlSeconds() > 3600) {
+        if (request.getTtlSeconds() < 30 || request.getTtlSeconds() > OtpConfig.MAX_TTL_SECONDS) {
             throw new IllegalArgumentException("TTL must be between 30 and 3600 seconds");
         }
     }
@@ -100,7 +140,7 @@ public class OtpConfigService {
             throw new IllegalArgumentException("Code length must be between 4 and 8");
         }
 
-        if (ttlSeconds < 30 || ttlSeconds > 3600) {
+        if (ttlSeconds < 30 || ttlSeconds > OtpConfig.MAX_TTL_SECONDS) {
             throw new IllegalArgumentException("TTL must be between 30 and 3600 seconds");
         }
     }
@@ -0,0 +1,467 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.exception.NotificationTimeoutException;
+import com.example.totpsender.exception.RecipientRejectedException;
+import com.example.totpsender.model.DeliveryTarget;
+import com.example.totpsender.model.OtpOutboxMessage;
+import com.example.totpsender.repository.OtpOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Delivers codes from otp_outbox. One poller claims due rows, never more than there are idle
+// workers, and hands each to the worker pool. A delivered row is deleted; a failed one is retried
+// with exponential backoff until maxAttempts or until the code expires, then marked FAILED. A row
+// whose recipient was rejected is marked FAILED at once; one refused by a local limit (concurrency
+// limit, full bulkhead, open circuit) goes back after rejectedRetryDelay without using up an attempt.
+// Several nodes can run dispatchers at once: claims skip rows leased by the others.
+//
+// A message with fallbacks is hedged: if the primary channel has not acknowledged within the
+// latency budget, the same code also goes out on the next channel, and so on; a channel that fails
+// outright is skipped at once. The first channel to deliver wins and is recorded on the code
+public class OtpOutboxDispatcher implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(OtpOutboxDispatcher.class);
+
+    // Stops with the scheduled tasks: after the web server, before the connection pool and the channels
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+    // Primary plus at most three fallbacks, as accepted by the API
+    private static final int MAX_TARGETS = 4;
+    // A hedged delivery stops waiting this long before its lease runs out, so the row is settled
+    // before another dispatcher can claim it
+    private static final Duration LEASE_MARGIN = Duration.ofSeconds(5);
+
+    private final OtpOutboxRepository repository;
+    private final NotificationChannelRegistry channels;
+    private final int workers;
+    private final int batchSize;
+    private final Duration lease;
+    private final long pollIntervalMillis;
+    private final int maxAttempts;
+    private final Duration retryBaseDelay;
+    private final Duration retryMaxDelay;
+    private final Duration rejectedRetryDelay;
+    private final long shutdownTimeoutSeconds;
+    private final Semaphore idleWorkers;
+    private final ExecutorService workerPool;
+    // Runs the sends of hedged messages so a worker can stop waiting on a slow channel
+    private final ThreadPoolExecutor hedgePool;
+    private final DeliveryLatencyTracker latencies;
+    private final MeterRegistry meterRegistry;
+    private final Timer deliveryLagTimer;
+    private final Counter deliveredCounter;
+    private final Counter retriedCounter;
+    private final Counter deferredCounter;
+    private final Counter failedCounter;
+    // Guards wakeUpRequested; notified when new rows are announced
+    private final Object monitor = new Object();
+    private boolean wakeUpRequested;
+    private Thread poller;
+    private volatile boolean running;
+
+    public OtpOutboxDispatcher(OtpOutboxRepository repository, NotificationChannelRegistry channels,
+                               int workers, int batchSize, Duration lease, long pollIntervalMillis,
+                               int maxAttempts, Duration retryBaseDelay, Duration retryMaxDelay,
+                               Duration rejectedRetryDelay, long shutdownTimeoutSeconds, DeliveryLatencyTracker latencies,
+                               MeterRegistry meterRegistry) {
+        if (workers <= 0 || batchSize <= 0 || maxAttempts <= 0) {
+            throw new IllegalArgumentException("Outbox workers, batch size and max attempts must be positive");
+        }
+        this.repository = repository;
+        this.channels = channels;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.lease = lease;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseDelay = retryBaseDelay;
+        this.retryMaxDelay = retryMaxDelay;
+        this.rejectedRetryDelay = rejectedRetryDelay;
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+        this.idleWorkers = new Semaphore(workers);
+        this.latencies = latencies;
+        this.meterRegistry = meterRegistry;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "otp-outbox-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Losing sends keep running until their channel gives up, so allow a few beyond one set per worker
+        AtomicInteger hedgeThreadNumber = new AtomicInteger();
+        this.hedgePool = new ThreadPoolExecutor(0, workers * MAX_TARGETS * 2, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "otp-outbox-hedge-" + hedgeThreadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        this.deliveryLagTimer = Timer.builder("otp.outbox.delivery.lag")
+                .description("Time from OTP generation to successful delivery")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.deliveredCounter = outcomeCounter(meterRegistry, "delivered");
+        this.retriedCounter = outcomeCounter(meterRegistry, "retried");
+        this.deferredCounter = outcomeCounter(meterRegistry, "deferred");
+        this.failedCounter = outcomeCounter(meterRegistry, "failed");
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("otp.outbox.deliveries")
+                .tag("outcome", outcome)
+                .description("OTP outbox delivery attempts by outcome")
+                .register(meterRegistry);
+    }
+
+    // Called for every otp_outbox notification and after the listener reconnects
+    public void wakeUp() {
+        synchronized (monitor) {
+            wakeUpRequested = true;
+            monitor.notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        poller = new Thread(this::pollLoop, "otp-outbox-poller");
+        poller.setDaemon(true);
+        poller.start();
+        logger.info("OTP outbox dispatcher started: workers={}, batchSize={}, lease={}s, maxAttempts={}",
+                workers, batchSize, lease.toSeconds(), maxAttempts);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        logger.info("Stopping OTP outbox dispatcher...");
+        running = false;
+        poller.interrupt();
+        try {
+            poller.join(TimeUnit.SECONDS.toMillis(shutdownTimeoutSeconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Deliveries in progress finish; anything not completed is claimed again after its lease
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+                logger.warn("OTP outbox deliveries did not finish in time, interrupting");
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // Only losing hedged sends can be left, and their codes were already delivered
+        hedgePool.shutdownNow();
+        logger.info("OTP outbox dispatcher stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                idleWorkers.acquire();
+                int permits = 1 + idleWorkers.drainPermits();
+                int wanted = Math.min(permits, batchSize);
+                idleWorkers.release(permits - wanted);
+
+                List<OtpOutboxMessage> claimed;
+                Instant claimedAt = Instant.now();
+                try {
+                    claimed = running ? repository.claim(wanted, lease, claimedAt) : List.of();
+                } catch (RuntimeException e) {
+                    idleWorkers.release(wanted);
+                    logger.error("Failed to claim OTP outbox messages: {}", e.getMessage());
+                    awaitWakeUp();
+                    continue;
+                }
+
+                idleWorkers.release(wanted - claimed.size());
+                for (OtpOutboxMessage message : claimed) {
+                    workerPool.execute(() -> {
+                        try {
+                            deliver(message, claimedAt.plus(lease));
+                        } finally {
+                            idleWorkers.release();
+                        }
+                    });
+                }
+
+                // A full claim means more rows are probably due; otherwise wait for a notification
+                if (claimed.size() < wanted) {
+                    awaitWakeUp();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void awaitWakeUp() throws InterruptedException {
+        synchronized (monitor) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis);
+            while (!wakeUpRequested && running) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+            }
+            wakeUpRequested = false;
+        }
+    }
+
+    void deliver(OtpOutboxMessage message) {
+        deliver(message, Instant.now().plus(lease));
+    }
+
+    private void deliver(OtpOutboxMessage message, Instant leasedUntil) {
+        Instant now = Instant.now();
+        if (!message.getExpiresAt().isAfter(now)) {
+            fail(message, "Code expired before it could be delivered");
+            return;
+        }
+
+        DeliveryTarget winner;
+        try {
+            if (message.getFallbacks().isEmpty()) {
+                winner = message.getPrimary();
+                send(winner, message.getCode());
+            } else {
+                winner = deliverHedged(message, leasedUntil.minus(LEASE_MARGIN));
+            }
+        } catch (RuntimeException e) {
+            onDeliveryFailed(message, e);
+            return;
+        }
+
+        deliveredCounter.increment();
+        deliveryLagTimer.record(Duration.between(message.getCreatedAt(), Instant.now()));
+        meterRegistry.counter("otp.outbox.delivered.via", "channel", winner.getChannel().name(),
+                "fallback", String.valueOf(!winner.equals(message.getPrimary()))).increment();
+        try {
+            if (!repository.delete(message.getId(), message.getAttempts(), message.getOtpCodeId(),
+                    message.getCreatedAt(), winner.getChannel())) {
+                logger.warn("Outbox message {} was re-claimed before delivery completed; it may be sent twice",
+                        message.getId());
+            }
+        } catch (RuntimeException e) {
+            // The lease runs out and the code is sent again: at-least-once delivery
+            logger.error("Delivered outbox message {} but failed to remove it: {}", message.getId(), e.getMessage());
+        }
+    }
+
+    private void send(DeliveryTarget target, String code) {
+        NotificationService channel = channels.get(target.getChannel());
+        if (channel == null) {
+            throw new IllegalStateException("Notification channel not configured: " + target.getChannel());
+        }
+        // Mostly an open circuit; the code's expiry bounds how long the row keeps coming back
+        if (!channel.isAvailable()) {
+            throw new NotificationRejectedException("Notification channel not available: " + target.getChannel());
+        }
+        long startedAt = System.nanoTime();
+        channel.sendCode(target.getDestination(), code);
+        latencies.record(target.getChannel(), Duration.ofNanos(System.nanoTime() - startedAt));
+    }
+
+    // Returns the first target that delivered, or throws the last failure when none did. Gives up at
+    // the code's expiry or at deadline, whichever comes first, even with sends still in flight
+    private DeliveryTarget deliverHedged(OtpOutboxMessage message, Instant deadline) {
+        if (message.getExpiresAt().isBefore(deadline)) {
+            deadline = message.getExpiresAt();
+        }
+        List<DeliveryTarget> targets = new ArrayList<>(MAX_TARGETS);
+        targets.add(message.getPrimary());
+        targets.addAll(message.getFallbacks());
+        BlockingQueue<HedgeResult> results = new LinkedBlockingQueue<>();
+
+        int launched = 0;
+        int finished = 0;
+        RuntimeException lastFailure = null;
+        launch(targets.get(launched++), message.getCode(), results);
+        try {
+            while (true) {
+                Duration remaining = Duration.between(Instant.now(), deadline);
+                Duration wait = remaining;
+                if (launched < targets.size()) {
+                    Duration budget = budget(message, targets.get(launched - 1));
+                    wait = budget.compareTo(remaining) < 0 ? budget : remaining;
+                }
+                HedgeResult result = results.poll(Math.max(wait.toNanos(), 0), TimeUnit.NANOSECONDS);
+
+                if (result == null) {
+                    if (launched == targets.size() || !Instant.now().isBefore(deadline)) {
+                        // Sends still in flight may land, so this is not a clean failure
+                        throw new NotificationTimeoutException("No channel delivered before the lease or the code ran out");
+                    }
+                    logger.info("Outbox message {} not delivered via {} within {} ms, also sending via {}",
+                            message.getId(), targets.get(launched - 1), wait.toMillis(), targets.get(launched));
+                    meterRegistry.counter("otp.outbox.hedges", "channel", targets.get(launched).getChannel().name())
+                            .increment();
+                    launch(targets.get(launched++), message.getCode(), results);
+                    continue;
+                }
+
+                finished++;
+                if (result.failure == null) {
+                    return result.target;
+                }
+                // The outcome follows the worst channel: a provider failure costs an attempt, local
+                // rejections only defer the row, and it is given up for good when every channel refused it
+                if (lastFailure == null || severity(result.failure) >= severity(lastFailure)) {
+                    lastFailure = result.failure;
+                }
+                logger.warn("Outbox message {} failed via {}: {}", message.getId(), result.target,
+                        result.failure.getMessage());
+                if (launched < targets.size()) {
+                    launch(targets.get(launched++), message.getCode(), results);
+                } else if (finished == launched) {
+                    throw lastFailure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotificationException("Interrupted while delivering outbox message " + message.getId(), e);
+        }
+    }
+
+    private void launch(DeliveryTarget target, String code, BlockingQueue<HedgeResult> results) {
+        try {
+            hedgePool.execute(() -> {
+                try {
+                    send(target, code);
+                    results.add(new HedgeResult(target, null));
+                } catch (RuntimeException e) {
+                    results.add(new HedgeResult(target, e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            results.add(new HedgeResult(target, new NotificationRejectedException("No thread free to send via " + target, e)));
+        }
+    }
+
+    // An explicit budget from the request wins; otherwise the target channel's recent p99
+    private Duration budget(OtpOutboxMessage message, DeliveryTarget target) {
+        return message.getLatencyBudget() != null ? message.getLatencyBudget() : latencies.budgetFor(target.getChannel());
+    }
+
+    private static int severity(RuntimeException failure) {
+        if (failure instanceof RecipientRejectedException) {
+            return 0;
+        }
+        return failure instanceof NotificationRejectedException ? 1 : 2;
+    }
+
+    private void onDeliveryFailed(OtpOutboxMessage message, RuntimeException failure) {
+        if (failure instanceof NotificationRejectedException) {
+            defer(message, failure);
+            return;
+        }
+
+        Instant retryAt = Instant.now().plus(backoff(message.getAttempts()));
+        if (failure instanceof RecipientRejectedException
+                || message.getAttempts() >= maxAttempts || !retryAt.isBefore(message.getExpiresAt())) {
+            fail(message, failure.getMessage());
+            return;
+        }
+
+        logger.warn("Delivery of outbox message {} via {} failed (attempt {} of {}), retrying at {}: {}",
+                message.getId(), message.getChannel(), message.getAttempts(), maxAttempts, retryAt,
+                failure.getMessage());
+        retriedCounter.increment();
+        try {
+            repository.retryAt(message.getId(), message.getAttempts(), retryAt, failure.getMessage());
+        } catch (RuntimeException e) {
+            // The row is picked up again when its lease runs out
+            logger.error("Failed to reschedule outbox message {}: {}", message.getId(), e.getMessage());
+        }
+    }
+
+    // Nothing reached the provider, so the claim is handed back without counting as an attempt
+    private void defer(OtpOutboxMessage message, RuntimeException failure) {
+        Instant retryAt = Instant.now().plus(rejectedRetryDelay);
+        if (!retryAt.isBefore(message.getExpiresAt())) {
+            fail(message, failure.getMessage());
+            return;
+        }
+
+        logger.debug("Delivery of outbox message {} via {} refused locally, retrying at {}: {}",
+                message.getId(), message.getChannel(), retryAt, failure.getMessage());
+        deferredCounter.increment();
+        try {
+            repository.release(message.getId(), message.getAttempts(), retryAt, failure.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Failed to release outbox message {}: {}", message.getId(), e.getMessage());
+        }
+    }
+
+    private void fail(OtpOutboxMessage message, String error) {
+        logger.error("Giving up on outbox message {} via {} after {} attempts: {}",
+                message.getId(), message.getChannel(), message.getAttempts(), error);
+        failedCounter.increment();
+        try {
+            repository.markFailed(message.getId(), message.getAttempts(), error);
+        } catch (RuntimeException e) {
+            logger.error("Failed to mark outbox message {} as failed: {}", message.getId(), e.getMessage());
+        }
+    }
+
+    // attempts is 1 after the first claim: base, 2 x base, 4 x base, ... capped at retryMaxDelay
+    Duration backoff(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 30);
+        Duration delay = retryBaseDelay.multipliedBy(1L << exponent);
+        return delay.compareTo(retryMaxDelay) > 0 ? retryMaxDelay : delay;
+    }
+
+    private static final class HedgeResult {
+        private final DeliveryTarget target;
+        // Null when the send succeeded
+        private final RuntimeException failure;
+
+        private HedgeResult(DeliveryTarget target, RuntimeException failure) {
+            this.target = target;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.repository.OtpOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public class OtpOutboxPurgeTask implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(OtpOutboxPurgeTask.class);
+
+    private final OtpOutboxRepository outboxRepository;
+    private final int batchSize;
+    private final Duration retention;
+
+    public OtpOutboxPurgeTask(OtpOutboxRepository outboxRepository, int batchSize, Duration retention) {
+        this.outboxRepository = outboxRepository;
+        this.batchSize = batchSize;
+        this.retention = retention;
+    }
+
+    @Override
+    public void run() {
+        try {
+            logger.debug("Starting OTP outbox purge task...");
+
+            // Код с истекшим сроком уже не будет доставлен: удаляем и FAILED, и зависшие PENDING записи,
+            // чтобы коды не хранились в открытом виде дольше retention
+            long purged = outboxRepository.purgeExpired(Instant.now().minus(retention), batchSize);
+
+            if (purged > 0) {
+                logger.info("Purged {} expired OTP outbox messages", purged);
+            } else {
+                logger.debug("No expired OTP outbox messages found");
+            }
+
+        } catch (Exception e) {
+            logger.error("Error during OTP outbox purge task execution", e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.repository.OtpCodePartitionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+
+public class OtpPartitionMaintenanceTask implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(OtpPartitionMaintenanceTask.class);
+
+    public enum RetentionMode {
+        DROP,
+        DETACH
+    }
+
+    private final OtpCodePartitionRepository partitionRepository;
+    private final int premakeDays;
+    private final int retentionDays;
+    private final RetentionMode retentionMode;
+
+    public OtpPartitionMaintenanceTask(OtpCodePartitionRepository partitionRepository,
+                                       int premakeDays, int retentionDays, RetentionMode retentionMode) {
+        if (retentionDays < 1) {
+            throw new IllegalArgumentException("OTP partition retention must be at least 1 day");
+        }
+        this.partitionRepository = partitionRepository;
+        this.premakeDays = premakeDays;
+        this.retentionDays = retentionDays;
+        this.retentionMode = retentionMode;
+    }
+
+    @Override
+    public void run() {
+        try {
+            logger.debug("Starting OTP partition maintenance task...");
+            LocalDate today = LocalDate.now();
+
+            // Создаем партиции заранее, чтобы новые коды не попадали в default-партицию
+            for (int i = 0; i <= premakeDays; i++) {
+                partitionRepository.createDailyPartition(today.plusDays(i));
+            }
+
+            // Старые данные удаляются целыми партициями, а не построчно
+            LocalDate oldestRetainedDay = today.minusDays(retentionDays);
+            int removed = 0;
+            for (LocalDate day : partitionRepository.findDailyPartitions()) {
+                if (!day.isBefore(oldestRetainedDay)) {
+                    break;
+                }
+                if (retentionMode == RetentionMode.DETACH) {
+                    partitionRepository.detachDailyPartition(day);
+                } else {
+                    partitionRepository.dropDailyPartition(day);
+                }
+                removed++;
+            }
+
+            if (removed > 0) {
+                logger.info("Removed {} OTP codes partitions older than {} ({})",
+                        removed, oldestRetainedDay, retentionMode);
+            }
+
+            // Коды, попавшие в default-партицию за дни без своей партиции, удаляются по тому же retention
+            long purged = partitionRepository.purgeDefaultPartition(oldestRetainedDay);
+            if (purged > 0) {
+                logger.info("Deleted {} OTP codes older than {} from the default partition", purged, oldestRetainedDay);
+            }
+
+        } catch (Exception e) {
+            logger.error("Error during OTP partition maintenance task execution", e);
+        }
+    }
+}
@@ -2,30 +2,45 @@ package com.example.totpsender.service;
 
 import com.example.totpsender.dto.OtpGenerateRequest;
 import com.example.totpsender.dto.OtpValidateRequest;
+import com.example.totpsender.model.DeliveryTarget;
+import com.example.totpsender.model.NotificationChannel;
 import com.example.totpsender.model.OtpCode;
 import com.example.totpsender.model.OtpConfig;
-import com.example.totpsender.model.OtpStatus;
+import com.example.totpsender.model.OtpOutboxMessage;
 import com.example.totpsender.model.User;
 import com.example.totpsender.repository.OtpCodeRepository;
+import com.example.totpsender.repository.OtpOutboxRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 public class OtpService {
 
     private static final Logger logger = LoggerFactory.getLogger(OtpService.class);
+    private static final int EXPIRE_BATCH_SIZE = 1000;
 
     private final OtpCodeRepository otpCodeRepository;
     private final OtpConfigService otpConfigService;
+    private final OtpOutboxRepository otpOutboxRepository;
+    // Codes created earlier than this are in partitions that retention drops anyway
+    private final Duration expireLookback;
     private final SecureRandom secureRandom;
 
-    public OtpService(OtpCodeRepository otpCodeRepository, OtpConfigService otpConfigService) {
+    public OtpService(OtpCodeRepository otpCodeRepository, OtpConfigService otpConfigService,
+                      OtpOutboxRepository otpOutboxRepository, Duration expireLookback) {
         this.otpCodeRepository = otpCodeRepository;
         this.otpConfigService = otpConfigService;
+        this.otpOutboxRepository = otpOutboxRepository;
+        this.expireLookback = expireLookback;
         this.secureRandom = new SecureRandom();
     }
 
@@ -48,6 +63,7 @@ public class OtpService {
             request.getOperationId(),
             expiresAt
         );
+        otpCode.setConfigVersion(config.getVersion());
 
         // Save to database
         otpCode = otpCodeRepository.save(otpCode);
@@ -58,48 +74,109 @@ public class OtpService {
         return otpCode;
     }
 
-    public boolean validateOtp(User user, OtpValidateRequest request) {
-        logger.info("Validating OTP for user: {} operation: {}",
-                   user.getUsername(), request.getOperationId());
+    // The code and its outbox row are committed together; OtpOutboxDispatcher delivers it later,
+    // so the caller does not wait for the notification provider
+    public OtpCode generateOtpForDelivery(UUID userId, OtpGenerateRequest request, NotificationChannel channel) {
+        return generateOtpForDelivery(userId, request, channel, List.of(), null);
+    }
 
-        // Find OTP code
-        Optional<OtpCode> otpCodeOpt = otpCodeRepository.findByCode(request.getCode());
-        if (otpCodeOpt.isEmpty()) {
-            logger.warn("OTP code not found: {}", request.getCode());
-            return false;
-        }
+    // fallbacks get the same code, in order, when the channel before them has not delivered within
+    // latencyBudget; a null budget follows each channel's observed p99
+    public OtpCode generateOtpForDelivery(UUID userId, OtpGenerateRequest request, NotificationChannel channel,
+                                          List<DeliveryTarget> fallbacks, Duration latencyBudget) {
+        OtpConfig config = otpConfigService.getCurrentConfig();
+
+        OtpCode otpCode = new OtpCode(
+            userId,
+            generateRandomCode(config.getCodeLength()),
+            request.getOperationId(),
+            LocalDateTime.now().plusSeconds(config.getTtlSeconds())
+        );
+        otpCode.setId(UUID.randomUUID());
+        otpCode.setConfigVersion(config.getVersion());
 
-        OtpCode otpCode = otpCodeOpt.get();
+        OtpOutboxMessage message = newOutboxMessage(otpCode, channel, request.getDestination(), fallbacks, latencyBudget);
+        otpCode = otpOutboxRepository.saveWithCode(otpCode, message);
 
-        // Validate ownership
-        if (!otpCode.getUserId().equals(user.getId())) {
-            logger.warn("OTP code does not belong to user: {} code: {}",
-                       user.getUsername(), request.getCode());
-            return false;
+        logger.info("Generated OTP code for user: {} operation: {}, queued for delivery via {}{}",
+                   userId, request.getOperationId(), channel, fallbacks.isEmpty() ? "" : " with fallbacks " + fallbacks);
+
+        return otpCode;
+    }
+
+    // Batched generateOtpForDelivery: each request is delivered via its own channel, and all codes
+    // and outbox rows are committed in one transaction
+    public List<OtpCode> generateOtpsForDelivery(List<UUID> userIds, List<OtpGenerateRequest> requests) {
+        if (userIds.size() != requests.size()) {
+            throw new IllegalArgumentException("Each OTP request must have exactly one user");
         }
 
-        // Validate operation ID (if provided)
-        if (request.getOperationId() != null && otpCode.getOperationId() != null) {
-            if (!request.getOperationId().equals(otpCode.getOperationId())) {
-                logger.warn("OTP code operation ID mismatch: expected: {} actual: {}",
-                           request.getOperationId(), otpCode.getOperationId());
-                return false;
-            }
+        // Config is read once per batch
+        OtpConfig config = otpConfigService.getCurrentConfig();
+        LocalDateTime expiresAt = LocalDateTime.now().plusSeconds(config.getTtlSeconds());
+
+        List<OtpCode> otpCodes = new ArrayList<>(userIds.size());
+        List<OtpOutboxMessage> messages = new ArrayList<>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            OtpGenerateRequest request = requests.get(i);
+            OtpCode otpCode = new OtpCode(
+                userIds.get(i),
+                generateRandomCode(config.getCodeLength()),
+                request.getOperationId(),
+                expiresAt
+            );
+            otpCode.setId(UUID.randomUUID());
+            otpCode.setConfigVersion(config.getVersion());
+            otpCodes.add(otpCode);
+            messages.add(newOutboxMessage(otpCode, NotificationChannel.fromName(request.getChannel()),
+                    request.getDestination(), List.of(), null));
         }
 
-        // Check if code is active and not expired
-        if (!otpCode.isActive()) {
-            logger.warn("OTP code is not active: {} status: {}",
-                       request.getCode(), otpCode.getStatus());
+        otpCodes = otpOutboxRepository.saveAllWithCodes(otpCodes, messages);
+
+        logger.info("Generated {} OTP codes expiring at {}, queued for delivery", otpCodes.size(), expiresAt);
+
+        return otpCodes;
+    }
+
+    private static OtpOutboxMessage newOutboxMessage(OtpCode otpCode, NotificationChannel channel, String destination,
+                                                     List<DeliveryTarget> fallbacks, Duration latencyBudget) {
+        ZoneId zone = ZoneId.systemDefault();
+        return new OtpOutboxMessage(
+            UUID.randomUUID(),
+            otpCode.getId(),
+            channel,
+            destination,
+            otpCode.getCode(),
+            0,
+            otpCode.getCreatedAt().atZone(zone).toInstant(),
+            otpCode.getExpiresAt().atZone(zone).toInstant(),
+            fallbacks,
+            latencyBudget
+        );
+    }
+
+    public boolean validateOtp(User user, OtpValidateRequest request) {
+        return validateOtp(user.getId(), request);
+    }
+
+    public boolean validateOtp(UUID userId, OtpValidateRequest request) {
+        logger.info("Validating OTP for user: {} operation: {}",
+                   userId, request.getOperationId());
+
+        // Ownership, operation ID, status and expiry are checked and the code is marked
+        // as used in a single statement, so a code can only be consumed once
+        Optional<OtpCode> consumed = otpCodeRepository.consume(
+            userId, request.getCode(), request.getOperationId(), Instant.now());
+
+        if (consumed.isEmpty()) {
+            logger.warn("OTP code is invalid, expired or already used for user: {} code: {}",
+                       userId, request.getCode());
             return false;
         }
 
-        // Mark as used
-        otpCode.markAsUsed();
-        otpCodeRepository.save(otpCode);
-
         logger.info("Successfully validated OTP for user: {} operation: {}",
-                   user.getUsername(), request.getOperationId());
+                   userId, request.getOperationId());
 
         return true;
     }
@@ -107,37 +184,24 @@ public class OtpService {
     public void markExpiredCodes() {
         logger.debug("Marking expired OTP codes");
 
-        List<OtpCode> expiredCodes = otpCodeRepository.findExpiredCodes();
+        long startedAt = System.nanoTime();
+        Instant now = Instant.now();
+        long expired = otpCodeRepository.expireBefore(now, now.minus(expireLookback), EXPIRE_BATCH_SIZE);
 
-        for (OtpCode code : expiredCodes) {
-            code.markAsExpired();
-            otpCodeRepository.save(code);
-        }
-
-        if (!expiredCodes.isEmpty()) {
-            logger.info("Marked {} OTP codes as expired", expiredCodes.size());
+        if (expired > 0) {
+            logger.info("Marked {} OTP codes as expired in {} ms",
+                       expired, (System.nanoTime() - startedAt) / 1_000_000);
         }
     }
 
-    public void deleteOtpCodesByUserId(java.util.UUID userId) {
+    public void deleteOtpCodesByUserId(UUID userId) {
         logger.info("Deleting OTP codes for user: {}", userId);
         otpCodeRepository.deleteByUserId(userId);
         logger.info("Successfully deleted OTP codes for user: {}", userId);
     }
 
-    public void validateChannel(String channel) {
-        if (channel == null || channel.trim().isEmpty()) {
-            throw new IllegalArgumentException("Channel is required");
-        }
-
-        String upperChannel = channel.toUpperCase();
-        if (!upperChannel.equals("EMAIL") &&
-            !upperChannel.equals("SMS") &&
-            !upperChannel.equals("TELEGRAM") &&
-            !upperChannel.equals("FILE")) {
-            throw new IllegalArgumentException("Invalid channel: " + channel +
-                ". Supported channels: EMAIL, SMS, TELEGRAM, FILE");
-        }
+    public NotificationChannel validateChannel(String channel) {
+        return NotificationChannel.fromName(channel);
     }
 
     private String generateRandomCode(int length) {
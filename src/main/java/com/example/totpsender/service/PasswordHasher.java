@@ -0,0 +1,184 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs bcrypt on a small CPU-sized pool instead of the request threads, so a login storm cannot
+// starve cheap requests. When the pool and its bounded queue are full, callers fail fast
+// with ServiceOverloadedException (503) instead of piling up
+public class PasswordHasher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+    private static final int MIN_BCRYPT_COST = 4;
+    private static final int MAX_BCRYPT_COST = 31;
+    // Hashes timed during calibration; the fastest one is used, so a stray GC pause does not count
+    private static final int CALIBRATION_SAMPLES = 3;
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final Map<Integer, BCryptPasswordEncoder> encoders = new ConcurrentHashMap<>();
+    private final Timer encodeTimer;
+    private final Timer matchTimer;
+    private final Counter rejectedCounter;
+    private final int cost;
+
+    public PasswordHasher(int threads, int queueCapacity, long timeoutMillis, int cost,
+                          boolean adaptive, long targetMillis, int minCost, int maxCost,
+                          MeterRegistry meterRegistry) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Password hashing threads and queue capacity must be positive");
+        }
+        if (minCost < MIN_BCRYPT_COST || maxCost > MAX_BCRYPT_COST || minCost > maxCost
+                || cost < MIN_BCRYPT_COST || cost > MAX_BCRYPT_COST) {
+            throw new IllegalArgumentException("Invalid bcrypt cost settings");
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bcrypt-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutMillis = timeoutMillis;
+        this.cost = adaptive ? calibrate(TimeUnit.MILLISECONDS.toNanos(targetMillis), minCost, maxCost) : cost;
+
+        this.encodeTimer = Timer.builder("auth.bcrypt.hash")
+                .tag("operation", "encode")
+                .description("Time spent computing a bcrypt hash")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.matchTimer = Timer.builder("auth.bcrypt.hash")
+                .tag("operation", "match")
+                .description("Time spent computing a bcrypt hash")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth.bcrypt.rejected")
+                .description("Password hashing requests rejected because the pool was saturated")
+                .register(meterRegistry);
+        Gauge.builder("auth.bcrypt.queue.size", executor, pool -> pool.getQueue().size())
+                .description("Password hashing requests waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.bcrypt.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashing requests being computed")
+                .register(meterRegistry);
+        Gauge.builder("auth.bcrypt.cost", this, PasswordHasher::getCost)
+                .description("bcrypt cost used for new hashes")
+                .register(meterRegistry);
+
+        logger.info("Password hashing pool: threads={}, queueCapacity={}, cost={}, adaptive={}",
+                threads, queueCapacity, this.cost, adaptive);
+    }
+
+    public String encode(String password) {
+        return submit(() -> {
+            long startedAt = System.nanoTime();
+            String hash = encoder(cost).encode(password);
+            encodeTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            return hash;
+        });
+    }
+
+    // The cost is read from the stored hash, so hashes made at any earlier cost keep working
+    public boolean matches(String password, String hash) {
+        return submit(() -> {
+            long startedAt = System.nanoTime();
+            boolean matches = encoder(cost).matches(password, hash);
+            matchTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            return matches;
+        });
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new ServiceOverloadedException("Too many concurrent authentication requests", e);
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejectedCounter.increment();
+            throw new ServiceOverloadedException("Password hashing timed out", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServiceOverloadedException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private BCryptPasswordEncoder encoder(int strength) {
+        return encoders.computeIfAbsent(strength, BCryptPasswordEncoder::new);
+    }
+
+    // Runs once, from the constructor, before the service takes requests: hash times measured under
+    // live load would mostly measure contention and pull the cost down exactly when the service is
+    // attacked. Each cost step doubles the hash time, so one measurement at minCost gives the rest
+    private int calibrate(long targetNanos, int minCost, int maxCost) {
+        BCryptPasswordEncoder encoder = encoder(minCost);
+        long fastestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_SAMPLES; i++) {
+            long startedAt = System.nanoTime();
+            encoder.encode("calibration");
+            fastestNanos = Math.min(fastestNanos, System.nanoTime() - startedAt);
+        }
+
+        int calibrated = minCost;
+        while (calibrated < maxCost && fastestNanos * 2 <= targetNanos) {
+            fastestNanos *= 2;
+            calibrated++;
+        }
+        logger.info("Calibrated bcrypt cost {} (about {} ms per hash, target {} ms)",
+                calibrated, TimeUnit.NANOSECONDS.toMillis(fastestNanos), TimeUnit.NANOSECONDS.toMillis(targetNanos));
+        return calibrated;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.exception.NotificationTimeoutException;
+import com.example.totpsender.exception.RecipientRejectedException;
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.util.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Retries a channel's failed sends with exponential backoff and full jitter, behind a circuit
+// breaker. While the circuit is open sends fail at once and isAvailable() is false, so callers
+// skip the channel instead of waiting on provider timeouts. Only NotificationException counts as
+// a provider failure; local rejections, rejected recipients and caller errors are rethrown untouched.
+// A timed-out send counts against the circuit but is not retried, as it may still be delivered
+public class ResilientNotificationService implements NotificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResilientNotificationService.class);
+
+    private final NotificationService delegate;
+    private final NotificationChannel channel;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final CircuitBreaker circuitBreaker;
+    private final Counter retryCounter;
+    private final Counter rejectedCounter;
+
+    public ResilientNotificationService(NotificationService delegate, NotificationChannel channel,
+                                        int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                                        int failureThreshold, long openDurationMillis,
+                                        MeterRegistry meterRegistry) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Max attempts must be positive");
+        }
+        this.delegate = delegate;
+        this.channel = channel;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+
+        String tag = channel.name();
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openDurationMillis, (from, to) -> {
+            logger.warn("{} channel circuit {} -> {}", channel, from, to);
+            meterRegistry.counter("notification.circuit.transitions",
+                    "channel", tag, "from", from.name(), "to", to.name()).increment();
+        });
+        this.retryCounter = Counter.builder("notification.retries")
+                .tag("channel", tag)
+                .description("Notification sends retried after a failure")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("notification.circuit.rejected")
+                .tag("channel", tag)
+                .description("Notifications refused because the channel circuit was open")
+                .register(meterRegistry);
+        // 0 = closed, 1 = half-open, 2 = open
+        Gauge.builder("notification.circuit.state", circuitBreaker, ResilientNotificationService::stateValue)
+                .tag("channel", tag)
+                .description("Channel circuit breaker state")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void sendCode(String destination, String code) {
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                rejectedCounter.increment();
+                throw new NotificationRejectedException("Notification channel " + channel + " circuit is open, retry in "
+                        + circuitBreaker.getRemainingOpenMillis() + " ms");
+            }
+
+            try {
+                delegate.sendCode(destination, code);
+                circuitBreaker.onSuccess();
+                return;
+            } catch (NotificationRejectedException | RecipientRejectedException e) {
+                // Refused by a local limit, or this message was refused: retrying would not help either way
+                circuitBreaker.release();
+                throw e;
+            } catch (NotificationTimeoutException e) {
+                // The abandoned send may still complete, so a retry could deliver the code twice
+                circuitBreaker.onFailure();
+                throw e;
+            } catch (NotificationException e) {
+                circuitBreaker.onFailure();
+                if (attempt >= maxAttempts || circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+                    throw e;
+                }
+                long delay = backoff(attempt);
+                logger.warn("Send via {} failed (attempt {} of {}), retrying in {} ms: {}",
+                        channel, attempt, maxAttempts, delay, e.getMessage());
+                retryCounter.increment();
+                sleep(delay);
+            } catch (RuntimeException e) {
+                // Not the provider's fault: free a half-open trial without judging the channel
+                circuitBreaker.release();
+                throw e;
+            }
+        }
+    }
+
+    // Full jitter: uniform in [0, min(maxDelay, baseDelay x 2^(attempt - 1))], so clients that failed
+    // together do not retry together
+    long backoff(int attempt) {
+        int exponent = Math.min(attempt - 1, 30);
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << exponent);
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotificationException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    private static double stateValue(CircuitBreaker breaker) {
+        switch (breaker.getState()) {
+            case HALF_OPEN:
+                return 1;
+            case OPEN:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    public NotificationService getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getChannelName() {
+        return delegate.getChannelName();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return circuitBreaker.isCallPermitted() && delegate.isAvailable();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -1,32 +1,71 @@
 package com.example.totpsender.service;
 
+import com.example.totpsender.config.ConnectionQuotaDataSource;
 import com.example.totpsender.repository.OtpCodeRepository;
+import com.example.totpsender.repository.impl.OtpCodePartitionRepositoryImpl;
+import com.example.totpsender.repository.impl.OtpCodeRepositoryImpl;
+import com.example.totpsender.repository.impl.OtpOutboxRepositoryImpl;
 import com.example.totpsender.util.PropertiesLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
 
+import javax.sql.DataSource;
+import java.time.Duration;
 import java.util.Properties;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-public class ScheduledTaskService {
+public class ScheduledTaskService implements SmartLifecycle {
     private static final Logger logger = LoggerFactory.getLogger(ScheduledTaskService.class);
 
+    // Останавливаемся после веб-сервера (graceful shutdown), но до закрытия пула соединений
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
     private final ScheduledExecutorService scheduler;
     private final OtpCleanupTask otpCleanupTask;
+    private final OtpPartitionMaintenanceTask partitionMaintenanceTask;
+    private final OtpOutboxPurgeTask outboxPurgeTask;
     private final int cleanupIntervalMinutes;
+    private final int partitionMaintenanceIntervalMinutes;
+    private final int outboxPurgeIntervalMinutes;
+    private final long shutdownTimeoutSeconds;
+    private volatile boolean running;
 
-    public ScheduledTaskService(OtpCodeRepository otpCodeRepository) {
+    public ScheduledTaskService(DataSource dataSource) {
         Properties props = PropertiesLoader.loadProperties("scheduler.properties");
         this.cleanupIntervalMinutes = Integer.parseInt(props.getProperty("otp.cleanup.interval.minutes", "5"));
+        this.shutdownTimeoutSeconds = Long.parseLong(props.getProperty("scheduler.shutdown.timeout.seconds", "30"));
+        int cleanupBatchSize = Integer.parseInt(props.getProperty("otp.cleanup.batch.size", "1000"));
+        this.partitionMaintenanceIntervalMinutes =
+                Integer.parseInt(props.getProperty("otp.partition.maintenance.interval.minutes", "60"));
+        int premakeDays = Integer.parseInt(props.getProperty("otp.partition.premake.days", "7"));
+        int retentionDays = Integer.parseInt(props.getProperty("otp.partition.retention.days", "7"));
+        OtpPartitionMaintenanceTask.RetentionMode retentionMode = OtpPartitionMaintenanceTask.RetentionMode.valueOf(
+                props.getProperty("otp.partition.retention.mode", "DROP").trim().toUpperCase());
+        this.outboxPurgeIntervalMinutes = Integer.parseInt(props.getProperty("otp.outbox.purge.interval.minutes", "60"));
+        Duration outboxRetention = Duration.ofHours(Long.parseLong(props.getProperty("otp.outbox.retention.hours", "24")));
+        int threadPoolSize = Integer.parseInt(props.getProperty("scheduler.thread.pool.size", "1"));
+        int maxConnections = Integer.parseInt(props.getProperty("scheduler.db.max.connections", "1"));
+        long acquireTimeoutMillis = Long.parseLong(props.getProperty("scheduler.db.acquire.timeout.ms", "5000"));
+
+        // Фоновые задачи работают на общем пуле, но не могут занять больше своей квоты
+        DataSource quotaDataSource = new ConnectionQuotaDataSource(dataSource, maxConnections, acquireTimeoutMillis);
+        OtpCodeRepository otpCodeRepository = new OtpCodeRepositoryImpl(quotaDataSource);
 
-        this.scheduler = Executors.newScheduledThreadPool(1);
-        this.otpCleanupTask = new OtpCleanupTask(otpCodeRepository);
+        this.scheduler = Executors.newScheduledThreadPool(threadPoolSize);
+        this.otpCleanupTask = new OtpCleanupTask(otpCodeRepository, cleanupBatchSize, retentionDays);
+        this.partitionMaintenanceTask = new OtpPartitionMaintenanceTask(
+                new OtpCodePartitionRepositoryImpl(quotaDataSource), premakeDays, retentionDays, retentionMode);
+        this.outboxPurgeTask = new OtpOutboxPurgeTask(
+                new OtpOutboxRepositoryImpl(quotaDataSource), cleanupBatchSize, outboxRetention);
 
-        logger.info("ScheduledTaskService initialized with cleanup interval: {} minutes", cleanupIntervalMinutes);
+        logger.info("ScheduledTaskService initialized with cleanup interval: {} minutes, connection quota: {}",
+                cleanupIntervalMinutes, maxConnections);
     }
 
+    @Override
     public void start() {
         logger.info("Starting scheduled tasks...");
 
@@ -38,15 +77,52 @@ public class ScheduledTaskService {
             TimeUnit.MINUTES
         );
 
+        // Обслуживание партиций otp_codes: сразу при старте и далее по расписанию
+        scheduler.scheduleAtFixedRate(
+            partitionMaintenanceTask,
+            0,
+            partitionMaintenanceIntervalMinutes,
+            TimeUnit.MINUTES
+        );
+
+        // Удаление истекших записей otp_outbox вместе с кодами
+        scheduler.scheduleAtFixedRate(
+            outboxPurgeTask,
+            outboxPurgeIntervalMinutes,
+            outboxPurgeIntervalMinutes,
+            TimeUnit.MINUTES
+        );
+        running = true;
+
         logger.info("OTP cleanup task scheduled to run every {} minutes", cleanupIntervalMinutes);
+        logger.info("OTP partition maintenance scheduled to run every {} minutes", partitionMaintenanceIntervalMinutes);
+        logger.info("OTP outbox purge scheduled to run every {} minutes", outboxPurgeIntervalMinutes);
+    }
+
+    @Override
+    public void stop() {
+        shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
     }
 
     public void shutdown() {
         logger.info("Shutting down scheduled tasks...");
+        running = false;
+
+        // Новые запуски больше не принимаются, текущая очистка дорабатывает до конца
         scheduler.shutdown();
 
         try {
-            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+            if (!scheduler.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
                 logger.warn("Scheduler did not terminate gracefully, forcing shutdown");
                 scheduler.shutdownNow();
             }
@@ -0,0 +1,309 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.exception.NotificationTimeoutException;
+import com.example.totpsender.exception.RecipientRejectedException;
+import org.jsmpp.SMPPConstant;
+import org.jsmpp.extra.NegativeResponseException;
+import org.jsmpp.extra.ResponseTimeoutException;
+import org.jsmpp.extra.SessionState;
+import org.jsmpp.session.BindParameter;
+import org.jsmpp.session.SMPPSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Long-lived bound SMPP sessions shared by all senders. Each session allows up to windowSize
+// outstanding submit_sm; a submit goes to the bound session with the fewest outstanding requests.
+// Sessions are kept alive with enquire_link and rebound in the background when they close
+public class SmppSessionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmppSessionPool.class);
+
+    @FunctionalInterface
+    public interface SessionTask<T> {
+        T execute(SMPPSession session) throws Exception;
+    }
+
+    private final String host;
+    private final int port;
+    private final BindParameter bindParameter;
+    private final int windowSize;
+    private final int enquireLinkMillis;
+    private final long transactionTimerMillis;
+    private final long reconnectDelayMillis;
+    private final Slot[] slots;
+    // Guards slot state; notified when a window slot frees up or a session binds
+    private final Object monitor = new Object();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final ExecutorService submitExecutor;
+    private final ScheduledExecutorService binder;
+    private volatile boolean running = true;
+
+    public SmppSessionPool(String host, int port, BindParameter bindParameter, int poolSize, int windowSize,
+                           int enquireLinkMillis, long transactionTimerMillis, long reconnectDelayMillis) {
+        if (poolSize <= 0 || windowSize <= 0) {
+            throw new IllegalArgumentException("SMPP pool size and window size must be positive");
+        }
+        this.host = host;
+        this.port = port;
+        this.bindParameter = bindParameter;
+        this.windowSize = windowSize;
+        this.enquireLinkMillis = enquireLinkMillis;
+        this.transactionTimerMillis = transactionTimerMillis;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+
+        this.slots = new Slot[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            slots[i] = new Slot(i);
+        }
+
+        // jsmpp submits block until submit_sm_resp, so every outstanding request needs a thread
+        this.submitExecutor = Executors.newFixedThreadPool(poolSize * windowSize, daemonThreads("smpp-submit"));
+        this.binder = Executors.newSingleThreadScheduledExecutor(daemonThreads("smpp-bind"));
+
+        // Binding happens in the background so an unreachable SMSC does not hold up startup
+        for (Slot slot : slots) {
+            scheduleBind(slot, 0);
+        }
+        logger.info("SMPP session pool: {}:{}, sessions={}, window={}", host, port, poolSize, windowSize);
+    }
+
+    // Waits up to acquireTimeoutMillis for a bound session with room in its window, then runs
+    // the task asynchronously on it. Failures complete the future with NotificationException
+    public <T> CompletableFuture<T> submit(SessionTask<T> task, long acquireTimeoutMillis) {
+        Slot slot;
+        try {
+            slot = acquire(acquireTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(new NotificationException("Interrupted while waiting for an SMPP session"));
+        }
+        if (slot == null) {
+            return CompletableFuture.failedFuture(getBoundSessions() == 0
+                    ? new NotificationException("No bound SMPP session")
+                    : new NotificationRejectedException("SMPP submit window is full"));
+        }
+
+        SMPPSession session;
+        synchronized (monitor) {
+            session = slot.session;
+        }
+        if (session == null) {
+            // Closed right after it was picked
+            release(slot);
+            return CompletableFuture.failedFuture(new NotificationException("SMPP session closed"));
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            submitExecutor.execute(() -> {
+                try {
+                    result.complete(task.execute(session));
+                } catch (IOException e) {
+                    // The connection is gone. A session that had already closed fires no state event,
+                    // so the slot is cleared and rebound here rather than left to the listener
+                    logger.warn("SMPP session {} failed: {}", slot.index, e.getMessage());
+                    session.close();
+                    onClosed(slot, session);
+                    result.completeExceptionally(new NotificationException("SMPP connection failed", e));
+                } catch (NegativeResponseException e) {
+                    result.completeExceptionally(asNotificationException(e));
+                } catch (ResponseTimeoutException e) {
+                    // submit_sm went out, so the SMSC may still deliver it
+                    result.completeExceptionally(new NotificationTimeoutException("SMPP submit timed out", e));
+                } catch (Exception e) {
+                    result.completeExceptionally(new NotificationException("SMPP submit failed: " + e.getMessage(), e));
+                } finally {
+                    release(slot);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(slot);
+            result.completeExceptionally(new NotificationException("SMPP session pool is closed", e));
+        }
+        return result;
+    }
+
+    // Throttling and system errors say the SMSC is struggling; any other negative status refuses this message
+    private static NotificationException asNotificationException(NegativeResponseException e) {
+        switch (e.getCommandStatus()) {
+            case SMPPConstant.STAT_ESME_RTHROTTLED:
+            case SMPPConstant.STAT_ESME_RMSGQFUL:
+            case SMPPConstant.STAT_ESME_RSYSERR:
+                return new NotificationException("SMPP submit failed: " + e.getMessage(), e);
+            default:
+                return new RecipientRejectedException("SMPP submit rejected: " + e.getMessage(), e);
+        }
+    }
+
+    public int getBoundSessions() {
+        int bound = 0;
+        synchronized (monitor) {
+            for (Slot slot : slots) {
+                if (slot.isBound()) {
+                    bound++;
+                }
+            }
+        }
+        return bound;
+    }
+
+    public void close() {
+        running = false;
+        binder.shutdownNow();
+        submitExecutor.shutdown();
+        try {
+            submitExecutor.awaitTermination(transactionTimerMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Slot slot : slots) {
+            SMPPSession session;
+            synchronized (monitor) {
+                session = slot.session;
+                slot.session = null;
+            }
+            if (session != null) {
+                session.unbindAndClose();
+            }
+        }
+        logger.info("SMPP session pool closed");
+    }
+
+    private Slot acquire(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (monitor) {
+            while (running) {
+                Slot slot = leastLoaded();
+                if (slot != null) {
+                    slot.outstanding++;
+                    return slot;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+            }
+            return null;
+        }
+    }
+
+    // Caller holds the monitor. The scan starts at a rotating index so ties are spread evenly
+    private Slot leastLoaded() {
+        int start = Math.floorMod(nextSlot.getAndIncrement(), slots.length);
+        Slot best = null;
+        for (int i = 0; i < slots.length; i++) {
+            Slot slot = slots[(start + i) % slots.length];
+            if (slot.isBound() && slot.outstanding < windowSize
+                    && (best == null || slot.outstanding < best.outstanding)) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    private void release(Slot slot) {
+        synchronized (monitor) {
+            slot.outstanding--;
+            monitor.notifyAll();
+        }
+    }
+
+    private void scheduleBind(Slot slot, long delayMillis) {
+        if (!running) {
+            return;
+        }
+        try {
+            binder.schedule(() -> bind(slot), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Pool is closing
+        }
+    }
+
+    private void bind(Slot slot) {
+        if (!running) {
+            return;
+        }
+
+        SMPPSession session = new SMPPSession();
+        session.setEnquireLinkTimer(enquireLinkMillis);
+        session.setTransactionTimer(transactionTimerMillis);
+        session.addSessionStateListener((newState, oldState, source) -> {
+            if (newState == SessionState.CLOSED) {
+                onClosed(slot, session);
+            }
+        });
+
+        try {
+            String systemId = session.connectAndBind(host, port, bindParameter);
+            synchronized (monitor) {
+                slot.session = session;
+                monitor.notifyAll();
+            }
+            // A close between connectAndBind and the assignment found the slot empty and was ignored
+            if (!session.getSessionState().isBound()) {
+                onClosed(slot, session);
+                return;
+            }
+            logger.info("SMPP session {} bound to {}:{} (system id {})", slot.index, host, port, systemId);
+        } catch (IOException e) {
+            logger.warn("Failed to bind SMPP session {} to {}:{}, retrying in {} ms: {}",
+                    slot.index, host, port, reconnectDelayMillis, e.getMessage());
+            session.close();
+            scheduleBind(slot, reconnectDelayMillis);
+        }
+    }
+
+    // Safe to call more than once for the same session: only the call that clears the slot rebinds it
+    private void onClosed(Slot slot, SMPPSession session) {
+        synchronized (monitor) {
+            // Sessions that never got bound are retried by bind() itself
+            if (slot.session != session) {
+                return;
+            }
+            slot.session = null;
+        }
+        if (running) {
+            logger.warn("SMPP session {} closed, rebinding in {} ms", slot.index, reconnectDelayMillis);
+            scheduleBind(slot, reconnectDelayMillis);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Slot {
+        private final int index;
+        // Both guarded by the pool monitor. The session is set once bound and cleared by the state
+        // listener when it closes; jsmpp is never called under the monitor, since it fires that
+        // listener while holding its own locks
+        private SMPPSession session;
+        private int outstanding;
+
+        private Slot(int index) {
+            this.index = index;
+        }
+
+        private boolean isBound() {
+            return session != null;
+        }
+    }
+}
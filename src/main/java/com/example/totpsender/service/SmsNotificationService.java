@@ -1,13 +1,19 @@
 package com.example.totpsender.service;
 
 import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationTimeoutException;
 import com.example.totpsender.util.PropertiesLoader;
 import org.jsmpp.bean.*;
-import org.jsmpp.session.SMPPSession;
+import org.jsmpp.session.BindParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class SmsNotificationService implements NotificationService {
 
@@ -19,46 +25,96 @@ public class SmsNotificationService implements NotificationService {
     private final String password;
     private final String systemType;
     private final String sourceAddress;
+    private final long submitTimeoutMillis;
+    private final SmppSessionPool sessionPool;
 
     public SmsNotificationService() {
-        Properties config = PropertiesLoader.loadProperties("sms.properties");
+        this(PropertiesLoader.loadProperties("sms.properties"));
+    }
+
+    public SmsNotificationService(Properties config) {
         this.host = config.getProperty("smpp.host");
         this.port = Integer.parseInt(config.getProperty("smpp.port"));
         this.systemId = config.getProperty("smpp.system_id");
         this.password = config.getProperty("smpp.password");
         this.systemType = config.getProperty("smpp.system_type");
         this.sourceAddress = config.getProperty("smpp.source_addr");
+        this.submitTimeoutMillis = Long.parseLong(config.getProperty("smpp.submit.timeout_millis", "10000"));
+
+        this.sessionPool = isConfigured()
+                ? new SmppSessionPool(host, port,
+                        new BindParameter(BindType.BIND_TX, systemId, password, systemType,
+                                TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, null),
+                        Integer.parseInt(config.getProperty("smpp.pool.size", "2")),
+                        Integer.parseInt(config.getProperty("smpp.pool.window", "10")),
+                        Integer.parseInt(config.getProperty("smpp.enquire_link.interval_millis", "30000")),
+                        Long.parseLong(config.getProperty("smpp.transaction_timeout_millis", "5000")),
+                        Long.parseLong(config.getProperty("smpp.reconnect.delay_millis", "5000")))
+                : null;
     }
 
-        @Override
+    @Override
     public void sendCode(String destination, String code) {
-        SMPPSession session = new SMPPSession();
-
+        // One deadline covers both the wait for a window slot and the submit itself
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(submitTimeoutMillis);
         try {
-            String systemIdResult = session.connectAndBind(host, port,
-                new org.jsmpp.session.BindParameter(BindType.BIND_TX,
-                    systemId, password, systemType,
-                    TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, null));
-
-            logger.info("Connected to SMPP server with system ID: {}", systemIdResult);
-
-            String messageText = "Your code: " + code;
-            session.submitShortMessage("",
-                    TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, sourceAddress,
-                    TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, destination,
-                    new ESMClass(), (byte) 0, (byte) 1, null, null,
-                    new RegisteredDelivery(SMSCDeliveryReceipt.DEFAULT),
-                    (byte) 0,
-                    new GeneralDataCoding(Alphabet.ALPHA_DEFAULT, MessageClass.CLASS1, false),
-                    (byte) 0, messageText.getBytes());
-
-            logger.info("SMS with OTP code sent successfully to: {}", destination);
-
-        } catch (Exception e) {
-            logger.error("Failed to send SMS to: {}", destination, e);
-            throw new NotificationException("Failed to send SMS", e);
-        } finally {
-            session.unbindAndClose();
+            sendCodeAsync(destination, code)
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw asNotificationException(e.getCause());
+        } catch (TimeoutException e) {
+            logger.error("Timed out sending SMS to: {}", destination);
+            throw new NotificationTimeoutException("Timed out sending SMS", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotificationException("Interrupted while sending SMS", e);
+        }
+    }
+
+    // Completes with the SMSC message id once submit_sm_resp arrives. Waits for a free window slot
+    // (up to smpp.submit.timeout_millis) before returning, which is the backpressure for bulk senders
+    public CompletableFuture<String> sendCodeAsync(String destination, String code) {
+        if (sessionPool == null) {
+            return CompletableFuture.failedFuture(new NotificationException("SMS channel is not configured"));
+        }
+
+        byte[] messageText = ("Your code: " + code).getBytes();
+        return sessionPool.submit(session -> session.submitShortMessage("",
+                        TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, sourceAddress,
+                        TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, destination,
+                        new ESMClass(), (byte) 0, (byte) 1, null, null,
+                        new RegisteredDelivery(SMSCDeliveryReceipt.DEFAULT),
+                        (byte) 0,
+                        new GeneralDataCoding(Alphabet.ALPHA_DEFAULT, MessageClass.CLASS1, false),
+                        (byte) 0, messageText).getMessageId(),
+                submitTimeoutMillis)
+                .whenComplete((messageId, failure) -> {
+                    if (failure == null) {
+                        logger.info("SMS with OTP code sent successfully to: {} (message id {})", destination, messageId);
+                    } else {
+                        logger.error("Failed to send SMS to: {}: {}", destination, failure.getMessage());
+                    }
+                });
+    }
+
+    private static NotificationException asNotificationException(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure instanceof NotificationException) {
+            return (NotificationException) failure;
+        }
+        return new NotificationException("Failed to send SMS", failure);
+    }
+
+    public int getBoundSessions() {
+        return sessionPool == null ? 0 : sessionPool.getBoundSessions();
+    }
+
+    @Override
+    public void close() {
+        if (sessionPool != null) {
+            sessionPool.close();
         }
     }
 
@@ -67,8 +123,13 @@ public class SmsNotificationService implements NotificationService {
         return "SMS";
     }
 
+    // False while no session is bound, e.g. when the SMSC is down, so callers skip the channel
     @Override
     public boolean isAvailable() {
+        return isConfigured() && getBoundSessions() > 0;
+    }
+
+    private boolean isConfigured() {
         return host != null && port > 0 && systemId != null && password != null;
     }
 }
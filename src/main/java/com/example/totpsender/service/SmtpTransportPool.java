@@ -0,0 +1,178 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Connected SMTP transports reused across messages, so the connect/STARTTLS/AUTH handshake is paid
+// once per connection instead of once per email. A connection idle for longer than validateAfterIdle
+// is checked with NOOP before use, and is replaced after maxMessagesPerConnection messages
+public class SmtpTransportPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    private final Session session;
+    private final String username;
+    private final String password;
+    private final int maxMessagesPerConnection;
+    private final long validateAfterIdleNanos;
+    private final long acquireTimeoutMillis;
+    // One permit per connection the pool may have open; idle ones wait in the deque, most recent first
+    private final Semaphore permits;
+    private final BlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private volatile boolean running = true;
+
+    public SmtpTransportPool(Session session, String username, String password, int poolSize,
+                             int maxMessagesPerConnection, long validateAfterIdleMillis, long acquireTimeoutMillis) {
+        if (poolSize <= 0 || maxMessagesPerConnection <= 0) {
+            throw new IllegalArgumentException("SMTP pool size and messages per connection must be positive");
+        }
+        this.session = session;
+        this.username = username;
+        this.password = password;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.validateAfterIdleNanos = TimeUnit.MILLISECONDS.toNanos(validateAfterIdleMillis);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(poolSize, true);
+        logger.info("SMTP transport pool: connections={}, maxMessagesPerConnection={}", poolSize, maxMessagesPerConnection);
+    }
+
+    public void send(Message message) throws MessagingException {
+        acquirePermit();
+        try {
+            message.saveChanges();
+            PooledTransport transport = borrow();
+            try {
+                transport.send(message);
+            } catch (MessagingException e) {
+                // Closed either way: after a failed transaction the connection state is unknown
+                transport.close();
+                if (rejectedByServer(e)) {
+                    throw e;
+                }
+                // The server dropped the connection since it was last used; retry once on a fresh one
+                logger.warn("SMTP send failed on a pooled connection, reconnecting: {}", e.getMessage());
+                transport = connect();
+                try {
+                    transport.send(message);
+                } catch (MessagingException retryFailure) {
+                    transport.close();
+                    throw retryFailure;
+                }
+            }
+            giveBack(transport);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public void close() {
+        running = false;
+        PooledTransport transport;
+        while ((transport = idle.pollFirst()) != null) {
+            transport.close();
+        }
+        logger.info("SMTP transport pool closed");
+    }
+
+    // A reply code means the server is still there and refused the message, so resending would not help.
+    // JavaMail reports a dropped connection as -1 (EOF) or 421 (service closing)
+    private static boolean rejectedByServer(MessagingException e) {
+        if (e instanceof SMTPSendFailedException) {
+            int returnCode = ((SMTPSendFailedException) e).getReturnCode();
+            return returnCode > 0 && returnCode != 421;
+        }
+        return e instanceof SendFailedException;
+    }
+
+    private void acquirePermit() {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new NotificationRejectedException("No free SMTP connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotificationException("Interrupted while waiting for an SMTP connection", e);
+        }
+        if (!running) {
+            permits.release();
+            throw new NotificationException("SMTP transport pool is closed");
+        }
+    }
+
+    // Caller holds a permit, so the transport returned is used by this thread only
+    private PooledTransport borrow() throws MessagingException {
+        PooledTransport transport;
+        while ((transport = idle.pollFirst()) != null) {
+            if (transport.isUsable()) {
+                return transport;
+            }
+            transport.close();
+        }
+        return connect();
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        Transport transport = session.getTransport("smtp");
+        transport.connect(username, password);
+        return new PooledTransport(transport);
+    }
+
+    private void giveBack(PooledTransport transport) {
+        if (!running || transport.messagesSent >= maxMessagesPerConnection) {
+            transport.close();
+            return;
+        }
+        idle.offerFirst(transport);
+    }
+
+    private class PooledTransport {
+        private final Transport transport;
+        private int messagesSent;
+        private long lastUsedNanos = System.nanoTime();
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        private void send(Message message) throws MessagingException {
+            transport.sendMessage(message, message.getAllRecipients());
+            messagesSent++;
+            lastUsedNanos = System.nanoTime();
+        }
+
+        // For SMTP, isConnected() sends NOOP to the server, so only pay for it after an idle period
+        private boolean isUsable() {
+            if (System.nanoTime() - lastUsedNanos < validateAfterIdleNanos) {
+                return true;
+            }
+            boolean connected = transport.isConnected();
+            lastUsedNanos = System.nanoTime();
+            return connected;
+        }
+
+        private void close() {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                logger.debug("Failed to close SMTP connection: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package com.example.totpsender.service;
 
 import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.exception.RecipientRejectedException;
 import com.example.totpsender.util.PropertiesLoader;
+import com.example.totpsender.util.TokenBucket;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,21 +23,52 @@ import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class TelegramNotificationService implements NotificationService {
 
     private static final Logger logger = LoggerFactory.getLogger(TelegramNotificationService.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 1;
 
     private final String botToken;
     private final String chatId;
     private final String telegramApiUrl;
+    // Pooled and thread-safe; kept for the lifetime of the service so connections are reused
+    private final CloseableHttpClient httpClient;
+    // Every message goes to the one configured chat, so a single bucket covers both the bot's and the
+    // chat's limit. A send never waits for it: a channel thread is not held while the bucket refills
+    private final TokenBucket rateLimit;
 
     public TelegramNotificationService() {
-        Properties config = PropertiesLoader.loadProperties("telegram.properties");
+        this(PropertiesLoader.loadProperties("telegram.properties"));
+    }
+
+    public TelegramNotificationService(Properties config) {
         this.botToken = config.getProperty("telegram.bot.token");
         this.chatId = config.getProperty("telegram.chat.id");
         String apiBaseUrl = config.getProperty("telegram.api.url");
         this.telegramApiUrl = apiBaseUrl + botToken + "/sendMessage";
+
+        int maxConnections = Integer.parseInt(config.getProperty("telegram.http.max_connections", "20"));
+        int timeoutMillis = Integer.parseInt(config.getProperty("telegram.http.timeout_millis", "10000"));
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(timeoutMillis)
+                        .setConnectionRequestTimeout(timeoutMillis)
+                        .setSocketTimeout(timeoutMillis)
+                        .build())
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .build();
+
+        // Default follows Telegram's published limit of about 30 messages/s per bot
+        this.rateLimit = new TokenBucket(
+                Double.parseDouble(config.getProperty("telegram.rate.per_second", "30")),
+                Double.parseDouble(config.getProperty("telegram.rate.burst", "30")));
     }
 
     @Override
@@ -41,17 +82,46 @@ public class TelegramNotificationService implements NotificationService {
         sendTelegramRequest(url);
     }
 
+    // Both a spent bucket and a 429 refuse the send as a local rejection, which the outbox retries
+    // shortly without spending an attempt. A 429 also pauses the bucket for retry_after, so the sends
+    // that follow are refused here without reaching Telegram until it has passed
     private void sendTelegramRequest(String url) {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+        if (!rateLimit.tryAcquire()) {
+            logger.warn("Telegram rate limit reached, refusing the send");
+            throw new NotificationRejectedException("Telegram rate limit exceeded");
+        }
+
+        long retryAfterSeconds = execute(url);
+        if (retryAfterSeconds >= 0) {
+            logger.warn("Telegram asked to retry after {} s", retryAfterSeconds);
+            rateLimit.pause(TimeUnit.SECONDS.toNanos(retryAfterSeconds));
+            throw new NotificationRejectedException("Telegram rate limit exceeded");
+        }
+    }
+
+    // Returns -1 when the message was sent, or the seconds Telegram asked to wait on 429
+    private long execute(String url) {
+        try {
             HttpGet request = new HttpGet(url);
             try (CloseableHttpResponse response = httpClient.execute(request)) {
                 int statusCode = response.getStatusLine().getStatusCode();
-                if (statusCode != 200) {
-                    logger.error("Telegram API error. Status code: {}", statusCode);
-                    throw new NotificationException("Telegram API error: " + statusCode);
-                } else {
+                // Reading the body to the end returns the connection to the pool
+                HttpEntity entity = response.getEntity();
+                String body = entity != null ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : "";
+
+                if (statusCode == 200) {
                     logger.info("Telegram message sent successfully");
+                    return -1;
                 }
+                if (statusCode == 429) {
+                    return retryAfterSeconds(response, body);
+                }
+                logger.error("Telegram API error. Status code: {}", statusCode);
+                // 400 and 403 refuse this message (unknown chat, bot blocked); 401 and 404 mean the bot token is wrong
+                if (statusCode == 400 || statusCode == 403) {
+                    throw new RecipientRejectedException("Telegram rejected the message: " + statusCode);
+                }
+                throw new NotificationException("Telegram API error: " + statusCode);
             }
         } catch (IOException e) {
             logger.error("Error sending Telegram message: {}", e.getMessage(), e);
@@ -59,10 +129,41 @@ public class TelegramNotificationService implements NotificationService {
         }
     }
 
+    // Telegram puts the delay in parameters.retry_after; the Retry-After header is the fallback
+    private static long retryAfterSeconds(CloseableHttpResponse response, String body) {
+        try {
+            JsonNode retryAfter = objectMapper.readTree(body).path("parameters").path("retry_after");
+            if (retryAfter.canConvertToLong()) {
+                return Math.max(retryAfter.asLong(), 0);
+            }
+        } catch (IOException e) {
+            logger.debug("Unparseable Telegram 429 response: {}", e.getMessage());
+        }
+
+        Header header = response.getFirstHeader("Retry-After");
+        if (header != null) {
+            try {
+                return Math.max(Long.parseLong(header.getValue().trim()), 0);
+            } catch (NumberFormatException e) {
+                logger.debug("Unparseable Retry-After header: {}", header.getValue());
+            }
+        }
+        return DEFAULT_RETRY_AFTER_SECONDS;
+    }
+
     private static String urlEncode(String value) {
         return URLEncoder.encode(value, StandardCharsets.UTF_8);
     }
 
+    @Override
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close Telegram HTTP client: {}", e.getMessage());
+        }
+    }
+
     @Override
     public String getChannelName() {
         return "TELEGRAM";
@@ -0,0 +1,143 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.model.TokenRevocation;
+import com.example.totpsender.model.UserPrincipal;
+import com.example.totpsender.repository.TokenRevocationRepository;
+import com.example.totpsender.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Revoked token subjects, held in memory so the per-request check never touches the database.
+// A Bloom filter answers "not revoked" for almost every request; only its hits consult the exact map.
+// Other nodes learn about revocations through NOTIFY on token_revoked
+public class TokenRevocationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    private final TokenRevocationRepository repository;
+    private final Duration tokenLifetime;
+    private final int expectedEntries;
+    private final double falsePositiveRate;
+    private final Counter rejectedCounter;
+    // Null until the first load; replaced as a whole on reload
+    private volatile Revocations current;
+
+    public TokenRevocationService(TokenRevocationRepository repository, Duration tokenLifetime,
+                                  int expectedEntries, double falsePositiveRate, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.tokenLifetime = tokenLifetime;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rejectedCounter = Counter.builder("jwt.revocations.rejected")
+                .description("Requests rejected because their token was revoked")
+                .register(meterRegistry);
+        Gauge.builder("jwt.revocations.active", this, TokenRevocationService::size)
+                .description("Revoked subjects held in memory")
+                .register(meterRegistry);
+    }
+
+    public boolean isRevoked(UserPrincipal principal) {
+        Revocations revocations = current;
+        if (revocations == null) {
+            revocations = load();
+        }
+
+        String subject = principal.getUsername();
+        if (!revocations.filter.mightContain(subject)) {
+            return false;
+        }
+        TokenRevocation revocation = revocations.bySubject.get(subject);
+        if (revocation == null) {
+            return false;
+        }
+
+        // iat has second precision, so a token issued in the same second as the revocation is rejected too
+        Instant issuedAt = principal.getIssuedAt();
+        boolean revoked = issuedAt == null || !issuedAt.isAfter(revocation.getRevokedAt());
+        if (revoked) {
+            rejectedCounter.increment();
+        }
+        return revoked;
+    }
+
+    // Rejects every token of the subject issued until now
+    public void revoke(String subject) {
+        Instant now = Instant.now();
+        TokenRevocation revocation = new TokenRevocation(subject, now, now.plus(tokenLifetime));
+        repository.save(revocation);
+        apply(revocation);
+
+        long purged = repository.deleteExpired(now);
+        logger.info("Revoked tokens of subject: {} (purged {} expired revocations)", subject, purged);
+    }
+
+    // A revocation saved by any node, including this one
+    public void onRevoked(String subject) {
+        repository.findBySubject(subject).ifPresent(this::apply);
+    }
+
+    public void reload() {
+        load();
+    }
+
+    public int size() {
+        Revocations revocations = current;
+        return revocations == null ? 0 : revocations.bySubject.size();
+    }
+
+    private synchronized Revocations load() {
+        Revocations revocations = build(repository.findActive(Instant.now()));
+        current = revocations;
+        logger.info("Loaded {} token revocations", revocations.bySubject.size());
+        return revocations;
+    }
+
+    private synchronized void apply(TokenRevocation revocation) {
+        Revocations revocations = current;
+        if (revocations == null) {
+            // The row is already in the table, so the first load picks it up
+            return;
+        }
+
+        // The map is written before the filter: a reader that sees the filter bit also finds the entry
+        revocations.bySubject.merge(revocation.getSubject(), revocation,
+                (existing, added) -> added.getRevokedAt().isAfter(existing.getRevokedAt()) ? added : existing);
+        revocations.filter.add(revocation.getSubject());
+
+        if (revocations.bySubject.size() > revocations.filter.getExpectedInsertions()) {
+            // Past its capacity the filter lets too much through; rebuild it larger without expired entries
+            Instant now = Instant.now();
+            current = build(revocations.bySubject.values().stream()
+                    .filter(entry -> entry.getExpiresAt().isAfter(now))
+                    .toList());
+        }
+    }
+
+    private Revocations build(List<TokenRevocation> revocations) {
+        Revocations built = new Revocations(
+                new BloomFilter(Math.max(expectedEntries, revocations.size() * 2), falsePositiveRate));
+        for (TokenRevocation revocation : revocations) {
+            built.bySubject.put(revocation.getSubject(), revocation);
+            built.filter.add(revocation.getSubject());
+        }
+        return built;
+    }
+
+    private static class Revocations {
+        private final BloomFilter filter;
+        private final Map<String, TokenRevocation> bySubject = new ConcurrentHashMap<>();
+
+        private Revocations(BloomFilter filter) {
+            this.filter = filter;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.example.totpsender.exception.AccessDeniedException;
 import com.example.totpsender.exception.UserNotFoundException;
 import com.example.totpsender.model.User;
 import com.example.totpsender.model.UserRole;
+import com.example.totpsender.repository.KeysetCursor;
 import com.example.totpsender.repository.UserRepository;
 import com.example.totpsender.repository.OtpCodeRepository;
 import org.slf4j.Logger;
@@ -13,18 +14,25 @@ import org.slf4j.LoggerFactory;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class UserService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 500;
 
     private final UserRepository userRepository;
     private final OtpCodeRepository otpCodeRepository;
+    private final TokenRevocationService tokenRevocationService;
 
-    public UserService(UserRepository userRepository, OtpCodeRepository otpCodeRepository) {
+    public UserService(UserRepository userRepository, OtpCodeRepository otpCodeRepository,
+                       TokenRevocationService tokenRevocationService) {
         this.userRepository = userRepository;
         this.otpCodeRepository = otpCodeRepository;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     public User findByUsername(String username) {
@@ -43,25 +51,39 @@ public class UserService {
         return userOpt.get();
     }
 
-    public List<UserResponse> getAllUsers() {
-        logger.info("Fetching all users except admins");
+    public List<UserResponse> getUsers(KeysetCursor after, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        logger.info("Fetching up to {} users except admins after {}", limit, after);
 
-        List<User> users = userRepository.findAllExceptAdmins();
+        List<User> users = userRepository.findAllExceptAdmins(after, limit);
 
         return users.stream()
                 .map(this::convertToUserResponse)
                 .collect(Collectors.toList());
     }
 
+    // Rows are fetched from the database in chunks and handed over one by one, never held as a list
+    public void streamUsers(Consumer<UserResponse> action) {
+        logger.info("Streaming all users except admins");
+
+        userRepository.forEachExceptAdmins(STREAM_FETCH_SIZE, user -> action.accept(convertToUserResponse(user)));
+    }
+
     public void deleteUser(UUID userId) {
         logger.info("Attempting to delete user with id: {}", userId);
 
-        // Check if user exists
-        if (!userRepository.existsById(userId)) {
-            throw new UserNotFoundException("User not found with id: " + userId);
-        }
+        // Check if user exists; the username is needed to revoke the user's tokens
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new UserNotFoundException("User not found with id: " + userId));
+
+        // Tokens already issued to the user stop working on every node. Revoked before the delete: if the
+        // revocation fails the user is kept, and if the delete fails the user only has to log in again
+        tokenRevocationService.revoke(user.getUsername());
 
-        // Delete associated OTP codes first (cascade delete)
+        // Delete associated OTP codes first (cascade delete), with their undelivered outbox rows
         otpCodeRepository.deleteByUserId(userId);
         logger.debug("Deleted OTP codes for user: {}", userId);
 
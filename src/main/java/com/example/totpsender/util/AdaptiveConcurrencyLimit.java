@@ -0,0 +1,153 @@
+package com.example.totpsender.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Latency-driven concurrency limit in the style of TCP Vegas. With noLoadRtt the round trip of an
+// idle provider, a sample's rtt says how many of the limit's in-flight calls are queued at the
+// provider: limit x (1 - noLoadRtt / rtt). Fewer than alpha queued and the limit grows; more than
+// beta and it shrinks; a dropped call (timeout, error) cuts it by backoffRatio.
+//
+// noLoadRtt is the lowest rtt seen, re-measured every probeInterval: for the next probeSamples
+// calls the limit falls to minLimit, so the provider is measured without our own queue in front
+// of it. That is how a provider that got slower for good is told apart from one
+// we are overloading. Thread-safe
+public final class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long probeIntervalNanos;
+    private final int probeSamples;
+    private final LongSupplier nanoClock;
+    // Guarded by this
+    private double limit;
+    private int inFlight;
+    private long noLoadRttNanos;
+    private long lastProbeAt;
+    private boolean probing;
+    private int probeEpoch;
+    private int probeSamplesLeft;
+    private long probeMinRttNanos;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                                    long probeIntervalMillis, int probeSamples) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, probeIntervalMillis, probeSamples, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                             long probeIntervalMillis, int probeSamples, LongSupplier nanoClock) {
+        if (minLimit <= 0 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 0 < min <= initial <= max");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1 || probeIntervalMillis <= 0 || probeSamples <= 0) {
+            throw new IllegalArgumentException("Backoff ratio must be in (0, 1) and probe settings positive");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(probeIntervalMillis);
+        this.probeSamples = probeSamples;
+        this.nanoClock = nanoClock;
+        this.lastProbeAt = nanoClock.getAsLong();
+    }
+
+    // Returns null when the call would exceed the limit. Otherwise exactly one of the permit's
+    // methods must be called when the call ends
+    public synchronized Permit tryAcquire() {
+        int allowed = probing ? minLimit : (int) limit;
+        if (inFlight >= allowed) {
+            return null;
+        }
+        inFlight++;
+        return new Permit(inFlight, probing ? probeEpoch : -1);
+    }
+
+    // While probing only minLimit calls are let through; this is the limit that applies afterwards
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getNoLoadRttNanos() {
+        return noLoadRttNanos;
+    }
+
+    private synchronized void onSample(Permit permit, long rttNanos, boolean dropped) {
+        inFlight--;
+
+        if (probing) {
+            // Only calls started during the probe ran without the usual queue in front of them
+            if (permit.probeEpoch == probeEpoch && !dropped) {
+                probeMinRttNanos = Math.min(probeMinRttNanos, rttNanos);
+                if (--probeSamplesLeft == 0) {
+                    noLoadRttNanos = probeMinRttNanos;
+                    probing = false;
+                    lastProbeAt = nanoClock.getAsLong();
+                }
+            }
+            return;
+        }
+
+        if (dropped) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            return;
+        }
+
+        if (noLoadRttNanos == 0 || rttNanos < noLoadRttNanos) {
+            noLoadRttNanos = rttNanos;
+        }
+        if (nanoClock.getAsLong() - lastProbeAt >= probeIntervalNanos) {
+            probing = true;
+            probeEpoch++;
+            probeSamplesLeft = probeSamples;
+            probeMinRttNanos = Long.MAX_VALUE;
+        }
+
+        // A call made while most of the limit sat unused says nothing about whether more would fit
+        if (permit.inFlightAtStart * 2 < limit) {
+            return;
+        }
+
+        // About limit samples arrive per round trip, so each moves the limit by 1/limit of the per-round-trip
+        // change: growth by step, or shedding half the queue beyond beta, and no faster than feedback arrives
+        double step = Math.max(1, Math.log10(limit));
+        double queued = limit * (1 - (double) noLoadRttNanos / Math.max(rttNanos, 1));
+        if (queued < 3 * step) {
+            limit = Math.min(maxLimit, limit + step / limit);
+        } else if (queued > 6 * step) {
+            limit = Math.max(minLimit, limit - (queued - 6 * step) / (2 * limit));
+        }
+    }
+
+    public final class Permit {
+        private final int inFlightAtStart;
+        private final int probeEpoch;
+
+        private Permit(int inFlightAtStart, int probeEpoch) {
+            this.inFlightAtStart = inFlightAtStart;
+            this.probeEpoch = probeEpoch;
+        }
+
+        // The call completed; rttNanos is how long it took
+        public void onSuccess(long rttNanos) {
+            onSample(this, rttNanos, false);
+        }
+
+        // The call timed out or failed at the provider
+        public void onDropped() {
+            onSample(this, 0, true);
+        }
+
+        // The call ended without saying anything about the provider, e.g. it was rejected as invalid
+        public void release() {
+            synchronized (AdaptiveConcurrencyLimit.this) {
+                inFlight--;
+            }
+        }
+    }
+}
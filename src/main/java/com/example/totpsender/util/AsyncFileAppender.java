@@ -0,0 +1,345 @@
+package com.example.totpsender.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Single-writer file appender: producers only enqueue, one thread drains the queue in batches
+// and writes each batch with one FileChannel write. The file is rotated by size and/or age;
+// rotated files are renamed to <name>.<yyyyMMdd-HHmmss> and only the newest maxRotatedFiles are kept.
+// submit() lets a producer learn when its entry has been written, or that the write failed
+public class AsyncFileAppender {
+
+    public enum FsyncPolicy {
+        // force() after every batch: nothing acknowledged is lost on power failure, slowest
+        BATCH,
+        // force() at most once per fsync interval
+        INTERVAL,
+        // Leave it to the OS page cache
+        NONE
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncFileAppender.class);
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter ROTATION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path file;
+    private final BlockingQueue<Entry> queue;
+    private final int maxBatchSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final long maxFileBytes;
+    private final long rotationIntervalNanos;
+    private final int maxRotatedFiles;
+    private final Thread writer;
+    private final AtomicLong droppedEntries = new AtomicLong();
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    // Writer thread state
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private FileChannel channel;
+    private long fileBytes;
+    private long openedAt;
+    private long lastForcedAt;
+    private boolean dirty;
+
+    public AsyncFileAppender(Path file, boolean append, int queueCapacity, int maxBatchSize,
+                             FsyncPolicy fsyncPolicy, long fsyncIntervalMillis,
+                             long maxFileBytes, long rotationIntervalMillis, int maxRotatedFiles) {
+        if (queueCapacity <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("File appender queue capacity and batch size must be positive");
+        }
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.maxFileBytes = maxFileBytes;
+        this.rotationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(rotationIntervalMillis);
+        this.maxRotatedFiles = maxRotatedFiles;
+
+        try {
+            open(append);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open " + file, e);
+        }
+
+        this.writer = new Thread(this::writeLoop, "file-appender");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        logger.info("File appender for {}: queueCapacity={}, maxBatchSize={}, fsync={}, maxFileBytes={}",
+                file, queueCapacity, maxBatchSize, fsyncPolicy, maxFileBytes);
+    }
+
+    // Never blocks; returns false when the queue is full or the appender is closed
+    public boolean append(String entry) {
+        return enqueue(new Entry(entry, null));
+    }
+
+    // Never blocks; returns null when the queue is full or the appender is closed. The future completes
+    // once the entry has been written to the file, and after force() too under the BATCH policy; it
+    // completes exceptionally if the write failed
+    public CompletableFuture<Void> submit(String entry) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        return enqueue(new Entry(entry, written)) ? written : null;
+    }
+
+    private boolean enqueue(Entry entry) {
+        boolean enqueued;
+        stateLock.readLock().lock();
+        try {
+            enqueued = running && queue.offer(entry);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        if (!enqueued) {
+            droppedEntries.incrementAndGet();
+        }
+        return enqueued;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDroppedEntries() {
+        return droppedEntries.get();
+    }
+
+    public void close() {
+        stateLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(maxBatchSize);
+
+        // Nothing can be enqueued once running is false, so this drains the last entries
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(pollTimeoutNanos(), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatchSize - 1);
+                    write(batch);
+                    complete(batch, null);
+                }
+                if (channel != null && rotationDue(0)) {
+                    rotate();
+                }
+                if (fsyncPolicy == FsyncPolicy.INTERVAL && dirty
+                        && System.nanoTime() - lastForcedAt >= fsyncIntervalNanos) {
+                    force();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (IOException e) {
+                logger.error("Failed to write {}: {}", file, e.getMessage(), e);
+                droppedEntries.addAndGet(batch.size());
+                complete(batch, e);
+                closeChannel();
+            } finally {
+                batch.clear();
+            }
+        }
+
+        try {
+            if (channel != null && dirty) {
+                force();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to sync {}: {}", file, e.getMessage());
+        }
+        closeChannel();
+    }
+
+    private long pollTimeoutNanos() {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MILLIS);
+        if (fsyncPolicy == FsyncPolicy.INTERVAL && dirty) {
+            timeout = Math.min(timeout, Math.max(0, lastForcedAt + fsyncIntervalNanos - System.nanoTime()));
+        }
+        return timeout;
+    }
+
+    // Entries of a failed batch all fail, even those written before the error
+    private static void complete(List<Entry> batch, IOException failure) {
+        for (Entry entry : batch) {
+            if (entry.written == null) {
+                continue;
+            }
+            if (failure == null) {
+                entry.written.complete(null);
+            } else {
+                entry.written.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private void write(List<Entry> batch) throws IOException {
+        if (channel == null) {
+            open(true);
+        }
+        for (Entry entry : batch) {
+            byte[] bytes = entry.text.getBytes(StandardCharsets.UTF_8);
+            if (rotationDue(bytes.length)) {
+                drainBuffer();
+                rotate();
+            }
+            if (bytes.length > buffer.remaining()) {
+                drainBuffer();
+            }
+            if (bytes.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+            } else {
+                buffer.put(bytes);
+            }
+            fileBytes += bytes.length;
+        }
+        drainBuffer();
+        dirty = true;
+
+        if (fsyncPolicy == FsyncPolicy.BATCH) {
+            force();
+        }
+    }
+
+    private boolean rotationDue(long incomingBytes) {
+        if (fileBytes == 0) {
+            return false;
+        }
+        return (maxFileBytes > 0 && fileBytes + incomingBytes > maxFileBytes)
+                || (rotationIntervalNanos > 0 && System.nanoTime() - openedAt >= rotationIntervalNanos);
+    }
+
+    private void drainBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        lastForcedAt = System.nanoTime();
+        dirty = false;
+    }
+
+    private void rotate() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            channel.force(false);
+        }
+        closeChannel();
+
+        String prefix = file.getFileName() + ".";
+        Path rotated = file.resolveSibling(prefix + LocalDateTime.now().format(ROTATION_SUFFIX));
+        for (int i = 1; Files.exists(rotated); i++) {
+            rotated = file.resolveSibling(prefix + LocalDateTime.now().format(ROTATION_SUFFIX) + "-" + i);
+        }
+        Files.move(file, rotated);
+        logger.info("Rotated {} to {}", file, rotated.getFileName());
+
+        open(true);
+        deleteOldRotatedFiles(prefix);
+    }
+
+    private void deleteOldRotatedFiles(String prefix) throws IOException {
+        if (maxRotatedFiles <= 0) {
+            return;
+        }
+        List<Path> rotatedFiles = new ArrayList<>();
+        Path directory = file.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory,
+                path -> path.getFileName().toString().startsWith(prefix))) {
+            entries.forEach(rotatedFiles::add);
+        }
+        if (rotatedFiles.size() <= maxRotatedFiles) {
+            return;
+        }
+        // Oldest first
+        rotatedFiles.sort(Comparator.comparing(AsyncFileAppender::lastModified).thenComparing(Path::toString));
+        for (Path oldFile : rotatedFiles.subList(0, rotatedFiles.size() - maxRotatedFiles)) {
+            Files.deleteIfExists(oldFile);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void open(boolean append) throws IOException {
+        channel = append
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        fileBytes = channel.size();
+        openedAt = System.nanoTime();
+        lastForcedAt = openedAt;
+        dirty = false;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close {}: {}", file, e.getMessage());
+        }
+        channel = null;
+        buffer.clear();
+        dirty = false;
+    }
+
+    private static final class Entry {
+        private final String text;
+        // Null for entries added with append()
+        private final CompletableFuture<Void> written;
+
+        private Entry(String text, CompletableFuture<Void> written) {
+            this.text = text;
+            this.written = written;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.totpsender.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+// Circuit breaker driven by consecutive failures. CLOSED lets every call through; after
+// failureThreshold failures in a row it goes OPEN and refuses calls for openDuration. The first call
+// after that is a HALF_OPEN trial: success closes the circuit, failure opens it for another
+// openDuration. Only one trial runs at a time. Thread-safe
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    // Called with (from, to) on every state change, while holding the lock
+    private final BiConsumer<State, State> onTransition;
+    // Guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openDurationMillis, BiConsumer<State, State> onTransition) {
+        if (failureThreshold <= 0 || openDurationMillis <= 0) {
+            throw new IllegalArgumentException("Failure threshold and open duration must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.onTransition = onTransition;
+    }
+
+    // Returns false when the call must not be made; a true result must be followed by
+    // onSuccess() or onFailure()
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openDurationNanos) {
+                    return false;
+                }
+                transitionTo(State.HALF_OPEN);
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    // Same answer as tryAcquire() without taking the trial slot
+    public synchronized boolean isCallPermitted() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.nanoTime() - openedAt >= openDurationNanos;
+            default:
+                return !trialInFlight;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        if (state != State.CLOSED) {
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    public synchronized void onFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openedAt = System.nanoTime();
+            transitionTo(State.OPEN);
+        }
+    }
+
+    // For a call that ended without telling anything about the remote side
+    public synchronized void release() {
+        trialInFlight = false;
+    }
+
+    // Milliseconds until an open circuit lets a trial call through, 0 otherwise
+    public synchronized long getRemainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(openedAt + openDurationNanos - System.nanoTime()));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void transitionTo(State next) {
+        State previous = state;
+        state = next;
+        onTransition.accept(previous, next);
+    }
+}
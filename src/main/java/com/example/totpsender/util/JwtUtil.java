@@ -1,47 +1,81 @@
 package com.example.totpsender.util;
 
+import com.example.totpsender.model.UserPrincipal;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtUtil.class);
+    // Version 2 tokens carry the user id ("uid"); tokens without "ver" were issued before that
+    public static final int TOKEN_VERSION = 2;
 
     private final String secret;
     private final long expiration;
     private final String issuer;
     private final SecretKey secretKey;
+    // Immutable and thread-safe, so it is built once instead of per token
+    private final JwtParser parser;
+    // Verified tokens by SHA-256 of the token string; an entry expires together with its token
+    private final Cache<String, VerifiedToken> verifiedTokens;
 
-    public JwtUtil() {
+    public JwtUtil(MeterRegistry meterRegistry) {
         Properties props = PropertiesLoader.loadProperties("jwt.properties");
         this.secret = props.getProperty("jwt.secret");
         this.expiration = Long.parseLong(props.getProperty("jwt.expiration", "86400"));
         this.issuer = props.getProperty("jwt.issuer", "totp-sender");
         this.secretKey = Keys.hmacShaKeyFor(secret.getBytes());
+        this.parser = Jwts.parser()
+                .verifyWith(secretKey)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(Long.parseLong(props.getProperty("jwt.cache.maximum_size", "10000")))
+                .expireAfter(new UntilTokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.verified_tokens");
     }
 
-    public String generateToken(String username, String role) {
+    public String generateToken(UUID userId, String username, String role) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + expiration * 1000);
 
         return Jwts.builder()
-                .setSubject(username)
+                .subject(username)
                 .claim("role", role)
-                .setIssuedAt(now)
-                .setExpiration(expiryDate)
-                .setIssuer(issuer)
+                .claim("uid", userId.toString())
+                .claim("ver", TOKEN_VERSION)
+                .issuedAt(now)
+                .expiration(expiryDate)
+                .issuer(issuer)
                 .signWith(secretKey)
                 .compact();
     }
 
+    public long getExpirationSeconds() {
+        return expiration;
+    }
+
     public String getUsernameFromToken(String token) {
         Claims claims = getClaimsFromToken(token);
         return claims.getSubject();
@@ -74,21 +108,87 @@ public class JwtUtil {
         }
     }
 
+    // The parser rejects expired tokens itself, so one parse is a complete validation
     public boolean validateToken(String token) {
         try {
             getClaimsFromToken(token);
-            return !isTokenExpired(token);
+            return true;
         } catch (JwtException | IllegalArgumentException e) {
             logger.debug("Invalid JWT token: {}", e.getMessage());
             return false;
         }
     }
 
+    // Verifies the signature and expiry once and returns everything the request needs.
+    // Repeated calls with the same token are answered from the cache until the token expires
+    public Optional<UserPrincipal> parseToken(String token) {
+        String key = digest(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached.principal);
+        }
+
+        try {
+            Claims claims = getClaimsFromToken(token);
+            if (claims.getSubject() == null || claims.getExpiration() == null) {
+                return Optional.empty();
+            }
+            String userId = claims.get("uid", String.class);
+            UserPrincipal principal = new UserPrincipal(
+                    claims.getSubject(),
+                    claims.get("role", String.class),
+                    userId != null ? UUID.fromString(userId) : null,
+                    claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null);
+            verifiedTokens.put(key, new VerifiedToken(principal, claims.getExpiration().getTime()));
+            return Optional.of(principal);
+        } catch (JwtException | IllegalArgumentException e) {
+            logger.debug("Invalid JWT token: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void evictVerifiedTokens() {
+        verifiedTokens.invalidateAll();
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
     private Claims getClaimsFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    private static class VerifiedToken {
+        private final UserPrincipal principal;
+        private final long expiresAtMillis;
+
+        private VerifiedToken(UserPrincipal principal, long expiresAtMillis) {
+            this.principal = principal;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private static class UntilTokenExpiry implements Expiry<String, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            long remainingMillis = value.expiresAtMillis - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
@@ -0,0 +1,52 @@
+package com.example.totpsender.util;
+
+import java.util.concurrent.TimeUnit;
+
+// Fail-fast token bucket: a caller takes a token if one is available and is refused otherwise,
+// never made to wait. Thread-safe
+public final class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double permitsPerSecond;
+    private final double capacity;
+    // Guarded by this
+    private double tokens;
+    // In the future while the bucket is paused
+    private long lastRefillNanos;
+
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        if (permitsPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Rate must be positive and capacity at least one token");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    // Takes a token only if one is available right now
+    public synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    // Empties the bucket and refills nothing for the given time, e.g. after the server asked to back off
+    public synchronized void pause(long nanos) {
+        long now = System.nanoTime();
+        refill(now);
+        tokens = 0;
+        lastRefillNanos = Math.max(lastRefillNanos, now + nanos);
+    }
+
+    private void refill(long now) {
+        if (now > lastRefillNanos) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerSecond / NANOS_PER_SECOND);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.totpsender.repository.impl;
+
+import com.example.totpsender.model.User;
+import com.example.totpsender.model.UserRole;
+import com.example.totpsender.repository.KeysetCursor;
+import com.example.totpsender.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingUserRepositoryTest {
+
+    private CountingUserRepository delegate;
+    private CachingUserRepository repository;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new CountingUserRepository();
+        repository = new CachingUserRepository(delegate, 100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+
+        user = new User("testuser", "hashedpassword", UserRole.USER);
+        user.setId(UUID.randomUUID());
+        delegate.users.put(user.getId(), user);
+    }
+
+    @Test
+    void findByUsername_ShouldServeRepeatedLookupsFromCache() {
+        repository.findByUsername("testuser");
+        Optional<User> result = repository.findByUsername("testuser");
+
+        assertTrue(result.isPresent());
+        assertEquals(user.getId(), result.get().getId());
+        assertEquals(1, delegate.lookups);
+    }
+
+    @Test
+    void findByUsername_ShouldNotCacheMissingUser() {
+        assertTrue(repository.findByUsername("newuser").isEmpty());
+
+        User newUser = new User("newuser", "hashedpassword", UserRole.USER);
+        newUser.setId(UUID.randomUUID());
+        delegate.users.put(newUser.getId(), newUser);
+
+        assertTrue(repository.findByUsername("newuser").isPresent(), "New user should be visible right away");
+    }
+
+    @Test
+    void deleteById_ShouldDropUserFromBothCaches() {
+        repository.findByUsername("testuser");
+        repository.findById(user.getId());
+
+        repository.deleteById(user.getId());
+
+        assertTrue(repository.findByUsername("testuser").isEmpty());
+        assertTrue(repository.findById(user.getId()).isEmpty());
+    }
+
+    @Test
+    void invalidate_ShouldReloadChangedUser() {
+        repository.findByUsername("testuser");
+        delegate.users.get(user.getId()).setRole(UserRole.ADMIN);
+
+        repository.invalidate(user.getId());
+
+        assertEquals(UserRole.ADMIN, repository.findByUsername("testuser").get().getRole());
+    }
+
+    @Test
+    void findByUsername_ShouldReturnCopiesOfCachedUser() {
+        repository.findByUsername("testuser").get().setRole(UserRole.ADMIN);
+
+        assertEquals(UserRole.USER, repository.findByUsername("testuser").get().getRole());
+    }
+
+    @Test
+    void findByUsername_ShouldNotCacheUserInvalidatedDuringLoad() {
+        // The row is read, then changed and invalidated before the lookup gets to cache it
+        delegate.afterLookup = () -> {
+            delegate.afterLookup = null;
+            delegate.users.get(user.getId()).setRole(UserRole.ADMIN);
+            repository.invalidate(user.getId());
+        };
+
+        assertEquals(UserRole.USER, repository.findByUsername("testuser").get().getRole());
+        assertEquals(UserRole.ADMIN, repository.findByUsername("testuser").get().getRole());
+        assertEquals(UserRole.ADMIN, repository.findById(user.getId()).get().getRole());
+    }
+
+    private static class CountingUserRepository implements UserRepository {
+        private final Map<UUID, User> users = new HashMap<>();
+        private int lookups;
+        private Runnable afterLookup;
+
+        private Optional<User> copy(User user) {
+            return Optional.of(new User(user.getId(), user.getUsername(), user.getPasswordHash(), user.getRole(),
+                    user.getCreatedAt(), user.getUpdatedAt()));
+        }
+
+        @Override
+        public Optional<User> findByUsername(String username) {
+            lookups++;
+            Optional<User> found = users.values().stream()
+                    .filter(user -> user.getUsername().equals(username))
+                    .findFirst()
+                    .flatMap(this::copy);
+            if (afterLookup != null) {
+                afterLookup.run();
+            }
+            return found;
+        }
+
+        @Override
+        public Optional<User> findById(UUID id) {
+            lookups++;
+            User user = users.get(id);
+            return user == null ? Optional.empty() : copy(user);
+        }
+
+        @Override
+        public User save(User user) {
+            users.put(user.getId(), user);
+            return user;
+        }
+
+        @Override
+        public void deleteById(UUID id) {
+            users.remove(id);
+        }
+
+        @Override
+        public List<User> findAllByUsernames(Collection<String> usernames) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean existsByRole(UserRole role) {
+            return false;
+        }
+
+        @Override
+        public long countByRole(UserRole role) {
+            return 0;
+        }
+
+        @Override
+        public List<User> findAllExceptAdmins() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<User> findAllExceptAdmins(KeysetCursor after, int limit) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void forEachExceptAdmins(int fetchSize, Consumer<User> action) {
+        }
+
+        @Override
+        public List<User> findAll() {
+            return new ArrayList<>(users.values());
+        }
+
+        @Override
+        public List<User> findAll(KeysetCursor after, int limit) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean existsById(UUID id) {
+            return users.containsKey(id);
+        }
+    }
+}
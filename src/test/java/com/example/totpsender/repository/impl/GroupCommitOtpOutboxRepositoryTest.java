@@ -0,0 +1,164 @@
+package com.example.totpsender.repository.impl;
+
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.model.OtpCode;
+import com.example.totpsender.model.OtpOutboxMessage;
+import com.example.totpsender.repository.OtpOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitOtpOutboxRepositoryTest {
+
+    private final RecordingOtpOutboxRepository delegate = new RecordingOtpOutboxRepository();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private GroupCommitOtpOutboxRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        if (repository != null) {
+            repository.shutdown();
+        }
+    }
+
+    @Test
+    void saveWithCode_ShouldWriteConcurrentInsertsInFewerBatches() throws Exception {
+        // Given
+        repository = new GroupCommitOtpOutboxRepository(delegate, 16, 20_000, 100, meterRegistry);
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<OtpCode>> results = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < 16; i++) {
+            results.add(callers.submit(() -> {
+                start.await();
+                OtpCode otpCode = newCode();
+                return repository.saveWithCode(otpCode, newMessage(otpCode));
+            }));
+        }
+        start.countDown();
+
+        // Then
+        for (Future<OtpCode> result : results) {
+            assertNotNull(result.get(5, TimeUnit.SECONDS));
+        }
+        callers.shutdown();
+        assertEquals(16, delegate.insertedRows());
+        assertTrue(delegate.batches.size() < 16, "Concurrent inserts should share batches");
+        assertEquals(16, meterRegistry.get("otp.codes.group_commit.wait").timer().count());
+    }
+
+    @Test
+    void saveWithCode_ShouldWriteEachCodeWithItsOwnOutboxMessage() {
+        // Given
+        repository = new GroupCommitOtpOutboxRepository(delegate, 16, 0, 100, meterRegistry);
+        OtpCode otpCode = newCode();
+        OtpOutboxMessage message = newMessage(otpCode);
+
+        // When
+        repository.saveWithCode(otpCode, message);
+
+        // Then
+        assertEquals(List.of(message), delegate.messages);
+    }
+
+    @Test
+    void saveWithCode_ShouldFailOnlyTheCallerWithTheBadRow() {
+        // Given
+        repository = new GroupCommitOtpOutboxRepository(delegate, 16, 0, 100, meterRegistry);
+        OtpCode badCode = newCode();
+        delegate.rejectedCode = badCode.getCode();
+        OtpCode goodCode = newCode();
+
+        // When & Then
+        assertThrows(RuntimeException.class, () -> repository.saveWithCode(badCode, newMessage(badCode)));
+        assertSame(goodCode, repository.saveWithCode(goodCode, newMessage(goodCode)));
+    }
+
+    private static OtpCode newCode() {
+        OtpCode otpCode = new OtpCode(UUID.randomUUID(), UUID.randomUUID().toString().substring(0, 6), "op",
+                LocalDateTime.now().plusMinutes(5));
+        otpCode.setId(UUID.randomUUID());
+        return otpCode;
+    }
+
+    private static OtpOutboxMessage newMessage(OtpCode otpCode) {
+        Instant now = Instant.now();
+        return new OtpOutboxMessage(UUID.randomUUID(), otpCode.getId(), NotificationChannel.EMAIL, "user@example.com",
+                otpCode.getCode(), 0, now, now.plusSeconds(300), List.of(), null);
+    }
+
+    private static class RecordingOtpOutboxRepository implements OtpOutboxRepository {
+        private final List<List<OtpCode>> batches = Collections.synchronizedList(new ArrayList<>());
+        private final List<OtpOutboxMessage> messages = Collections.synchronizedList(new ArrayList<>());
+        private volatile String rejectedCode;
+
+        @Override
+        public List<OtpCode> saveAllWithCodes(List<OtpCode> otpCodes, List<OtpOutboxMessage> messages) {
+            for (OtpCode otpCode : otpCodes) {
+                if (otpCode.getCode().equals(rejectedCode)) {
+                    throw new RuntimeException("Failed to insert OTP codes batch with outbox messages");
+                }
+            }
+            batches.add(new ArrayList<>(otpCodes));
+            this.messages.addAll(messages);
+            return otpCodes;
+        }
+
+        private int insertedRows() {
+            return batches.stream().mapToInt(List::size).sum();
+        }
+
+        @Override
+        public OtpCode saveWithCode(OtpCode otpCode, OtpOutboxMessage message) {
+            return saveAllWithCodes(List.of(otpCode), List.of(message)).get(0);
+        }
+
+        @Override
+        public List<OtpOutboxMessage> claim(int limit, Duration lease, Instant now) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean delete(UUID id, int attempts, UUID otpCodeId, Instant otpCodeCreatedAt,
+                              NotificationChannel deliveredVia) {
+            return false;
+        }
+
+        @Override
+        public boolean retryAt(UUID id, int attempts, Instant availableAt, String error) {
+            return false;
+        }
+
+        @Override
+        public boolean release(UUID id, int attempts, Instant availableAt, String error) {
+            return false;
+        }
+
+        @Override
+        public boolean markFailed(UUID id, int attempts, String error) {
+            return false;
+        }
+
+        @Override
+        public long purgeExpired(Instant expiredBefore, int batchSize) {
+            return 0;
+        }
+    }
+}
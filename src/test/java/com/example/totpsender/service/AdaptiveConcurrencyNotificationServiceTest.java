@@ -0,0 +1,82 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.util.AdaptiveConcurrencyLimit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyNotificationServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void sendCode_ShouldRejectSendsOverTheLimit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        NotificationService hanging = new StubService() {
+            @Override
+            public void sendCode(String destination, String code) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        AdaptiveConcurrencyNotificationService service = new AdaptiveConcurrencyNotificationService(hanging,
+                NotificationChannel.EMAIL, new AdaptiveConcurrencyLimit(1, 1, 10, 0.9, 60_000, 5), meterRegistry);
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> service.sendCode("a@example.com", "1"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        NotificationRejectedException e = assertThrows(NotificationRejectedException.class,
+                () -> service.sendCode("b@example.com", "2"));
+
+        assertEquals("Notification channel EMAIL is at its concurrency limit of 1", e.getMessage());
+        assertEquals(1.0, meterRegistry.get("notification.concurrency.rejected").tag("channel", "EMAIL").counter().count());
+        assertEquals(1.0, meterRegistry.get("notification.concurrency.in_flight").tag("channel", "EMAIL").gauge().value());
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void sendCode_ShouldShrinkTheLimitOnProviderFailures() {
+        NotificationService failing = new StubService() {
+            @Override
+            public void sendCode(String destination, String code) {
+                throw new NotificationException("Connection timed out");
+            }
+        };
+        AdaptiveConcurrencyNotificationService service = new AdaptiveConcurrencyNotificationService(failing,
+                NotificationChannel.EMAIL, new AdaptiveConcurrencyLimit(20, 1, 40, 0.5, 60_000, 5), meterRegistry);
+
+        assertThrows(NotificationException.class, () -> service.sendCode("a@example.com", "1"));
+
+        assertEquals(10, service.getLimit());
+        assertEquals(10.0, meterRegistry.get("notification.concurrency.limit").tag("channel", "EMAIL").gauge().value());
+    }
+
+    private static class StubService implements NotificationService {
+        @Override
+        public void sendCode(String destination, String code) {
+        }
+
+        @Override
+        public String getChannelName() {
+            return "EMAIL";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
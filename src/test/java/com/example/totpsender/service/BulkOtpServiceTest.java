@@ -0,0 +1,460 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.model.OtpCode;
+import com.example.totpsender.model.OtpConfig;
+import com.example.totpsender.model.OtpOutboxMessage;
+import com.example.totpsender.model.User;
+import com.example.totpsender.model.UserRole;
+import com.example.totpsender.repository.KeysetCursor;
+import com.example.totpsender.repository.OtpOutboxRepository;
+import com.example.totpsender.repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkOtpServiceTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private TestUserRepository userRepository;
+    private TestOtpOutboxRepository outboxRepository;
+    private RecordingChannel email;
+    private BulkOtpService bulkOtpService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = new TestUserRepository();
+        userRepository.add("alice");
+        userRepository.add("bob");
+        outboxRepository = new TestOtpOutboxRepository();
+        email = new RecordingChannel();
+
+        OtpService otpService = new OtpService(null, new TestOtpConfigService(new OtpConfig(6, 300)), outboxRepository,
+                Duration.ofDays(7));
+        NotificationChannelRegistry channels = new NotificationChannelRegistry(
+                Map.of(NotificationChannel.EMAIL, () -> email));
+        // Chunks of 2 items and lines of at most 200 characters keep the inputs below small
+        bulkOtpService = new BulkOtpService(userRepository, otpService, channels, 2, 200);
+    }
+
+    @Test
+    void generateForUsers_ShouldAnswerEveryLineInOrder() throws IOException {
+        // When
+        List<JsonNode> results = generateForUsers(
+                item("alice", "op-1", "alice@example.com"),
+                item("bob", "op-2", "bob@example.com"),
+                item("alice", "op-3", "alice@example.com"));
+
+        // Then
+        assertEquals(3, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i + 1, results.get(i).path("line").asLong());
+            assertTrue(results.get(i).path("success").asBoolean());
+        }
+        assertEquals("op-2", results.get(1).path("operationId").asText());
+        assertEquals("OTP queued for delivery", results.get(0).path("message").asText());
+        assertEquals(List.of("alice@example.com", "bob@example.com", "alice@example.com"), outboxRepository.destinations());
+    }
+
+    @Test
+    void generateForUsers_ShouldLeaveDeliveryToTheOutbox() throws IOException {
+        // When
+        generateForUsers(
+                item("alice", "op-1", "alice@example.com"),
+                item("bob", "op-2", "bob@example.com"));
+
+        // Then
+        assertTrue(email.sent.isEmpty(), "Nothing should be sent on the request thread");
+        OtpOutboxMessage message = outboxRepository.messages.get(0);
+        OtpCode otpCode = outboxRepository.codes.get(0);
+        assertEquals(otpCode.getId(), message.getOtpCodeId());
+        assertEquals(otpCode.getCode(), message.getCode());
+        assertEquals(NotificationChannel.EMAIL, message.getChannel());
+        assertEquals(0, message.getAttempts());
+    }
+
+    @Test
+    void generateForUsers_ShouldResolveUsersAndSaveCodesWithOutboxRowsOncePerChunk() throws IOException {
+        // When
+        generateForUsers(
+                item("alice", "op-1", "alice@example.com"),
+                item("bob", "op-2", "bob@example.com"),
+                item("alice", "op-3", "alice@example.com"),
+                item("bob", "op-4", "bob@example.com"),
+                item("alice", "op-5", "alice@example.com"));
+
+        // Then
+        assertEquals(List.of(2, 2, 1), outboxRepository.batchSizes);
+        assertEquals(3, userRepository.lookups, "One user query per chunk");
+    }
+
+    @Test
+    void generateForUsers_ShouldWriteResultsOfAChunkBeforeReadingTheNext() throws IOException {
+        // Given
+        String body = String.join("\n",
+                item("alice", "op-1", "alice@example.com"),
+                item("bob", "op-2", "bob@example.com"),
+                item("alice", "op-3", "alice@example.com")) + "\n";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        List<Integer> resultLinesWhenReadingLine3 = new ArrayList<>();
+        int line3Offset = body.indexOf("op-3");
+        InputStream input = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)) {
+            private int offset;
+
+            // One byte at a time, so the reader cannot run ahead of the chunk it is working on
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                int read = super.read(b, off, Math.min(len, 1));
+                if (read > 0 && offset++ == line3Offset) {
+                    resultLinesWhenReadingLine3.add(output.toString(StandardCharsets.UTF_8).split("\n").length);
+                }
+                return read;
+            }
+
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+        };
+
+        // When
+        bulkOtpService.generateForUsers(input, output);
+
+        // Then
+        assertEquals(List.of(2), resultLinesWhenReadingLine3, "The first chunk should be answered before line 3 is read");
+        assertEquals(3, parse(output).size());
+    }
+
+    @Test
+    void generateForUsers_ShouldRejectMalformedAndInvalidLines() throws IOException {
+        // When
+        List<JsonNode> results = generateForUsers(
+                "{not json",
+                "{\"username\":\"alice\",\"operationId\":\"op-2\",\"channel\":\"EMAIL\"}",
+                "{\"username\":\"alice\",\"operationId\":\"op-3\",\"channel\":\"PIGEON\",\"destination\":\"x\"}",
+                item("mallory", "op-4", "mallory@example.com"),
+                item("bob", "op-5", "bob@example.com"));
+
+        // Then
+        assertEquals("Malformed JSON", results.get(0).path("message").asText());
+        assertEquals("Destination is required", results.get(1).path("message").asText());
+        assertFalse(results.get(2).path("success").asBoolean());
+        assertEquals("User not found", results.get(3).path("message").asText());
+        assertTrue(results.get(4).path("success").asBoolean());
+        assertEquals(List.of("bob@example.com"), outboxRepository.destinations());
+    }
+
+    @Test
+    void generateForUsers_ShouldRejectOversizedLinesWithoutLosingTheNext() throws IOException {
+        // When
+        List<JsonNode> results = generateForUsers(
+                "{\"username\":\"alice\",\"destination\":\"" + "a".repeat(10_000) + "\"}",
+                item("bob", "op-2", "bob@example.com"));
+
+        // Then
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(0).path("line").asLong());
+        assertEquals("Line exceeds 200 characters", results.get(0).path("message").asText());
+        assertEquals(2, results.get(1).path("line").asLong());
+        assertTrue(results.get(1).path("success").asBoolean());
+    }
+
+    @Test
+    void generateForUsers_ShouldSkipBlankLinesAndAcceptCrLf() throws IOException {
+        // When
+        List<JsonNode> results = parse(generate(item("alice", "op-1", "alice@example.com") + "\r\n\r\n"
+                + item("bob", "op-3", "bob@example.com") + "\r\n"));
+
+        // Then
+        assertEquals(2, results.size());
+        assertEquals(3, results.get(1).path("line").asLong());
+        assertTrue(results.get(1).path("success").asBoolean());
+    }
+
+    @Test
+    void generateForUsers_ShouldNotStoreCodesForAnUnavailableChannel() throws IOException {
+        // Given
+        email.available = false;
+
+        // When
+        List<JsonNode> results = generateForUsers(
+                item("alice", "op-1", "alice@example.com"),
+                item("bob", "op-2", "bob@example.com"));
+
+        // Then
+        assertEquals("Notification channel not available: EMAIL", results.get(0).path("message").asText());
+        assertFalse(results.get(1).path("success").asBoolean());
+        assertTrue(outboxRepository.codes.isEmpty());
+    }
+
+    @Test
+    void generateForUsers_ShouldFailOnlyTheChunkWhoseInsertFailed() throws IOException {
+        // Given
+        outboxRepository.failOnBatch = 2;
+
+        // When
+        List<JsonNode> results = generateForUsers(
+                item("alice", "op-1", "alice@example.com"),
+                item("bob", "op-2", "bob@example.com"),
+                item("alice", "op-3", "alice@example.com"),
+                item("bob", "op-4", "bob@example.com"),
+                item("alice", "op-5", "alice@example.com"));
+
+        // Then
+        assertEquals(5, results.size());
+        assertTrue(results.get(1).path("success").asBoolean());
+        assertEquals("Failed to generate OTP", results.get(2).path("message").asText());
+        assertEquals("Failed to generate OTP", results.get(3).path("message").asText());
+        assertTrue(results.get(4).path("success").asBoolean());
+        assertEquals(List.of("alice@example.com", "bob@example.com", "alice@example.com"), outboxRepository.destinations());
+    }
+
+    @Test
+    void generateForUser_ShouldUseTheCallerForEveryLine() throws IOException {
+        // Given
+        User alice = userRepository.findByUsername("alice").orElseThrow();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // When
+        bulkOtpService.generateForUser(alice.getId(), "alice", input(item("bob", "op-1", "bob@example.com")), output);
+
+        // Then
+        JsonNode result = parse(output).get(0);
+        assertEquals("alice", result.path("username").asText());
+        assertTrue(result.path("success").asBoolean());
+        assertEquals(alice.getId(), outboxRepository.codes.get(0).getUserId());
+        assertEquals(0, userRepository.lookups, "The caller is already known");
+    }
+
+    private List<JsonNode> generateForUsers(String... lines) throws IOException {
+        return parse(generate(String.join("\n", lines) + "\n"));
+    }
+
+    private ByteArrayOutputStream generate(String body) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bulkOtpService.generateForUsers(input(body), output);
+        return output;
+    }
+
+    private static InputStream input(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<JsonNode> parse(ByteArrayOutputStream output) throws IOException {
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                results.add(objectMapper.readTree(line));
+            }
+        }
+        return results;
+    }
+
+    private static String item(String username, String operationId, String destination) {
+        return "{\"username\":\"" + username + "\",\"operationId\":\"" + operationId
+                + "\",\"channel\":\"EMAIL\",\"destination\":\"" + destination + "\"}";
+    }
+
+    // Простые тестовые классы
+    private static class TestUserRepository implements UserRepository {
+        private final Map<String, User> users = new HashMap<>();
+        private int lookups;
+
+        private void add(String username) {
+            User user = new User(username, "hashedpassword", UserRole.USER);
+            user.setId(UUID.randomUUID());
+            users.put(username, user);
+        }
+
+        @Override
+        public List<User> findAllByUsernames(Collection<String> usernames) {
+            lookups++;
+            List<User> found = new ArrayList<>();
+            for (String username : usernames) {
+                if (users.containsKey(username)) {
+                    found.add(users.get(username));
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public Optional<User> findByUsername(String username) {
+            return Optional.ofNullable(users.get(username));
+        }
+
+        @Override
+        public boolean existsByRole(UserRole role) {
+            return false;
+        }
+
+        @Override
+        public long countByRole(UserRole role) {
+            return 0;
+        }
+
+        @Override
+        public List<User> findAllExceptAdmins() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<User> findAllExceptAdmins(KeysetCursor after, int limit) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void forEachExceptAdmins(int fetchSize, Consumer<User> action) {
+            // No implementation needed for this test
+        }
+
+        @Override
+        public User save(User entity) {
+            return entity;
+        }
+
+        @Override
+        public Optional<User> findById(UUID id) {
+            return Optional.empty();
+        }
+
+        @Override
+        public List<User> findAll() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<User> findAll(KeysetCursor after, int limit) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void deleteById(UUID id) {
+            // No implementation needed for this test
+        }
+
+        @Override
+        public boolean existsById(UUID id) {
+            return false;
+        }
+    }
+
+    private static class TestOtpOutboxRepository implements OtpOutboxRepository {
+        private final List<OtpCode> codes = new ArrayList<>();
+        private final List<OtpOutboxMessage> messages = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+        // 1-based number of the saveAllWithCodes call that fails, 0 for none
+        private int failOnBatch;
+
+        private List<String> destinations() {
+            List<String> destinations = new ArrayList<>();
+            for (OtpOutboxMessage message : messages) {
+                destinations.add(message.getDestination());
+            }
+            return destinations;
+        }
+
+        @Override
+        public List<OtpCode> saveAllWithCodes(List<OtpCode> otpCodes, List<OtpOutboxMessage> messages) {
+            batchSizes.add(otpCodes.size());
+            if (batchSizes.size() == failOnBatch) {
+                throw new RuntimeException("Failed to insert OTP codes batch with outbox messages");
+            }
+            this.codes.addAll(otpCodes);
+            this.messages.addAll(messages);
+            return otpCodes;
+        }
+
+        @Override
+        public OtpCode saveWithCode(OtpCode otpCode, OtpOutboxMessage message) {
+            return saveAllWithCodes(List.of(otpCode), List.of(message)).get(0);
+        }
+
+        @Override
+        public List<OtpOutboxMessage> claim(int limit, Duration lease, Instant now) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean delete(UUID id, int attempts, UUID otpCodeId, Instant otpCodeCreatedAt,
+                              NotificationChannel deliveredVia) {
+            return false;
+        }
+
+        @Override
+        public boolean retryAt(UUID id, int attempts, Instant availableAt, String error) {
+            return false;
+        }
+
+        @Override
+        public boolean release(UUID id, int attempts, Instant availableAt, String error) {
+            return false;
+        }
+
+        @Override
+        public boolean markFailed(UUID id, int attempts, String error) {
+            return false;
+        }
+
+        @Override
+        public long purgeExpired(Instant expiredBefore, int batchSize) {
+            return 0;
+        }
+    }
+
+    private static class TestOtpConfigService extends OtpConfigService {
+        private final OtpConfig config;
+
+        TestOtpConfigService(OtpConfig config) {
+            super(null);
+            this.config = config;
+        }
+
+        @Override
+        public OtpConfig getCurrentConfig() {
+            return config;
+        }
+    }
+
+    private static class RecordingChannel implements NotificationService {
+        private final List<String> sent = new ArrayList<>();
+        private boolean available = true;
+
+        @Override
+        public void sendCode(String destination, String code) {
+            sent.add(destination);
+        }
+
+        @Override
+        public String getChannelName() {
+            return "EMAIL";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationTimeoutException;
+import com.example.totpsender.model.NotificationChannel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.totpsender.util.Conditions.waitUntil;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadNotificationServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    void sendCode_ShouldFailFastWhenChannelIsSaturated() throws Exception {
+        BulkheadNotificationService email = new BulkheadNotificationService(
+                new HangingService(release), NotificationChannel.EMAIL, 1, 1, 10_000, meterRegistry);
+        CompletableFuture<Void> running = CompletableFuture.runAsync(() -> email.sendCode("a@example.com", "1"));
+        waitUntil(() -> email.getActiveCount() == 1);
+        CompletableFuture<Void> queued = CompletableFuture.runAsync(() -> email.sendCode("b@example.com", "2"));
+        waitUntil(() -> email.getQueueSize() == 1);
+
+        long startedAt = System.nanoTime();
+        NotificationException e = assertThrows(NotificationException.class, () -> email.sendCode("c@example.com", "3"));
+
+        assertEquals("Notification channel EMAIL is saturated", e.getMessage());
+        assertTrue(System.nanoTime() - startedAt < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(1.0, meterRegistry.get("notification.bulkhead.rejected").tag("channel", "EMAIL").counter().count());
+
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void sendCode_ShouldGiveUpAfterTimeout() {
+        BulkheadNotificationService email = new BulkheadNotificationService(
+                new HangingService(release), NotificationChannel.EMAIL, 2, 2, 100, meterRegistry);
+
+        NotificationException e = assertThrows(NotificationTimeoutException.class, () -> email.sendCode("a@example.com", "1"));
+
+        assertEquals("Notification channel EMAIL timed out after 100 ms", e.getMessage());
+        assertEquals(1.0, meterRegistry.get("notification.bulkhead.timeouts").tag("channel", "EMAIL").counter().count());
+    }
+
+    @Test
+    void sendCode_ShouldKeepOtherChannelsWorkingWhileOneHangs() throws Exception {
+        BulkheadNotificationService email = new BulkheadNotificationService(
+                new HangingService(release), NotificationChannel.EMAIL, 1, 1, 10_000, meterRegistry);
+        HangingService sms = new HangingService(new CountDownLatch(0));
+        BulkheadNotificationService smsBulkhead = new BulkheadNotificationService(
+                sms, NotificationChannel.SMS, 1, 1, 10_000, meterRegistry);
+        CompletableFuture.runAsync(() -> email.sendCode("a@example.com", "1"));
+        waitUntil(() -> email.getActiveCount() == 1);
+
+        smsBulkhead.sendCode("+10000000000", "2");
+
+        assertEquals(1, sms.sent);
+    }
+
+    @Test
+    void sendCode_ShouldPropagateDelegateFailure() {
+        NotificationService failing = new HangingService(release) {
+            @Override
+            public void sendCode(String destination, String code) {
+                throw new NotificationException("SMTP server said no");
+            }
+        };
+        BulkheadNotificationService email = new BulkheadNotificationService(
+                failing, NotificationChannel.EMAIL, 1, 1, 1000, meterRegistry);
+
+        NotificationException e = assertThrows(NotificationException.class, () -> email.sendCode("a@example.com", "1"));
+        assertEquals("SMTP server said no", e.getMessage());
+    }
+
+    // Blocks every send until the latch opens, like a provider that accepted the connection and went quiet
+    private static class HangingService implements NotificationService {
+        private final CountDownLatch release;
+        private volatile int sent;
+
+        private HangingService(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void sendCode(String destination, String code) {
+            try {
+                release.await();
+                sent++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String getChannelName() {
+            return "TEST";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.model.NotificationChannel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeliveryLatencyTrackerTest {
+
+    private final DeliveryLatencyTracker tracker = new DeliveryLatencyTracker(100, 10,
+            Duration.ofSeconds(3), Duration.ofMillis(100), Duration.ofSeconds(10), new SimpleMeterRegistry());
+
+    @Test
+    void budgetFor_ShouldUseDefaultUntilEnoughSamples() {
+        for (int i = 0; i < 9; i++) {
+            tracker.record(NotificationChannel.SMS, Duration.ofMillis(500));
+        }
+
+        assertNull(tracker.p99(NotificationChannel.SMS));
+        assertEquals(Duration.ofSeconds(3), tracker.budgetFor(NotificationChannel.SMS));
+    }
+
+    @Test
+    void budgetFor_ShouldFollowRecentP99() {
+        // 99 fast sends and one slow one: the slow one is the p100, not the p99
+        for (int i = 1; i <= 99; i++) {
+            tracker.record(NotificationChannel.SMS, Duration.ofMillis(i * 10));
+        }
+        tracker.record(NotificationChannel.SMS, Duration.ofSeconds(60));
+
+        assertEquals(Duration.ofMillis(990), tracker.budgetFor(NotificationChannel.SMS));
+        assertEquals(Duration.ofSeconds(3), tracker.budgetFor(NotificationChannel.TELEGRAM), "Channels are tracked apart");
+    }
+
+    @Test
+    void budgetFor_ShouldStayWithinBounds() {
+        for (int i = 0; i < 100; i++) {
+            tracker.record(NotificationChannel.EMAIL, Duration.ofMillis(5));
+            tracker.record(NotificationChannel.SMS, Duration.ofSeconds(30));
+        }
+
+        assertEquals(Duration.ofMillis(100), tracker.budgetFor(NotificationChannel.EMAIL));
+        assertEquals(Duration.ofSeconds(10), tracker.budgetFor(NotificationChannel.SMS));
+    }
+
+    @Test
+    void p99_ShouldForgetSamplesOutsideTheWindow() {
+        for (int i = 0; i < 100; i++) {
+            tracker.record(NotificationChannel.SMS, Duration.ofSeconds(5));
+        }
+        for (int i = 0; i < 100; i++) {
+            tracker.record(NotificationChannel.SMS, Duration.ofMillis(200));
+        }
+
+        assertEquals(Duration.ofMillis(200), tracker.p99(NotificationChannel.SMS));
+    }
+}
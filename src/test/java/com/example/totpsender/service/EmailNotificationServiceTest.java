@@ -0,0 +1,126 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmailNotificationServiceTest {
+
+    private SmtpServerStub smtpServer;
+    private EmailNotificationService emailService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtpServer = new SmtpServerStub();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (emailService != null) {
+            emailService.close();
+        }
+        smtpServer.close();
+    }
+
+    @Test
+    void sendCode_ShouldReuseConnectionAcrossMessages() {
+        emailService = new EmailNotificationService(config(2, 100, 60000));
+
+        for (int i = 0; i < 10; i++) {
+            emailService.sendCode("user" + i + "@example.com", "123456");
+        }
+
+        assertEquals(10, smtpServer.messages.get());
+        assertEquals(1, smtpServer.connections.get());
+    }
+
+    @Test
+    void sendCode_ShouldNotOpenMoreConnectionsThanPoolSize() throws Exception {
+        smtpServer.handshakeDelayMillis = 20;
+        emailService = new EmailNotificationService(config(3, 100, 60000));
+
+        ExecutorService senders = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String destination = "user" + i + "@example.com";
+                results.add(senders.submit(() -> emailService.sendCode(destination, "123456")));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            senders.shutdownNow();
+        }
+
+        assertEquals(40, smtpServer.messages.get());
+        assertTrue(smtpServer.connections.get() <= 3, "Opened " + smtpServer.connections.get() + " connections");
+    }
+
+    @Test
+    void sendCode_ShouldReplaceConnectionAfterMaxMessages() {
+        emailService = new EmailNotificationService(config(1, 3, 60000));
+
+        for (int i = 0; i < 7; i++) {
+            emailService.sendCode("user@example.com", "123456");
+        }
+
+        assertEquals(7, smtpServer.messages.get());
+        assertEquals(3, smtpServer.connections.get());
+    }
+
+    @Test
+    void sendCode_ShouldCheckIdleConnectionWithNoopAndReconnect() throws IOException {
+        emailService = new EmailNotificationService(config(1, 100, 0));
+        emailService.sendCode("user@example.com", "111111");
+
+        smtpServer.dropConnections();
+        emailService.sendCode("user@example.com", "222222");
+
+        assertEquals(2, smtpServer.messages.get());
+        assertEquals(2, smtpServer.connections.get());
+    }
+
+    @Test
+    void sendCode_ShouldRetryOnFreshConnectionWhenPooledOneWasDropped() throws IOException {
+        emailService = new EmailNotificationService(config(1, 100, 60000));
+        emailService.sendCode("user@example.com", "111111");
+
+        smtpServer.dropConnections();
+        emailService.sendCode("user@example.com", "222222");
+
+        assertEquals(2, smtpServer.messages.get());
+        assertEquals(2, smtpServer.connections.get());
+        assertEquals(0, smtpServer.noops.get());
+    }
+
+    @Test
+    void sendCode_ShouldNotResendRejectedMessage() {
+        emailService = new EmailNotificationService(config(1, 100, 60000));
+
+        assertThrows(NotificationException.class, () -> emailService.sendCode("rejected@example.com", "123456"));
+        emailService.sendCode("user@example.com", "123456");
+
+        assertEquals(1, smtpServer.messages.get());
+        assertEquals(2, smtpServer.connections.get());
+    }
+
+    private Properties config(int poolSize, int maxMessages, long validateAfterIdleMillis) {
+        Properties config = smtpServer.emailConfig();
+        config.setProperty("email.smtp.pool.size", String.valueOf(poolSize));
+        config.setProperty("email.smtp.pool.max_messages_per_connection", String.valueOf(maxMessages));
+        config.setProperty("email.smtp.pool.validate_after_idle_millis", String.valueOf(validateAfterIdleMillis));
+        return config;
+    }
+}
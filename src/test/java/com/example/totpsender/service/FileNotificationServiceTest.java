@@ -0,0 +1,61 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileNotificationServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sendCode_ShouldAppendEntryInExistingFormat() throws IOException {
+        Properties config = new Properties();
+        config.setProperty("file.output.directory", tempDir.toString());
+        config.setProperty("file.output.filename", "otp_codes.txt");
+        FileNotificationService fileService = new FileNotificationService(config);
+
+        fileService.sendCode("user@example.com", "123456");
+        fileService.sendCode("+1234567890", "654321");
+        fileService.close();
+
+        List<String> lines = Files.readAllLines(tempDir.resolve("otp_codes.txt"));
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).matches("\\[\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}] Destination: user@example.com, Code: 123456"),
+                lines.get(0));
+        assertTrue(lines.get(1).endsWith("] Destination: +1234567890, Code: 654321"));
+    }
+
+    @Test
+    void sendCode_ShouldFailWhenTheEntryCannotBeWritten() throws IOException {
+        Properties config = new Properties();
+        config.setProperty("file.output.directory", tempDir.toString());
+        config.setProperty("file.output.filename", "otp_codes.txt");
+        config.setProperty("file.rotate.max_bytes", "100");
+        FileNotificationService fileService = new FileNotificationService(config);
+        fileService.sendCode("user@example.com", "123456");
+
+        // The next entry rotates the file, which fails once the file is gone
+        Files.delete(tempDir.resolve("otp_codes.txt"));
+
+        assertThrows(NotificationException.class, () -> fileService.sendCode("+1234567890", "654321"));
+        fileService.close();
+    }
+
+    @Test
+    void sendCode_ShouldFailWhenNotConfigured() {
+        FileNotificationService fileService = new FileNotificationService(new Properties());
+
+        assertFalse(fileService.isAvailable());
+        assertThrows(RuntimeException.class, () -> fileService.sendCode("user@example.com", "123456"));
+    }
+}
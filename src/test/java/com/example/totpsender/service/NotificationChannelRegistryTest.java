@@ -0,0 +1,96 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.model.NotificationChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationChannelRegistryTest {
+
+    @Test
+    void get_ShouldReturnTheSameInstanceForEveryLookup() {
+        AtomicInteger created = new AtomicInteger();
+        Map<NotificationChannel, Supplier<? extends NotificationService>> factories = new EnumMap<>(NotificationChannel.class);
+        factories.put(NotificationChannel.FILE, () -> {
+            created.incrementAndGet();
+            return new TestNotificationService("FILE", true);
+        });
+        NotificationChannelRegistry registry = new NotificationChannelRegistry(factories);
+
+        NotificationService first = registry.get("file");
+        NotificationService second = registry.get(NotificationChannel.FILE);
+
+        assertSame(first, second);
+        assertEquals(1, created.get());
+        assertNull(registry.get("PIGEON"));
+        assertNull(registry.get(NotificationChannel.SMS));
+    }
+
+    @Test
+    void getAvailability_ShouldReportFailedAndMissingChannelsAsUnavailable() {
+        Map<NotificationChannel, Supplier<? extends NotificationService>> factories = new EnumMap<>(NotificationChannel.class);
+        factories.put(NotificationChannel.EMAIL, () -> new TestNotificationService("EMAIL", true));
+        factories.put(NotificationChannel.SMS, () -> {
+            throw new RuntimeException("Unable to find sms.properties");
+        });
+        factories.put(NotificationChannel.TELEGRAM, () -> new TestNotificationService("TELEGRAM", false));
+        NotificationChannelRegistry registry = new NotificationChannelRegistry(factories);
+
+        Map<NotificationChannel, Boolean> availability = registry.getAvailability();
+
+        assertTrue(availability.get(NotificationChannel.EMAIL));
+        assertFalse(availability.get(NotificationChannel.SMS));
+        assertFalse(availability.get(NotificationChannel.TELEGRAM));
+        assertFalse(availability.get(NotificationChannel.FILE));
+    }
+
+    @Test
+    void close_ShouldCloseEveryService() {
+        TestNotificationService email = new TestNotificationService("EMAIL", true);
+        TestNotificationService file = new TestNotificationService("FILE", true);
+        Map<NotificationChannel, Supplier<? extends NotificationService>> factories = new EnumMap<>(NotificationChannel.class);
+        factories.put(NotificationChannel.EMAIL, () -> email);
+        factories.put(NotificationChannel.FILE, () -> file);
+        NotificationChannelRegistry registry = new NotificationChannelRegistry(factories);
+
+        registry.close();
+
+        assertTrue(email.closed);
+        assertTrue(file.closed);
+    }
+
+    private static class TestNotificationService implements NotificationService {
+        private final String channelName;
+        private final boolean available;
+        private boolean closed;
+
+        private TestNotificationService(String channelName, boolean available) {
+            this.channelName = channelName;
+            this.available = available;
+        }
+
+        @Override
+        public void sendCode(String destination, String code) {
+        }
+
+        @Override
+        public String getChannelName() {
+            return channelName;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
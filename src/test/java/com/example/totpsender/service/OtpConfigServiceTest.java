@@ -0,0 +1,131 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.model.OtpConfig;
+import com.example.totpsender.repository.KeysetCursor;
+import com.example.totpsender.repository.OtpConfigRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OtpConfigServiceTest {
+
+    private TestOtpConfigRepository repository;
+    private OtpConfigService otpConfigService;
+
+    @BeforeEach
+    void setUp() {
+        repository = new TestOtpConfigRepository();
+        repository.stored = new OtpConfig(UUID.randomUUID(), 6, 300, 1, LocalDateTime.now(), LocalDateTime.now());
+        otpConfigService = new OtpConfigService(repository);
+    }
+
+    @Test
+    void getCurrentConfig_ShouldLoadConfigOnce() {
+        otpConfigService.getCurrentConfig();
+        OtpConfig config = otpConfigService.getCurrentConfig();
+
+        assertEquals(6, config.getCodeLength());
+        assertEquals(1, repository.reads);
+    }
+
+    @Test
+    void updateOtpConfig_ShouldPublishNewVersion() {
+        otpConfigService.getCurrentConfig();
+
+        otpConfigService.updateOtpConfig(8, 600);
+        OtpConfig config = otpConfigService.getCurrentConfig();
+
+        assertEquals(8, config.getCodeLength());
+        assertEquals(600, config.getTtlSeconds());
+        assertEquals(2, config.getVersion());
+    }
+
+    @Test
+    void onConfigChanged_ShouldReloadOnlyForOtherVersion() {
+        otpConfigService.getCurrentConfig();
+
+        otpConfigService.onConfigChanged(1);
+        assertEquals(1, repository.reads, "Known version should not be reloaded");
+
+        repository.stored = new OtpConfig(repository.stored.getId(), 5, 120, 2,
+                repository.stored.getCreatedAt(), LocalDateTime.now());
+        otpConfigService.onConfigChanged(2);
+
+        assertEquals(2, repository.reads);
+        assertEquals(5, otpConfigService.getCurrentConfig().getCodeLength());
+    }
+
+    @Test
+    void publishedConfig_ShouldNotChangeWhenSavedEntityChanges() {
+        OtpConfig published = otpConfigService.getCurrentConfig();
+
+        repository.stored.setCodeLength(4);
+
+        assertEquals(6, published.getCodeLength());
+        assertEquals(6, otpConfigService.getCurrentConfig().getCodeLength());
+    }
+
+    @Test
+    void getCurrentConfig_ShouldHandOutCopiesOfPublishedConfig() {
+        otpConfigService.getCurrentConfig().setCodeLength(4);
+        otpConfigService.updateOtpConfig(8, 600).setTtlSeconds(30);
+
+        OtpConfig config = otpConfigService.getCurrentConfig();
+        assertEquals(8, config.getCodeLength());
+        assertEquals(600, config.getTtlSeconds());
+    }
+
+    private static class TestOtpConfigRepository implements OtpConfigRepository {
+        private OtpConfig stored;
+        private int reads;
+
+        @Override
+        public Optional<OtpConfig> findFirst() {
+            reads++;
+            return Optional.ofNullable(stored);
+        }
+
+        @Override
+        public OtpConfig save(OtpConfig config) {
+            if (config.getId() == null) {
+                config.setId(UUID.randomUUID());
+            } else {
+                config.setVersion(config.getVersion() + 1);
+            }
+            stored = config;
+            return config;
+        }
+
+        @Override
+        public Optional<OtpConfig> findById(UUID id) {
+            return Optional.ofNullable(stored);
+        }
+
+        @Override
+        public List<OtpConfig> findAll() {
+            return stored == null ? Collections.emptyList() : List.of(stored);
+        }
+
+        @Override
+        public List<OtpConfig> findAll(KeysetCursor after, int limit) {
+            return findAll();
+        }
+
+        @Override
+        public void deleteById(UUID id) {
+            stored = null;
+        }
+
+        @Override
+        public boolean existsById(UUID id) {
+            return stored != null;
+        }
+    }
+}
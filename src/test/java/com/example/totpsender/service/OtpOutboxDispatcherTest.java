@@ -0,0 +1,430 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.exception.RecipientRejectedException;
+import com.example.totpsender.model.DeliveryTarget;
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.model.OtpCode;
+import com.example.totpsender.model.OtpOutboxMessage;
+import com.example.totpsender.repository.OtpOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.example.totpsender.util.Conditions.waitUntil;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OtpOutboxDispatcherTest {
+
+    private OtpOutboxDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void dispatcher_ShouldDeliverEveryMessageOnceAndRemoveIt() throws Exception {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        for (int i = 0; i < 40; i++) {
+            outbox.add(message(NotificationChannel.EMAIL, "user" + i + "@example.com", Duration.ofMinutes(5)));
+        }
+        RecordingChannel email = new RecordingChannel(20, 0);
+        dispatcher = dispatcher(outbox, email, 4, 5);
+
+        dispatcher.start();
+        waitUntil(() -> outbox.rows.isEmpty());
+
+        assertEquals(40, email.sent.size());
+        assertEquals(40, Set.copyOf(email.sent).size(), "No destination should get the code twice");
+        assertTrue(email.maxConcurrent.get() <= 4, "At most one delivery per worker");
+    }
+
+    @Test
+    void dispatcher_ShouldRetryFailedDeliveryWithBackoff() throws Exception {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        outbox.add(message(NotificationChannel.EMAIL, "user@example.com", Duration.ofMinutes(5)));
+        RecordingChannel email = new RecordingChannel(0, 2);
+        dispatcher = dispatcher(outbox, email, 2, 5);
+
+        dispatcher.start();
+        dispatcher.wakeUp();
+        waitUntil(() -> outbox.rows.isEmpty());
+
+        assertEquals(3, email.attempts.get());
+        assertEquals(List.of("user@example.com"), email.sent);
+        assertTrue(outbox.failed.isEmpty());
+    }
+
+    @Test
+    void dispatcher_ShouldMarkFailedAfterMaxAttempts() throws Exception {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        OtpOutboxMessage message = message(NotificationChannel.EMAIL, "user@example.com", Duration.ofMinutes(5));
+        outbox.add(message);
+        RecordingChannel email = new RecordingChannel(0, Integer.MAX_VALUE);
+        dispatcher = dispatcher(outbox, email, 2, 3);
+
+        dispatcher.start();
+        waitUntil(() -> outbox.failed.containsKey(message.getId()));
+
+        assertEquals(3, email.attempts.get());
+        assertTrue(email.sent.isEmpty());
+    }
+
+    @Test
+    void deliver_ShouldGiveUpAtOnceWhenRecipientIsRejected() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        OtpOutboxMessage message = message(NotificationChannel.EMAIL, "not-an-address", Duration.ofMinutes(5));
+        outbox.add(message);
+        RecordingChannel email = new RecordingChannel(0, 0) {
+            @Override
+            public void sendCode(String destination, String code) {
+                super.sendCode(destination, code);
+                throw new RecipientRejectedException("Email rejected: Invalid Addresses");
+            }
+        };
+        dispatcher = dispatcher(outbox, email, 1, 5);
+
+        dispatcher.deliver(outbox.claim(1, Duration.ofMinutes(1), Instant.now()).get(0));
+
+        assertEquals(1, email.attempts.get());
+        assertEquals("Email rejected: Invalid Addresses", outbox.failed.get(message.getId()));
+    }
+
+    @Test
+    void dispatcher_ShouldNotSpendAttemptsOnLocalRejections() throws Exception {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        OtpOutboxMessage message = message(NotificationChannel.EMAIL, "user@example.com", Duration.ofMinutes(5));
+        outbox.add(message);
+        AtomicInteger rejections = new AtomicInteger();
+        RecordingChannel email = new RecordingChannel(0, 0) {
+            @Override
+            public void sendCode(String destination, String code) {
+                if (rejections.incrementAndGet() <= 10) {
+                    throw new NotificationRejectedException("Notification channel EMAIL is at its concurrency limit of 1");
+                }
+                super.sendCode(destination, code);
+            }
+        };
+        dispatcher = dispatcher(outbox, email, 2, 3);
+
+        dispatcher.start();
+        waitUntil(() -> outbox.rows.isEmpty() || outbox.failed.containsKey(message.getId()));
+
+        assertTrue(outbox.failed.isEmpty(), "Ten local rejections must not use up three attempts");
+        assertEquals(List.of("user@example.com"), email.sent);
+    }
+
+    @Test
+    void deliver_ShouldNotSendExpiredCode() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        OtpOutboxMessage message = message(NotificationChannel.EMAIL, "user@example.com", Duration.ofSeconds(-1));
+        outbox.add(message);
+        RecordingChannel email = new RecordingChannel(0, 0);
+        dispatcher = dispatcher(outbox, email, 1, 3);
+
+        dispatcher.deliver(outbox.claim(1, Duration.ofMinutes(1), Instant.now()).get(0));
+
+        assertEquals(0, email.attempts.get());
+        assertTrue(outbox.failed.containsKey(message.getId()));
+    }
+
+    @Test
+    void deliver_ShouldHedgeOnFallbackWhenPrimaryIsSlow() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        OtpOutboxMessage message = hedgedMessage(Duration.ofMillis(50),
+                new DeliveryTarget(NotificationChannel.TELEGRAM, "alice"));
+        outbox.add(message);
+        RecordingChannel sms = new RecordingChannel(1000, 0);
+        RecordingChannel telegram = new RecordingChannel(0, 0);
+        dispatcher = dispatcher(outbox, Map.of(NotificationChannel.SMS, sms, NotificationChannel.TELEGRAM, telegram), 2, 3);
+
+        long startedAt = System.nanoTime();
+        dispatcher.deliver(message);
+
+        assertTrue(System.nanoTime() - startedAt < 900_000_000L, "Should not wait for the slow primary");
+        assertEquals(List.of("alice"), telegram.sent);
+        assertEquals(NotificationChannel.TELEGRAM, outbox.deliveredVia.get(message.getOtpCodeId()));
+        assertTrue(outbox.rows.isEmpty());
+    }
+
+    @Test
+    void deliver_ShouldFailOverAtOnceWhenPrimaryFails() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        OtpOutboxMessage message = hedgedMessage(Duration.ofSeconds(30),
+                new DeliveryTarget(NotificationChannel.TELEGRAM, "alice"));
+        outbox.add(message);
+        RecordingChannel sms = new RecordingChannel(0, Integer.MAX_VALUE);
+        RecordingChannel telegram = new RecordingChannel(0, 0);
+        dispatcher = dispatcher(outbox, Map.of(NotificationChannel.SMS, sms, NotificationChannel.TELEGRAM, telegram), 2, 3);
+
+        long startedAt = System.nanoTime();
+        dispatcher.deliver(message);
+
+        assertTrue(System.nanoTime() - startedAt < 5_000_000_000L, "Should not wait out the budget");
+        assertEquals(NotificationChannel.TELEGRAM, outbox.deliveredVia.get(message.getOtpCodeId()));
+    }
+
+    @Test
+    void deliver_ShouldKeepToPrimaryWithinBudget() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        OtpOutboxMessage message = hedgedMessage(Duration.ofSeconds(5),
+                new DeliveryTarget(NotificationChannel.TELEGRAM, "alice"));
+        outbox.add(message);
+        RecordingChannel sms = new RecordingChannel(20, 0);
+        RecordingChannel telegram = new RecordingChannel(0, 0);
+        dispatcher = dispatcher(outbox, Map.of(NotificationChannel.SMS, sms, NotificationChannel.TELEGRAM, telegram), 2, 3);
+
+        dispatcher.deliver(message);
+
+        assertEquals(List.of("+10000000000"), sms.sent);
+        assertEquals(0, telegram.attempts.get());
+        assertEquals(NotificationChannel.SMS, outbox.deliveredVia.get(message.getOtpCodeId()));
+    }
+
+    @Test
+    void deliver_ShouldRetryLaterWhenEveryChannelFails() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        OtpOutboxMessage message = hedgedMessage(Duration.ofSeconds(5),
+                new DeliveryTarget(NotificationChannel.TELEGRAM, "alice"));
+        outbox.add(message);
+        RecordingChannel sms = new RecordingChannel(0, Integer.MAX_VALUE);
+        RecordingChannel telegram = new RecordingChannel(0, Integer.MAX_VALUE);
+        dispatcher = dispatcher(outbox, Map.of(NotificationChannel.SMS, sms, NotificationChannel.TELEGRAM, telegram), 2, 3);
+
+        dispatcher.deliver(message);
+
+        assertEquals(1, sms.attempts.get());
+        assertEquals(1, telegram.attempts.get());
+        assertTrue(outbox.rows.containsKey(message.getId()), "Row stays for a later retry");
+        assertTrue(outbox.deliveredVia.isEmpty());
+    }
+
+    @Test
+    void deliver_ShouldStopWaitingBeforeTheLeaseRunsOut() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        OtpOutboxMessage message = hedgedMessage(Duration.ofMillis(50),
+                new DeliveryTarget(NotificationChannel.TELEGRAM, "alice"));
+        outbox.add(message);
+        RecordingChannel sms = new RecordingChannel(5000, 0);
+        RecordingChannel telegram = new RecordingChannel(5000, 0);
+        // 5 s of the lease are kept as a margin, leaving one second to deliver in
+        dispatcher = dispatcher(outbox, Map.of(NotificationChannel.SMS, sms, NotificationChannel.TELEGRAM, telegram),
+                2, 3, Duration.ofSeconds(6));
+
+        long startedAt = System.nanoTime();
+        dispatcher.deliver(message);
+
+        long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        assertTrue(elapsedMillis >= 900 && elapsedMillis < 3000, "Should give up at the lease deadline, took " + elapsedMillis);
+        assertEquals(1, telegram.attempts.get());
+        assertTrue(outbox.rows.containsKey(message.getId()), "Row stays for a later retry");
+        assertTrue(outbox.deliveredVia.isEmpty());
+    }
+
+    @Test
+    void backoff_ShouldDoubleUpToMaximum() {
+        dispatcher = dispatcher(new InMemoryOutbox(), new RecordingChannel(0, 0), 1, 10);
+
+        assertEquals(Duration.ofMillis(10), dispatcher.backoff(1));
+        assertEquals(Duration.ofMillis(20), dispatcher.backoff(2));
+        assertEquals(Duration.ofMillis(40), dispatcher.backoff(3));
+        assertEquals(Duration.ofMillis(100), dispatcher.backoff(20));
+    }
+
+    private static OtpOutboxDispatcher dispatcher(InMemoryOutbox outbox, NotificationService email,
+                                                  int workers, int maxAttempts) {
+        return dispatcher(outbox, Map.of(NotificationChannel.EMAIL, email), workers, maxAttempts);
+    }
+
+    private static OtpOutboxDispatcher dispatcher(InMemoryOutbox outbox, Map<NotificationChannel, NotificationService> channels,
+                                                  int workers, int maxAttempts) {
+        return dispatcher(outbox, channels, workers, maxAttempts, Duration.ofSeconds(30));
+    }
+
+    private static OtpOutboxDispatcher dispatcher(InMemoryOutbox outbox, Map<NotificationChannel, NotificationService> channels,
+                                                  int workers, int maxAttempts, Duration lease) {
+        Map<NotificationChannel, Supplier<? extends NotificationService>> factories = new EnumMap<>(NotificationChannel.class);
+        channels.forEach((channel, service) -> factories.put(channel, () -> service));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new OtpOutboxDispatcher(outbox, new NotificationChannelRegistry(factories),
+                workers, 10, lease, 20, maxAttempts,
+                Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofMillis(5), 5,
+                new DeliveryLatencyTracker(100, 10, Duration.ofSeconds(5), Duration.ofMillis(10), Duration.ofSeconds(10),
+                        meterRegistry),
+                meterRegistry);
+    }
+
+    private static OtpOutboxMessage hedgedMessage(Duration budget, DeliveryTarget... fallbacks) {
+        Instant now = Instant.now();
+        return new OtpOutboxMessage(UUID.randomUUID(), UUID.randomUUID(), NotificationChannel.SMS, "+10000000000",
+                "123456", 1, now, now.plus(Duration.ofMinutes(5)), List.of(fallbacks), budget);
+    }
+
+    private static OtpOutboxMessage message(NotificationChannel channel, String destination, Duration ttl) {
+        Instant now = Instant.now();
+        return new OtpOutboxMessage(UUID.randomUUID(), UUID.randomUUID(), channel, destination, "123456",
+                0, now, now.plus(ttl));
+    }
+
+    // Same claim/lease rules as otp_outbox, kept in memory
+    private static class InMemoryOutbox implements OtpOutboxRepository {
+        private final Map<UUID, Row> rows = new ConcurrentHashMap<>();
+        private final Map<UUID, String> failed = new ConcurrentHashMap<>();
+        private final Map<UUID, NotificationChannel> deliveredVia = new ConcurrentHashMap<>();
+
+        private void add(OtpOutboxMessage message) {
+            rows.put(message.getId(), new Row(message, message.getCreatedAt()));
+        }
+
+        @Override
+        public OtpCode saveWithCode(OtpCode otpCode, OtpOutboxMessage message) {
+            add(message);
+            return otpCode;
+        }
+
+        @Override
+        public List<OtpCode> saveAllWithCodes(List<OtpCode> otpCodes, List<OtpOutboxMessage> messages) {
+            messages.forEach(this::add);
+            return otpCodes;
+        }
+
+        @Override
+        public synchronized List<OtpOutboxMessage> claim(int limit, Duration lease, Instant now) {
+            List<OtpOutboxMessage> claimed = new ArrayList<>();
+            for (Row row : rows.values()) {
+                if (claimed.size() == limit) {
+                    break;
+                }
+                if (!failed.containsKey(row.message.getId()) && !row.availableAt.isAfter(now)) {
+                    OtpOutboxMessage m = row.message;
+                    row.message = new OtpOutboxMessage(m.getId(), m.getOtpCodeId(), m.getChannel(), m.getDestination(),
+                            m.getCode(), m.getAttempts() + 1, m.getCreatedAt(), m.getExpiresAt(),
+                            m.getFallbacks(), m.getLatencyBudget());
+                    row.availableAt = now.plus(lease);
+                    claimed.add(row.message);
+                }
+            }
+            return claimed;
+        }
+
+        @Override
+        public synchronized boolean delete(UUID id, int attempts, UUID otpCodeId, Instant otpCodeCreatedAt,
+                                           NotificationChannel channel) {
+            Row row = rows.get(id);
+            if (row == null || row.message.getAttempts() != attempts) {
+                return false;
+            }
+            rows.remove(id);
+            deliveredVia.put(otpCodeId, channel);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean retryAt(UUID id, int attempts, Instant availableAt, String error) {
+            Row row = rows.get(id);
+            if (row == null || row.message.getAttempts() != attempts) {
+                return false;
+            }
+            row.availableAt = availableAt;
+            return true;
+        }
+
+        @Override
+        public synchronized boolean release(UUID id, int attempts, Instant availableAt, String error) {
+            Row row = rows.get(id);
+            if (row == null || row.message.getAttempts() != attempts) {
+                return false;
+            }
+            OtpOutboxMessage m = row.message;
+            row.message = new OtpOutboxMessage(m.getId(), m.getOtpCodeId(), m.getChannel(), m.getDestination(),
+                    m.getCode(), m.getAttempts() - 1, m.getCreatedAt(), m.getExpiresAt(),
+                    m.getFallbacks(), m.getLatencyBudget());
+            row.availableAt = availableAt;
+            return true;
+        }
+
+        @Override
+        public synchronized boolean markFailed(UUID id, int attempts, String error) {
+            Row row = rows.get(id);
+            if (row == null || row.message.getAttempts() != attempts) {
+                return false;
+            }
+            failed.put(id, error);
+            return true;
+        }
+
+        @Override
+        public long purgeExpired(Instant expiredBefore, int batchSize) {
+            return 0;
+        }
+
+        private static class Row {
+            private OtpOutboxMessage message;
+            private Instant availableAt;
+
+            private Row(OtpOutboxMessage message, Instant availableAt) {
+                this.message = message;
+                this.availableAt = availableAt;
+            }
+        }
+    }
+
+    private static class RecordingChannel implements NotificationService {
+        private final long latencyMillis;
+        private final int failuresBeforeSuccess;
+        private final List<String> sent = new java.util.concurrent.CopyOnWriteArrayList<>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        private RecordingChannel(long latencyMillis, int failuresBeforeSuccess) {
+            this.latencyMillis = latencyMillis;
+            this.failuresBeforeSuccess = failuresBeforeSuccess;
+        }
+
+        @Override
+        public void sendCode(String destination, String code) {
+            int attempt = attempts.incrementAndGet();
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+                if (attempt <= failuresBeforeSuccess) {
+                    throw new NotificationException("Provider unavailable");
+                }
+                sent.add(destination);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String getChannelName() {
+            return "EMAIL";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.example.totpsender.service;
 
 import com.example.totpsender.dto.OtpGenerateRequest;
+import com.example.totpsender.dto.OtpValidateRequest;
+import com.example.totpsender.model.DeliveryTarget;
 import com.example.totpsender.model.OtpCode;
 import com.example.totpsender.model.OtpConfig;
 import com.example.totpsender.model.User;
 import com.example.totpsender.model.UserRole;
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.model.OtpOutboxMessage;
 import com.example.totpsender.repository.OtpCodeRepository;
+import com.example.totpsender.repository.OtpOutboxRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -19,6 +24,7 @@ class OtpServiceTest {
     private User testUser;
     private OtpConfig testConfig;
     private OtpGenerateRequest testRequest;
+    private TestOtpOutboxRepository outboxRepository;
 
     @BeforeEach
     void setUp() {
@@ -32,9 +38,11 @@ class OtpServiceTest {
         // Создаем mock репозитория и конфиг сервиса
         TestOtpCodeRepository mockRepository = new TestOtpCodeRepository();
         TestOtpConfigService mockConfigService = new TestOtpConfigService(testConfig);
+        outboxRepository = new TestOtpOutboxRepository();
 
         // Создаем сервис с тестовыми зависимостями
-        otpService = new OtpService(mockRepository, mockConfigService);
+        otpService = new OtpService(mockRepository, mockConfigService, outboxRepository,
+                java.time.Duration.ofDays(7));
     }
 
     @Test
@@ -73,7 +81,8 @@ class OtpServiceTest {
         // Given
         OtpConfig customConfig = new OtpConfig(4, 300); // 4 digits
         TestOtpConfigService customConfigService = new TestOtpConfigService(customConfig);
-        OtpService customOtpService = new OtpService(new TestOtpCodeRepository(), customConfigService);
+        OtpService customOtpService = new OtpService(new TestOtpCodeRepository(), customConfigService,
+                new TestOtpOutboxRepository(), java.time.Duration.ofDays(7));
 
         // When
         OtpCode result = customOtpService.generateOtp(testUser, testRequest);
@@ -92,26 +101,144 @@ class OtpServiceTest {
         assertEquals(testUser.getId(), result.getUserId());
         assertEquals(testRequest.getOperationId(), result.getOperationId());
         assertNotNull(result.getExpiresAt());
+        assertEquals(testConfig.getVersion(), result.getConfigVersion());
+    }
+
+    @Test
+    void generateOtpsForDelivery_ShouldQueueOneCodePerRequest() {
+        // Given
+        User otherUser = new User("otheruser", "hashedpassword", UserRole.USER);
+        otherUser.setId(UUID.randomUUID());
+        OtpGenerateRequest otherRequest = new OtpGenerateRequest("other-operation", "SMS", "+10000000000");
+
+        // When
+        java.util.List<OtpCode> result = otpService.generateOtpsForDelivery(
+            java.util.List.of(testUser.getId(), otherUser.getId()), java.util.List.of(testRequest, otherRequest));
+
+        // Then
+        assertEquals(2, result.size());
+        assertEquals(testUser.getId(), result.get(0).getUserId());
+        assertEquals("test-operation", result.get(0).getOperationId());
+        assertEquals(otherUser.getId(), result.get(1).getUserId());
+        assertEquals("other-operation", result.get(1).getOperationId());
+        assertTrue(result.stream().allMatch(code -> code.getId() != null && code.getCode().matches("\\d{6}")));
+        assertEquals(2, outboxRepository.saved.size());
+        assertEquals(result.get(1).getId(), outboxRepository.saved.get(1).getOtpCodeId());
+        assertEquals(NotificationChannel.SMS, outboxRepository.saved.get(1).getChannel());
+        assertEquals("+10000000000", outboxRepository.saved.get(1).getDestination());
+    }
+
+    @Test
+    void generateOtpForDelivery_ShouldStoreCodeWithOutboxMessage() {
+        // When
+        OtpCode result = otpService.generateOtpForDelivery(testUser.getId(), testRequest, NotificationChannel.EMAIL);
+
+        // Then
+        assertNotNull(result.getId());
+        assertEquals(1, outboxRepository.saved.size());
+        OtpOutboxMessage message = outboxRepository.saved.get(0);
+        assertEquals(result.getId(), message.getOtpCodeId());
+        assertEquals(result.getCode(), message.getCode());
+        assertEquals(NotificationChannel.EMAIL, message.getChannel());
+        assertEquals("test@example.com", message.getDestination());
+        assertEquals(0, message.getAttempts());
+        assertTrue(message.getExpiresAt().isAfter(message.getCreatedAt()));
+    }
+
+    @Test
+    void generateOtpForDelivery_ShouldStoreFallbacksWithOutboxMessage() {
+        // Given
+        java.util.List<DeliveryTarget> fallbacks = java.util.List.of(new DeliveryTarget(NotificationChannel.TELEGRAM, "alice"));
+
+        // When
+        otpService.generateOtpForDelivery(testUser.getId(), testRequest, NotificationChannel.SMS,
+                fallbacks, java.time.Duration.ofSeconds(2));
+
+        // Then
+        OtpOutboxMessage message = outboxRepository.saved.get(0);
+        assertEquals(NotificationChannel.SMS, message.getChannel());
+        assertEquals(fallbacks, message.getFallbacks());
+        assertEquals(java.time.Duration.ofSeconds(2), message.getLatencyBudget());
+    }
+
+    @Test
+    void validateOtp_ShouldAcceptCodeOnlyOnce() {
+        // Given
+        OtpCode generated = otpService.generateOtp(testUser, testRequest);
+        OtpValidateRequest validateRequest = new OtpValidateRequest(generated.getCode(), "test-operation");
+
+        // When & Then
+        assertTrue(otpService.validateOtp(testUser, validateRequest));
+        assertFalse(otpService.validateOtp(testUser, validateRequest), "Used code should be rejected");
+    }
+
+    @Test
+    void validateOtp_ShouldAcceptCodeWithoutOperationForAnyOperation() {
+        // Given
+        OtpCode generated = otpService.generateOtp(testUser, new OtpGenerateRequest(null, "EMAIL", "test@example.com"));
+
+        // When & Then
+        assertTrue(otpService.validateOtp(testUser, new OtpValidateRequest(generated.getCode(), "other-operation")));
+    }
+
+    @Test
+    void validateOtp_ShouldRejectCodeOfAnotherOperation() {
+        // Given
+        OtpCode generated = otpService.generateOtp(testUser, testRequest);
+
+        // When & Then
+        assertFalse(otpService.validateOtp(testUser, new OtpValidateRequest(generated.getCode(), "other-operation")));
+    }
+
+    @Test
+    void validateOtp_ShouldRejectCodeOfAnotherUser() {
+        // Given
+        OtpCode generated = otpService.generateOtp(testUser, testRequest);
+        User otherUser = new User("otheruser", "hashedpassword", UserRole.USER);
+        otherUser.setId(UUID.randomUUID());
+
+        // When
+        boolean result = otpService.validateOtp(otherUser, new OtpValidateRequest(generated.getCode()));
+
+        // Then
+        assertFalse(result);
     }
 
     // Простые тестовые классы
     private static class TestOtpCodeRepository implements OtpCodeRepository {
+        private final java.util.List<OtpCode> codes = new java.util.ArrayList<>();
+
         @Override
         public OtpCode save(OtpCode otpCode) {
             if (otpCode.getId() == null) {
                 otpCode.setId(UUID.randomUUID());
+                codes.add(otpCode);
             }
             return otpCode;
         }
 
+        @Override
+        public java.util.Optional<OtpCode> consume(UUID userId, String code, String operationId,
+                                                   java.time.Instant now) {
+            for (OtpCode otpCode : codes) {
+                if (otpCode.getUserId().equals(userId) && otpCode.getCode().equals(code) && otpCode.isActive()
+                        && (operationId == null || otpCode.getOperationId() == null
+                            || operationId.equals(otpCode.getOperationId()))) {
+                    otpCode.markAsUsed();
+                    return java.util.Optional.of(otpCode);
+                }
+            }
+            return java.util.Optional.empty();
+        }
+
         @Override
         public java.util.Optional<OtpCode> findByCode(String code) {
             return java.util.Optional.empty();
         }
 
         @Override
-        public java.util.List<OtpCode> findExpiredCodes() {
-            return java.util.Collections.emptyList();
+        public long expireBefore(java.time.Instant cutoff, java.time.Instant createdAfter, int batchSize) {
+            return 0;
         }
 
         @Override
@@ -139,6 +266,11 @@ class OtpServiceTest {
             return java.util.Collections.emptyList();
         }
 
+        @Override
+        public java.util.List<OtpCode> findAll(com.example.totpsender.repository.KeysetCursor after, int limit) {
+            return java.util.Collections.emptyList();
+        }
+
         @Override
         public void deleteById(UUID id) {
             // No implementation needed for this test
@@ -150,6 +282,54 @@ class OtpServiceTest {
         }
     }
 
+    private static class TestOtpOutboxRepository implements OtpOutboxRepository {
+        private final java.util.List<OtpOutboxMessage> saved = new java.util.ArrayList<>();
+
+        @Override
+        public OtpCode saveWithCode(OtpCode otpCode, OtpOutboxMessage message) {
+            saved.add(message);
+            return otpCode;
+        }
+
+        @Override
+        public java.util.List<OtpCode> saveAllWithCodes(java.util.List<OtpCode> otpCodes,
+                                                        java.util.List<OtpOutboxMessage> messages) {
+            saved.addAll(messages);
+            return otpCodes;
+        }
+
+        @Override
+        public java.util.List<OtpOutboxMessage> claim(int limit, java.time.Duration lease, java.time.Instant now) {
+            return java.util.Collections.emptyList();
+        }
+
+        @Override
+        public boolean delete(UUID id, int attempts, UUID otpCodeId, java.time.Instant otpCodeCreatedAt,
+                              NotificationChannel deliveredVia) {
+            return false;
+        }
+
+        @Override
+        public boolean retryAt(UUID id, int attempts, java.time.Instant availableAt, String error) {
+            return false;
+        }
+
+        @Override
+        public boolean release(UUID id, int attempts, java.time.Instant availableAt, String error) {
+            return false;
+        }
+
+        @Override
+        public boolean markFailed(UUID id, int attempts, String error) {
+            return false;
+        }
+
+        @Override
+        public long purgeExpired(java.time.Instant expiredBefore, int batchSize) {
+            return 0;
+        }
+    }
+
     private static class TestOtpConfigService extends OtpConfigService {
         private final OtpConfig config;
 
@@ -0,0 +1,68 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.example.totpsender.util.Conditions.waitUntil;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    private PasswordHasher passwordHasher;
+
+    @AfterEach
+    void tearDown() {
+        passwordHasher.shutdown();
+    }
+
+    @Test
+    void encode_ShouldProduceHashAcceptedByMatches() {
+        passwordHasher = new PasswordHasher(2, 4, 5000, 4, false, 100, 4, 4, new SimpleMeterRegistry());
+
+        String hash = passwordHasher.encode("secret");
+
+        assertTrue(passwordHasher.matches("secret", hash));
+        assertFalse(passwordHasher.matches("other", hash));
+    }
+
+    @Test
+    void encode_ShouldFailFastWhenPoolAndQueueAreFull() throws Exception {
+        passwordHasher = new PasswordHasher(1, 1, 30_000, 14, false, 100, 4, 14, new SimpleMeterRegistry());
+
+        // One hash running, one queued
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> passwordHasher.encode("first"));
+        waitUntil(() -> passwordHasher.getQueueSize() == 0 && !running.isDone());
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> passwordHasher.encode("second"));
+        waitUntil(() -> passwordHasher.getQueueSize() == 1);
+
+        long startedAt = System.nanoTime();
+        assertThrows(ServiceOverloadedException.class, () -> passwordHasher.encode("third"));
+        assertTrue(System.nanoTime() - startedAt < 100_000_000L, "Rejection should not wait for a thread");
+
+        running.cancel(true);
+        queued.cancel(true);
+    }
+
+    @Test
+    void adaptiveCost_ShouldCalibrateToTheHighestCostWithinTarget() {
+        passwordHasher = new PasswordHasher(1, 4, 5000, 4, true, 60_000, 4, 6, new SimpleMeterRegistry());
+
+        assertEquals(6, passwordHasher.getCost());
+    }
+
+    @Test
+    void adaptiveCost_ShouldNotChangeUnderLoad() {
+        // No hash fits in the target, so calibration settles on min_cost and stays there
+        passwordHasher = new PasswordHasher(1, 4, 5000, 10, true, 0, 4, 6, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 20; i++) {
+            passwordHasher.encode("secret");
+        }
+
+        assertEquals(4, passwordHasher.getCost());
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.example.totpsender.exception.NotificationTimeoutException;
+import com.example.totpsender.exception.RecipientRejectedException;
+import com.example.totpsender.model.NotificationChannel;
+import com.example.totpsender.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientNotificationServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ResilientNotificationService resilient(NotificationService delegate, int maxAttempts,
+                                                   int failureThreshold, long openMillis) {
+        return new ResilientNotificationService(delegate, NotificationChannel.SMS, maxAttempts, 1, 5,
+                failureThreshold, openMillis, meterRegistry);
+    }
+
+    @Test
+    void sendCode_ShouldRetryTransientFailures() {
+        FlakyService sms = new FlakyService(2);
+        ResilientNotificationService service = resilient(sms, 3, 10, 60_000);
+
+        service.sendCode("+10000000000", "123456");
+
+        assertEquals(3, sms.calls);
+        assertEquals(2.0, meterRegistry.get("notification.retries").tag("channel", "SMS").counter().count());
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitState());
+    }
+
+    @Test
+    void sendCode_ShouldGiveUpAfterMaxAttempts() {
+        FlakyService sms = new FlakyService(Integer.MAX_VALUE);
+        ResilientNotificationService service = resilient(sms, 3, 10, 60_000);
+
+        assertThrows(NotificationException.class, () -> service.sendCode("+10000000000", "123456"));
+        assertEquals(3, sms.calls);
+    }
+
+    @Test
+    void sendCode_ShouldShedLoadWhileCircuitIsOpen() {
+        FlakyService sms = new FlakyService(Integer.MAX_VALUE);
+        ResilientNotificationService service = resilient(sms, 3, 2, 60_000);
+
+        // The circuit opens on the second failure and stops the retries
+        assertThrows(NotificationException.class, () -> service.sendCode("+10000000000", "1"));
+        assertEquals(2, sms.calls);
+        assertEquals(CircuitBreaker.State.OPEN, service.getCircuitState());
+        assertFalse(service.isAvailable());
+
+        NotificationException e = assertThrows(NotificationException.class,
+                () -> service.sendCode("+10000000000", "2"));
+        assertTrue(e.getMessage().contains("circuit is open"));
+        assertEquals(2, sms.calls, "An open circuit does not call the provider");
+        assertEquals(1.0, meterRegistry.get("notification.circuit.rejected").tag("channel", "SMS").counter().count());
+        assertEquals(2.0, meterRegistry.get("notification.circuit.state").tag("channel", "SMS").gauge().value());
+        assertEquals(1.0, meterRegistry.get("notification.circuit.transitions")
+                .tags("channel", "SMS", "from", "CLOSED", "to", "OPEN").counter().count());
+    }
+
+    @Test
+    void sendCode_ShouldCloseCircuitAfterSuccessfulTrial() throws InterruptedException {
+        FlakyService sms = new FlakyService(1);
+        ResilientNotificationService service = resilient(sms, 1, 1, 50);
+        assertThrows(NotificationException.class, () -> service.sendCode("+10000000000", "1"));
+        assertFalse(service.isAvailable());
+
+        Thread.sleep(80);
+        assertTrue(service.isAvailable());
+        service.sendCode("+10000000000", "2");
+
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitState());
+    }
+
+    @Test
+    void sendCode_ShouldNotCountCallerErrorsAgainstTheChannel() {
+        NotificationService rejecting = new FlakyService(0) {
+            @Override
+            public void sendCode(String destination, String code) {
+                throw new IllegalArgumentException("Bad phone number");
+            }
+        };
+        ResilientNotificationService service = resilient(rejecting, 3, 1, 60_000);
+
+        assertThrows(IllegalArgumentException.class, () -> service.sendCode("nope", "1"));
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitState());
+    }
+
+    @Test
+    void sendCode_ShouldNotRetryLocalRejections() {
+        FlakyService saturated = new FlakyService(0) {
+            @Override
+            public void sendCode(String destination, String code) {
+                super.sendCode(destination, code);
+                throw new NotificationRejectedException("Notification channel SMS is saturated");
+            }
+        };
+        ResilientNotificationService service = resilient(saturated, 3, 1, 60_000);
+
+        assertThrows(NotificationRejectedException.class, () -> service.sendCode("+10000000000", "1"));
+        assertEquals(1, saturated.calls);
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitState());
+    }
+
+    @Test
+    void sendCode_ShouldNotRetryOrCountRejectedRecipients() {
+        FlakyService rejecting = new FlakyService(0) {
+            @Override
+            public void sendCode(String destination, String code) {
+                super.sendCode(destination, code);
+                throw new RecipientRejectedException("Invalid destination address");
+            }
+        };
+        ResilientNotificationService service = resilient(rejecting, 3, 2, 60_000);
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(RecipientRejectedException.class, () -> service.sendCode("nope", "1"));
+        }
+        assertEquals(5, rejecting.calls);
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitState());
+        assertTrue(service.isAvailable());
+    }
+
+    @Test
+    void sendCode_ShouldNotRetryTimedOutSends() {
+        FlakyService hanging = new FlakyService(0) {
+            @Override
+            public void sendCode(String destination, String code) {
+                super.sendCode(destination, code);
+                throw new NotificationTimeoutException("Notification channel SMS timed out after 25000 ms");
+            }
+        };
+        ResilientNotificationService service = resilient(hanging, 3, 2, 60_000);
+
+        assertThrows(NotificationTimeoutException.class, () -> service.sendCode("+10000000000", "1"));
+        assertEquals(1, hanging.calls, "The abandoned send may still land");
+        assertThrows(NotificationTimeoutException.class, () -> service.sendCode("+10000000000", "2"));
+        assertEquals(CircuitBreaker.State.OPEN, service.getCircuitState(), "Timeouts still count against the channel");
+    }
+
+    @Test
+    void backoff_ShouldStayWithinTheExponentialCeiling() {
+        ResilientNotificationService service = new ResilientNotificationService(new FlakyService(0),
+                NotificationChannel.SMS, 5, 100, 1000, 5, 1000, meterRegistry);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(service.backoff(1) <= 100);
+            assertTrue(service.backoff(3) <= 400);
+            assertTrue(service.backoff(10) <= 1000);
+        }
+    }
+
+    // Fails the first `failures` sends
+    private static class FlakyService implements NotificationService {
+        private final int failures;
+        private int calls;
+
+        private FlakyService(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public void sendCode(String destination, String code) {
+            calls++;
+            if (calls <= failures) {
+                throw new NotificationException("SMSC unavailable");
+            }
+        }
+
+        @Override
+        public String getChannelName() {
+            return "SMS";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
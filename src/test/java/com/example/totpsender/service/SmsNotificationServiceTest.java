@@ -0,0 +1,266 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationTimeoutException;
+import org.jsmpp.bean.*;
+import org.jsmpp.extra.ProcessRequestException;
+import org.jsmpp.session.*;
+import org.jsmpp.util.RandomMessageIDGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.totpsender.util.Conditions.waitUntil;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmsNotificationServiceTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsNotificationServiceTest.class);
+
+    private SmscStub smsc;
+    private SmsNotificationService smsService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smsc = new SmscStub();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (smsService != null) {
+            smsService.close();
+        }
+        smsc.close();
+    }
+
+    @Test
+    void sendCode_ShouldReuseBoundSessions() throws Exception {
+        smsService = new SmsNotificationService(config(2, 4));
+        waitUntil(() -> smsService.getBoundSessions() == 2);
+
+        for (int i = 0; i < 20; i++) {
+            smsService.sendCode("+10000000" + i, "123456");
+        }
+
+        assertEquals(20, smsc.submits.get());
+        assertEquals(2, smsc.binds.get(), "Sessions should stay bound between messages");
+        assertEquals("Your code: 123456", smsc.lastText);
+    }
+
+    @Test
+    void sendCodeAsync_ShouldKeepOutstandingSubmitsWithinWindow() throws Exception {
+        smsc.responseDelayMillis = 50;
+        smsService = new SmsNotificationService(config(2, 3));
+        waitUntil(() -> smsService.getBoundSessions() == 2);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            results.add(smsService.sendCodeAsync("+10000000" + i, "123456"));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+
+        assertEquals(30, smsc.submits.get());
+        assertTrue(smsc.maxOutstanding.get() <= 6, "At most 2 sessions x window 3 in flight, was " + smsc.maxOutstanding.get());
+        assertTrue(smsc.maxOutstanding.get() > 1, "Submits should be pipelined");
+    }
+
+    @Test
+    void sendCode_ShouldCountTheWindowWaitAgainstTheSubmitTimeout() throws Exception {
+        smsc.responseDelayMillis = 400;
+        Properties config = config(1, 1);
+        config.setProperty("smpp.submit.timeout_millis", "600");
+        smsService = new SmsNotificationService(config);
+        waitUntil(() -> smsService.getBoundSessions() == 1);
+        CompletableFuture<String> first = smsService.sendCodeAsync("+100000000", "111111");
+
+        // The slot frees up after ~400 ms and the submit needs another ~400 ms: past the 600 ms budget
+        assertThrows(NotificationTimeoutException.class, () -> smsService.sendCode("+100000001", "222222"));
+        first.join();
+    }
+
+    @Test
+    void sendCode_ShouldRebindAfterSessionIsClosed() throws Exception {
+        smsService = new SmsNotificationService(config(1, 2));
+        waitUntil(() -> smsService.getBoundSessions() == 1);
+        smsService.sendCode("+100000000", "111111");
+
+        smsc.closeSessions();
+        waitUntil(() -> smsc.binds.get() == 2 && smsService.getBoundSessions() == 1);
+
+        smsService.sendCode("+100000001", "222222");
+        assertEquals(2, smsc.submits.get());
+    }
+
+    @Test
+    void sendCode_ShouldFailWhenNoSessionIsBound() throws IOException {
+        int unusedPort = freePort();
+        Properties config = config(1, 1);
+        config.setProperty("smpp.port", String.valueOf(unusedPort));
+        config.setProperty("smpp.submit.timeout_millis", "200");
+        smsService = new SmsNotificationService(config);
+
+        NotificationException e = assertThrows(NotificationException.class,
+                () -> smsService.sendCode("+100000000", "123456"));
+        assertEquals("No bound SMPP session", e.getMessage());
+    }
+
+    @Test
+    void isAvailable_ShouldFollowBoundSessions() throws Exception {
+        smsService = new SmsNotificationService(config(1, 1));
+        waitUntil(() -> smsService.getBoundSessions() == 1);
+        assertTrue(smsService.isAvailable());
+
+        smsc.close();
+        waitUntil(() -> smsService.getBoundSessions() == 0);
+        assertFalse(smsService.isAvailable());
+    }
+
+    private Properties config(int poolSize, int window) {
+        Properties config = new Properties();
+        config.setProperty("smpp.host", "localhost");
+        config.setProperty("smpp.port", String.valueOf(smsc.port));
+        config.setProperty("smpp.system_id", "test");
+        config.setProperty("smpp.password", "secret");
+        config.setProperty("smpp.system_type", "OTP");
+        config.setProperty("smpp.source_addr", "OTPService");
+        config.setProperty("smpp.pool.size", String.valueOf(poolSize));
+        config.setProperty("smpp.pool.window", String.valueOf(window));
+        config.setProperty("smpp.reconnect.delay_millis", "100");
+        config.setProperty("smpp.submit.timeout_millis", "5000");
+        return config;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // Minimal SMSC: accepts every bind and answers submit_sm with a random message id
+    private static class SmscStub implements ServerMessageReceiverListener {
+        private final int port;
+        private final SMPPServerSessionListener listener;
+        private final Thread acceptor;
+        private final List<SMPPServerSession> sessions = new CopyOnWriteArrayList<>();
+        private final RandomMessageIDGenerator messageIds = new RandomMessageIDGenerator();
+        private final AtomicInteger binds = new AtomicInteger();
+        private final AtomicInteger submits = new AtomicInteger();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger maxOutstanding = new AtomicInteger();
+        private volatile long responseDelayMillis;
+        private volatile String lastText;
+        private volatile boolean running = true;
+
+        private SmscStub() throws IOException {
+            this.port = freePort();
+            this.listener = new SMPPServerSessionListener(port);
+            listener.setTimeout(200);
+            listener.setPduProcessorDegree(16);
+            listener.setMessageReceiverListener(this);
+            this.acceptor = new Thread(this::acceptLoop, "smsc-stub");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private void acceptLoop() {
+            while (running) {
+                try {
+                    SMPPServerSession session = listener.accept();
+                    BindRequest bindRequest = session.waitForBind(5000);
+                    bindRequest.accept("stub");
+                    sessions.add(session);
+                    binds.incrementAndGet();
+                } catch (SocketTimeoutException e) {
+                    // Check running again
+                } catch (Exception e) {
+                    if (running) {
+                        logger.warn("SMSC stub failed to accept a bind: {}", e.getMessage(), e);
+                    }
+                }
+            }
+        }
+
+        private void closeSessions() {
+            for (SMPPServerSession session : sessions) {
+                session.close();
+            }
+            sessions.clear();
+        }
+
+        private void close() throws IOException {
+            running = false;
+            closeSessions();
+            listener.close();
+        }
+
+        @Override
+        public SubmitSmResult onAcceptSubmitSm(SubmitSm submitSm, SMPPServerSession source) throws ProcessRequestException {
+            int current = outstanding.incrementAndGet();
+            maxOutstanding.accumulateAndGet(current, Math::max);
+            try {
+                if (responseDelayMillis > 0) {
+                    Thread.sleep(responseDelayMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                outstanding.decrementAndGet();
+            }
+            lastText = new String(submitSm.getShortMessage());
+            submits.incrementAndGet();
+            return new SubmitSmResult(messageIds.newMessageId(), new OptionalParameter[0]);
+        }
+
+        @Override
+        public SubmitMultiResult onAcceptSubmitMulti(SubmitMulti submitMulti, SMPPServerSession source) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public QuerySmResult onAcceptQuerySm(QuerySm querySm, SMPPServerSession source) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onAcceptReplaceSm(ReplaceSm replaceSm, SMPPServerSession source) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onAcceptCancelSm(CancelSm cancelSm, SMPPServerSession source) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BroadcastSmResult onAcceptBroadcastSm(BroadcastSm broadcastSm, SMPPServerSession source) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onAcceptCancelBroadcastSm(CancelBroadcastSm cancelBroadcastSm, SMPPServerSession source) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public QueryBroadcastSmResult onAcceptQueryBroadcastSm(QueryBroadcastSm queryBroadcastSm, SMPPServerSession source) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DataSmResult onAcceptDataSm(DataSm dataSm, Session source) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
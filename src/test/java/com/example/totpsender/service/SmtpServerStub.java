@@ -0,0 +1,141 @@
+package com.example.totpsender.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-process SMTP server stand-in: plain SMTP without TLS or AUTH, accepts every message except
+// recipients starting with "rejected". handshakeDelayMillis stands in for connect/STARTTLS/AUTH cost
+class SmtpServerStub implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmtpServerStub.class);
+
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger messages = new AtomicInteger();
+    final AtomicInteger noops = new AtomicInteger();
+    volatile long handshakeDelayMillis;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "smtp-stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+
+    SmtpServerStub() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::acceptLoop);
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    Properties emailConfig() {
+        Properties config = new Properties();
+        config.setProperty("email.username", "user");
+        config.setProperty("email.password", "secret");
+        config.setProperty("email.from", "otp@example.com");
+        config.setProperty("mail.smtp.host", "localhost");
+        config.setProperty("mail.smtp.port", String.valueOf(port()));
+        config.setProperty("mail.smtp.auth", "false");
+        config.setProperty("mail.smtp.connectiontimeout", "5000");
+        config.setProperty("mail.smtp.timeout", "5000");
+        return config;
+    }
+
+    // Drops every open connection without a reply, like a server-side idle timeout
+    void dropConnections() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+        executor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                clients.add(client);
+                connections.incrementAndGet();
+                executor.execute(() -> serve(client));
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (client) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = client.getOutputStream();
+            if (handshakeDelayMillis > 0) {
+                Thread.sleep(handshakeDelayMillis);
+            }
+            reply(out, "220 localhost ESMTP stub");
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                switch (command) {
+                    case "EHLO", "HELO" -> reply(out, "250 localhost");
+                    case "MAIL", "RSET" -> reply(out, "250 OK");
+                    case "NOOP" -> {
+                        noops.incrementAndGet();
+                        reply(out, "250 OK");
+                    }
+                    case "RCPT" -> reply(out, line.contains("<rejected") ? "550 No such user" : "250 OK");
+                    case "DATA" -> {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            // Discard the message body
+                        }
+                        messages.incrementAndGet();
+                        reply(out, "250 OK queued");
+                    }
+                    case "QUIT" -> {
+                        reply(out, "221 Bye");
+                        return;
+                    }
+                    default -> reply(out, "500 Unknown command");
+                }
+            }
+        } catch (SocketException e) {
+            // Dropped by dropConnections() or the client
+        } catch (IOException e) {
+            logger.warn("SMTP stub client connection failed: {}", e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    private static void reply(OutputStream out, String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
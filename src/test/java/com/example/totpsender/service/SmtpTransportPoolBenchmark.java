@@ -0,0 +1,86 @@
+package com.example.totpsender.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// Per-email latency against a local SMTP stand-in: a new connection per message (Transport.send)
+// vs. a pooled connection. handshakeDelayMillis models the connect/STARTTLS/AUTH round trips.
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.totpsender.service.SmtpTransportPoolBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmtpTransportPoolBenchmark {
+
+    @Param({"0", "5"})
+    public long handshakeDelayMillis;
+
+    private SmtpServerStub smtpServer;
+    private Session session;
+    private SmtpTransportPool pool;
+
+    @Setup
+    public void setUp() throws IOException {
+        smtpServer = new SmtpServerStub();
+        smtpServer.handshakeDelayMillis = handshakeDelayMillis;
+        Properties config = smtpServer.emailConfig();
+        session = Session.getInstance(config);
+        pool = new SmtpTransportPool(session, "user", "secret", 1, 1000, 5000, 10000);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.close();
+        smtpServer.close();
+    }
+
+    @Benchmark
+    public void connectionPerMessage() throws MessagingException {
+        Transport.send(message());
+    }
+
+    @Benchmark
+    public void pooledConnection() throws MessagingException {
+        pool.send(message());
+    }
+
+    private Message message() throws MessagingException {
+        Message message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("otp@example.com"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("user@example.com"));
+        message.setSubject("Your OTP Code");
+        message.setText("Your verification code is: 123456");
+        return message;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SmtpTransportPoolBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
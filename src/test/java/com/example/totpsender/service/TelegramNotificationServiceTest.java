@@ -1,15 +1,28 @@
 package com.example.totpsender.service;
 
 import com.example.totpsender.exception.NotificationException;
+import com.example.totpsender.exception.NotificationRejectedException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,6 +33,8 @@ class TelegramNotificationServiceTest {
 
     private TelegramNotificationService telegramService;
     private Path telegramPropertiesPath;
+    private TelegramApiStub telegramApi;
+    private TelegramNotificationService httpService;
 
     @BeforeEach
     void setUp() throws IOException {
@@ -39,6 +54,58 @@ class TelegramNotificationServiceTest {
         telegramService = new TestTelegramNotificationService();
     }
 
+    @AfterEach
+    void tearDown() {
+        if (httpService != null) {
+            httpService.close();
+        }
+        if (telegramApi != null) {
+            telegramApi.stop();
+        }
+    }
+
+    @Test
+    void sendCode_ShouldReuseOneConnectionForSequentialMessages() throws IOException {
+        telegramApi = new TelegramApiStub();
+        httpService = new TelegramNotificationService(stubConfig(1000, 10));
+
+        for (int i = 0; i < 5; i++) {
+            httpService.sendCode("TestUser", "12345" + i);
+        }
+
+        assertEquals(5, telegramApi.requests.get());
+        assertEquals(1, telegramApi.clientPorts.size(), "Keep-alive connection should be reused");
+    }
+
+    @Test
+    void sendCode_ShouldRefuseSendsUntilRetryAfterPassesOn429() throws Exception {
+        telegramApi = new TelegramApiStub();
+        telegramApi.responses.add(TelegramApiStub.TOO_MANY_REQUESTS_1S);
+        httpService = new TelegramNotificationService(stubConfig(1000, 10));
+
+        assertThrows(NotificationRejectedException.class, () -> httpService.sendCode("TestUser", "123456"));
+        assertThrows(NotificationRejectedException.class, () -> httpService.sendCode("TestUser", "123456"));
+        assertEquals(1, telegramApi.requests.get(), "Sends within retry_after should not reach Telegram");
+
+        Thread.sleep(1100);
+        assertDoesNotThrow(() -> httpService.sendCode("TestUser", "123456"));
+        assertEquals(2, telegramApi.requests.get());
+    }
+
+    @Test
+    void sendCode_ShouldRefuseInsteadOfWaitingForTheRateLimit() throws IOException {
+        telegramApi = new TelegramApiStub();
+        httpService = new TelegramNotificationService(stubConfig(1, 2));
+
+        httpService.sendCode("TestUser", "123456");
+        httpService.sendCode("TestUser", "123456");
+        long startedAt = System.nanoTime();
+        assertThrows(NotificationRejectedException.class, () -> httpService.sendCode("TestUser", "123456"));
+
+        assertTrue(System.nanoTime() - startedAt < 500_000_000L, "Refusal should not wait for the next token");
+        assertEquals(2, telegramApi.requests.get());
+    }
+
     @Test
     void sendCode_ShouldSendMessageSuccessfully() {
         // Given
@@ -154,4 +221,66 @@ class TelegramNotificationServiceTest {
             return true;
         }
     }
+
+    private Properties stubConfig(double perSecond, int burst) {
+        Properties config = new Properties();
+        config.setProperty("telegram.bot.token", "test_bot_token");
+        config.setProperty("telegram.chat.id", "test_chat_id");
+        config.setProperty("telegram.api.url", "http://localhost:" + telegramApi.port() + "/bot");
+        config.setProperty("telegram.rate.per_second", String.valueOf(perSecond));
+        config.setProperty("telegram.rate.burst", String.valueOf(burst));
+        return config;
+    }
+
+    // Local Bot API stub: answers queued responses first, then 200; can add latency per request
+    private static class TelegramApiStub {
+        private static final String OK = "200 {\"ok\":true,\"result\":{}}";
+        private static final String TOO_MANY_REQUESTS_1S =
+                "429 {\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 1\",\"parameters\":{\"retry_after\":1}}";
+
+        private final HttpServer server;
+        private final Queue<String> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+        private volatile long latencyMillis;
+
+        private TelegramApiStub() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/bottest_bot_token/sendMessage", this::handle);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+        }
+
+        private int port() {
+            return server.getAddress().getPort();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            String response = responses.poll();
+            if (response == null) {
+                response = OK;
+            }
+            int status = Integer.parseInt(response.substring(0, 3));
+            byte[] body = response.substring(4).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+
+        private void stop() {
+            server.stop(0);
+        }
+    }
 }
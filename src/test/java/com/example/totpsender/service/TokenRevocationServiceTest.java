@@ -0,0 +1,122 @@
+package com.example.totpsender.service;
+
+import com.example.totpsender.model.TokenRevocation;
+import com.example.totpsender.model.UserPrincipal;
+import com.example.totpsender.repository.TokenRevocationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenRevocationServiceTest {
+
+    private TestTokenRevocationRepository repository;
+    private TokenRevocationService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = new TestTokenRevocationRepository();
+        service = new TokenRevocationService(repository, Duration.ofHours(24), 4, 0.01, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void isRevoked_ShouldRejectTokensIssuedBeforeRevocation() {
+        Instant issuedBefore = Instant.now().minusSeconds(60);
+
+        service.revoke("alice");
+
+        assertTrue(service.isRevoked(principal("alice", issuedBefore)));
+        assertTrue(service.isRevoked(principal("alice", null)), "Tokens without iat cannot be told apart");
+        assertFalse(service.isRevoked(principal("alice", Instant.now().plusSeconds(60))),
+                "A token issued after the revocation stays valid");
+        assertFalse(service.isRevoked(principal("bob", issuedBefore)));
+    }
+
+    @Test
+    void isRevoked_ShouldLoadOnceAndAnswerFromMemory() {
+        Instant revokedAt = Instant.now();
+        repository.rows.put("alice", new TokenRevocation("alice", revokedAt, revokedAt.plusSeconds(3600)));
+
+        assertTrue(service.isRevoked(principal("alice", revokedAt.minusSeconds(1))));
+        for (int i = 0; i < 100; i++) {
+            service.isRevoked(principal("user" + i, revokedAt.minusSeconds(1)));
+        }
+
+        assertEquals(1, repository.activeReads);
+        assertEquals(0, repository.subjectReads);
+    }
+
+    @Test
+    void onRevoked_ShouldApplyRevocationFromOtherNode() {
+        Instant issuedAt = Instant.now().minusSeconds(60);
+        assertFalse(service.isRevoked(principal("alice", issuedAt)));
+
+        Instant revokedAt = Instant.now();
+        repository.rows.put("alice", new TokenRevocation("alice", revokedAt, revokedAt.plusSeconds(3600)));
+        service.onRevoked("alice");
+
+        assertTrue(service.isRevoked(principal("alice", issuedAt)));
+    }
+
+    @Test
+    void revoke_ShouldRebuildFilterPastItsCapacity() {
+        Instant issuedAt = Instant.now().minusSeconds(60);
+        service.reload();
+
+        for (int i = 0; i < 20; i++) {
+            service.revoke("user" + i);
+        }
+
+        assertEquals(20, service.size());
+        for (int i = 0; i < 20; i++) {
+            assertTrue(service.isRevoked(principal("user" + i, issuedAt)));
+        }
+    }
+
+    private static UserPrincipal principal(String username, Instant issuedAt) {
+        return new UserPrincipal(username, "USER", null, issuedAt);
+    }
+
+    private static class TestTokenRevocationRepository implements TokenRevocationRepository {
+        private final Map<String, TokenRevocation> rows = new HashMap<>();
+        private int activeReads;
+        private int subjectReads;
+
+        @Override
+        public void save(TokenRevocation revocation) {
+            rows.put(revocation.getSubject(), revocation);
+        }
+
+        @Override
+        public Optional<TokenRevocation> findBySubject(String subject) {
+            subjectReads++;
+            return Optional.ofNullable(rows.get(subject));
+        }
+
+        @Override
+        public List<TokenRevocation> findActive(Instant now) {
+            activeReads++;
+            List<TokenRevocation> active = new ArrayList<>();
+            for (TokenRevocation revocation : rows.values()) {
+                if (revocation.getExpiresAt().isAfter(now)) {
+                    active.add(revocation);
+                }
+            }
+            return active;
+        }
+
+        @Override
+        public long deleteExpired(Instant now) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.totpsender.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Simulated time, shared by the simulation and the limit under test
+    private long clock;
+
+    @Test
+    void tryAcquire_ShouldRejectCallsOverTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 0.9, 60_000, 5);
+
+        AdaptiveConcurrencyLimit.Permit first = limit.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(limit.tryAcquire());
+        assertNull(limit.tryAcquire());
+
+        first.release();
+        assertEquals(1, limit.getInFlight());
+        assertNotNull(limit.tryAcquire());
+    }
+
+    @Test
+    void onDropped_ShouldCutTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 1, 100, 0.5, 60_000, 5);
+
+        limit.tryAcquire().onDropped();
+
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    void limit_ShouldSettleNearProviderCapacity() {
+        // 100 callers against a provider that handles 10 at a time; the rest queue at the provider
+        Simulation simulation = new Simulation(limit(50, 1, 200), 100, 10, 10 * MS);
+
+        simulation.runUntil(20_000 * MS);
+
+        assertTrue(simulation.limit.getLimit() >= 10 && simulation.limit.getLimit() <= 25,
+                "Limit should track capacity of 10, was " + simulation.limit.getLimit());
+        assertTrue(simulation.meanLatencySinceReset() < 2.0 * 10 * MS,
+                "Sends should not queue at the provider, mean was " + simulation.meanLatencySinceReset() / MS + " ms");
+        assertTrue(simulation.throughputSinceReset() > 0.8 * 1000,
+                "Provider should stay busy, throughput was " + simulation.throughputSinceReset());
+    }
+
+    @Test
+    void limit_ShouldGrowWhenTheProviderHasHeadroom() {
+        Simulation simulation = new Simulation(limit(4, 1, 200), 60, 100, 10 * MS);
+
+        simulation.runUntil(2_000 * MS);
+        simulation.runUntil(7_000 * MS);
+
+        assertTrue(simulation.limit.getLimit() >= 60, "Limit should open up for all callers, was " + simulation.limit.getLimit());
+        assertTrue(simulation.throughputSinceReset() > 0.85 * 6000, "Throughput was " + simulation.throughputSinceReset());
+    }
+
+    @Test
+    void limit_ShouldFollowACapacityDrop() {
+        Simulation simulation = new Simulation(limit(20, 1, 200), 100, 40, 10 * MS);
+        simulation.runUntil(10_000 * MS);
+        int before = simulation.limit.getLimit();
+
+        // The provider degrades to a quarter of its capacity
+        simulation.capacity = 10;
+        simulation.runUntil(12_000 * MS);
+
+        assertTrue(before >= 40, "Limit before the drop was " + before);
+        assertTrue(simulation.limit.getLimit() <= 25, "Limit after the drop was " + simulation.limit.getLimit());
+        simulation.resetStats();
+        simulation.runUntil(20_000 * MS);
+        assertTrue(simulation.meanLatencySinceReset() < 2.0 * 10 * MS,
+                "Mean latency after the drop was " + simulation.meanLatencySinceReset() / MS + " ms");
+    }
+
+    @Test
+    void limit_ShouldRecoverAfterALatencyStep() {
+        Simulation simulation = new Simulation(limit(20, 1, 200), 100, 10, 10 * MS);
+        simulation.runUntil(10_000 * MS);
+
+        // Every call now takes four times as long, but the provider still handles 10 at a time
+        simulation.serviceTime = 40 * MS;
+        simulation.runUntil(20_000 * MS);
+        simulation.runUntil(30_000 * MS);
+
+        long noLoadRtt = simulation.limit.getNoLoadRttNanos();
+        assertTrue(noLoadRtt >= 40 * MS && noLoadRtt < 45 * MS,
+                "The probe should re-measure the idle round trip, was " + noLoadRtt / MS + " ms");
+        assertTrue(simulation.limit.getLimit() >= 10 && simulation.limit.getLimit() <= 25,
+                "Limit should return to the capacity of 10, was " + simulation.limit.getLimit());
+        assertTrue(simulation.throughputSinceReset() > 0.8 * 250,
+                "Throughput was " + simulation.throughputSinceReset());
+    }
+
+    // Probes every 5 s of simulated time
+    private AdaptiveConcurrencyLimit limit(int initial, int min, int max) {
+        return new AdaptiveConcurrencyLimit(initial, min, max, 0.9, 5000, 10, () -> clock);
+    }
+
+    // Discrete-event model of a provider with `capacity` parallel workers and a FIFO queue in front of
+    // them. Each caller sends in a loop; a rejected caller waits a quarter of the service time and tries
+    // again. Calls that wait longer than ten service times are dropped as timeouts
+    private class Simulation {
+        private final AdaptiveConcurrencyLimit limit;
+        private final PriorityQueue<Event> events = new PriorityQueue<>();
+        private final Random random = new Random(42);
+        private final PriorityQueue<Long> workersFreeAt = new PriorityQueue<>();
+        private int capacity;
+        private long serviceTime;
+        private long now;
+        private long statsStartedAt;
+        private long completed;
+        private long totalLatency;
+
+        private Simulation(AdaptiveConcurrencyLimit limit, int callers, int capacity, long serviceTime) {
+            this.limit = limit;
+            this.capacity = capacity;
+            this.serviceTime = serviceTime;
+            for (int i = 0; i < callers; i++) {
+                events.add(new Event(random.nextInt((int) MS), null, 0));
+            }
+        }
+
+        private void runUntil(long endTime) {
+            resetStats();
+            while (!events.isEmpty() && events.peek().time <= endTime) {
+                Event event = events.poll();
+                now = event.time;
+                clock = now;
+                if (event.permit == null) {
+                    send();
+                } else {
+                    complete(event);
+                }
+            }
+            now = endTime;
+            clock = now;
+        }
+
+        private void send() {
+            AdaptiveConcurrencyLimit.Permit permit = limit.tryAcquire();
+            if (permit == null) {
+                events.add(new Event(now + serviceTime / 4, null, 0));
+                return;
+            }
+            // Workers added or removed since the last call follow the current capacity
+            while (workersFreeAt.size() < capacity) {
+                workersFreeAt.add(now);
+            }
+            while (workersFreeAt.size() > capacity) {
+                workersFreeAt.poll();
+            }
+            long start = Math.max(now, workersFreeAt.poll());
+            long jitter = (long) (serviceTime * 0.1 * random.nextDouble());
+            long finish = start + serviceTime + jitter;
+            workersFreeAt.add(finish);
+
+            long latency = finish - now;
+            long timeout = 10 * serviceTime;
+            events.add(latency > timeout
+                    ? new Event(now + timeout, permit, -1)
+                    : new Event(finish, permit, latency));
+        }
+
+        private void complete(Event event) {
+            if (event.latency < 0) {
+                event.permit.onDropped();
+            } else {
+                event.permit.onSuccess(event.latency);
+                completed++;
+                totalLatency += event.latency;
+            }
+            send();
+        }
+
+        private void resetStats() {
+            statsStartedAt = now;
+            completed = 0;
+            totalLatency = 0;
+        }
+
+        private double meanLatencySinceReset() {
+            return completed == 0 ? 0 : (double) totalLatency / completed;
+        }
+
+        // Completed calls per second
+        private double throughputSinceReset() {
+            return completed / ((double) (now - statsStartedAt) / TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+        private final long time;
+        private final AdaptiveConcurrencyLimit.Permit permit;
+        private final long latency;
+
+        private Event(long time, AdaptiveConcurrencyLimit.Permit permit, long latency) {
+            this.time = time;
+            this.permit = permit;
+            this.latency = latency;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return Long.compare(time, other.time);
+        }
+    }
+}
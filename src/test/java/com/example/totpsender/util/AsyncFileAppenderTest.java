@@ -0,0 +1,150 @@
+package com.example.totpsender.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncFileAppenderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void append_ShouldWriteEveryEntryIntactFromConcurrentProducers() throws Exception {
+        Path file = tempDir.resolve("codes.txt");
+        AsyncFileAppender appender = new AsyncFileAppender(file, true, 10000, 64,
+                AsyncFileAppender.FsyncPolicy.INTERVAL, 50, 0, 0, 10);
+
+        ExecutorService producers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int p = 0; p < 8; p++) {
+                int producer = p;
+                results.add(producers.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        assertTrue(appender.append("producer-" + producer + " entry-" + i + "\n"));
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            producers.shutdownNow();
+        }
+        appender.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(4000, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.matches("producer-\\d entry-\\d+")));
+        assertEquals(4000, Set.copyOf(lines).size());
+        assertEquals(0, appender.getDroppedEntries());
+    }
+
+    @Test
+    void append_ShouldRotateBySizeWithoutSplittingEntries() throws IOException {
+        Path file = tempDir.resolve("codes.txt");
+        AsyncFileAppender appender = new AsyncFileAppender(file, true, 1000, 16,
+                AsyncFileAppender.FsyncPolicy.BATCH, 0, 100, 0, 100);
+
+        for (int i = 0; i < 50; i++) {
+            appender.append(String.format("entry-%04d%n", i));
+        }
+        appender.close();
+
+        List<Path> files = files("codes.txt");
+        assertTrue(files.size() > 1, "Expected rotated files, got " + files);
+        long totalLines = 0;
+        for (Path path : files) {
+            assertTrue(Files.size(path) <= 100, path + " is " + Files.size(path) + " bytes");
+            List<String> lines = Files.readAllLines(path);
+            assertTrue(lines.stream().allMatch(line -> line.matches("entry-\\d{4}")));
+            totalLines += lines.size();
+        }
+        assertEquals(50, totalLines);
+    }
+
+    @Test
+    void append_ShouldKeepOnlyConfiguredNumberOfRotatedFiles() throws IOException {
+        Path file = tempDir.resolve("codes.txt");
+        AsyncFileAppender appender = new AsyncFileAppender(file, true, 1000, 16,
+                AsyncFileAppender.FsyncPolicy.NONE, 0, 30, 0, 2);
+
+        for (int i = 0; i < 40; i++) {
+            appender.append(String.format("entry-%04d%n", i));
+        }
+        appender.close();
+
+        // Active file plus two rotated ones; the newest entry is in the active file
+        assertEquals(3, files("codes.txt").size());
+        assertTrue(Files.readString(file).contains("entry-0039"));
+    }
+
+    @Test
+    void append_ShouldRejectEntriesAfterClose() throws IOException {
+        Path file = tempDir.resolve("codes.txt");
+        Files.writeString(file, "old\n");
+        AsyncFileAppender appender = new AsyncFileAppender(file, false, 10, 10,
+                AsyncFileAppender.FsyncPolicy.BATCH, 0, 0, 0, 0);
+        appender.append("new\n");
+        appender.close();
+
+        assertFalse(appender.append("late\n"));
+        assertEquals(1, appender.getDroppedEntries());
+        assertEquals("new\n", Files.readString(file));
+    }
+
+    @Test
+    void submit_ShouldCompleteOnceTheEntryIsWritten() throws Exception {
+        Path file = tempDir.resolve("codes.txt");
+        AsyncFileAppender appender = new AsyncFileAppender(file, true, 10, 10,
+                AsyncFileAppender.FsyncPolicy.BATCH, 0, 0, 0, 0);
+
+        appender.submit("first\n").get(5, TimeUnit.SECONDS);
+
+        assertEquals("first\n", Files.readString(file));
+        appender.close();
+    }
+
+    @Test
+    void submit_ShouldFailTheEntryWhenTheWriteFails() throws Exception {
+        // The second entry rotates the file; with the file gone the move, and so the write, fails
+        Path file = tempDir.resolve("codes.txt");
+        AsyncFileAppender appender = new AsyncFileAppender(file, true, 10, 10,
+                AsyncFileAppender.FsyncPolicy.NONE, 0, 15, 0, 0);
+        appender.submit("0123456789\n").get(5, TimeUnit.SECONDS);
+        Files.delete(file);
+
+        CompletableFuture<Void> written = appender.submit("next\n");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> written.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals(1, appender.getDroppedEntries());
+        appender.close();
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> entries = Files.list(tempDir)) {
+            return entries.filter(path -> path.getFileName().toString().startsWith(prefix))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
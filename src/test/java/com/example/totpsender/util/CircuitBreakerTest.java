@@ -0,0 +1,66 @@
+package com.example.totpsender.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final List<String> transitions = new ArrayList<>();
+
+    private CircuitBreaker breaker(int failureThreshold, long openMillis) {
+        return new CircuitBreaker(failureThreshold, openMillis, (from, to) -> transitions.add(from + "->" + to));
+    }
+
+    @Test
+    void onFailure_ShouldOpenAfterConsecutiveFailures() {
+        CircuitBreaker breaker = breaker(3, 60_000);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.isCallPermitted());
+        assertTrue(breaker.getRemainingOpenMillis() > 0);
+        assertEquals(List.of("CLOSED->OPEN"), transitions);
+    }
+
+    @Test
+    void tryAcquire_ShouldLetOneTrialThroughAfterOpenDuration() throws InterruptedException {
+        CircuitBreaker breaker = breaker(1, 50);
+        breaker.onFailure();
+        Thread.sleep(80);
+
+        assertTrue(breaker.isCallPermitted());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(), "Only one trial at a time");
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+    }
+
+    @Test
+    void onFailure_ShouldReopenWhenTrialFails() throws InterruptedException {
+        CircuitBreaker breaker = breaker(1, 50);
+        breaker.onFailure();
+        Thread.sleep(80);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN"), transitions);
+    }
+}
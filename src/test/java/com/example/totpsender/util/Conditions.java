@@ -0,0 +1,26 @@
+package com.example.totpsender.util;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Polling for tests that wait on background threads
+public final class Conditions {
+
+    private static final long TIMEOUT_NANOS = 10_000_000_000L;
+    private static final long POLL_MILLIS = 5;
+
+    private Conditions() {
+    }
+
+    // Fails the test if the condition does not hold within 10 seconds
+    public static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not reached in time");
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.totpsender.util;
+
+import com.example.totpsender.model.UserPrincipal;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilTest {
+
+    private final JwtUtil jwtUtil = new JwtUtil(new SimpleMeterRegistry());
+
+    @Test
+    void parseToken_ShouldReturnPrincipalFromClaims() {
+        String token = jwtUtil.generateToken(UUID.randomUUID(), "testuser", "USER");
+
+        Optional<UserPrincipal> principal = jwtUtil.parseToken(token);
+
+        assertTrue(principal.isPresent());
+        assertEquals("testuser", principal.get().getUsername());
+        assertEquals("USER", principal.get().getRole());
+        assertFalse(principal.get().isAdmin());
+    }
+
+    @Test
+    void parseToken_ShouldReturnUserIdFromCurrentTokens() {
+        UUID userId = UUID.randomUUID();
+        String token = jwtUtil.generateToken(userId, "testuser", "ADMIN");
+
+        UserPrincipal principal = jwtUtil.parseToken(token).orElseThrow();
+
+        assertEquals(userId, principal.getUserId());
+        assertTrue(principal.isAdmin());
+    }
+
+    @Test
+    void parseToken_ShouldLeaveUserIdEmptyForLegacyTokens() {
+        // Signed like the tokens issued before version 2, without "uid" and "ver"
+        String secret = PropertiesLoader.loadProperties("jwt.properties").getProperty("jwt.secret");
+        String token = Jwts.builder()
+                .subject("testuser")
+                .claim("role", "USER")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(secret.getBytes()))
+                .compact();
+
+        assertNull(jwtUtil.parseToken(token).orElseThrow().getUserId());
+    }
+
+    @Test
+    void parseToken_ShouldReturnSamePrincipalForRepeatedToken() {
+        String token = jwtUtil.generateToken(UUID.randomUUID(), "testuser", "USER");
+
+        UserPrincipal first = jwtUtil.parseToken(token).orElseThrow();
+        UserPrincipal second = jwtUtil.parseToken(token).orElseThrow();
+
+        assertSame(first, second, "Second parse should be served from the verified token cache");
+    }
+
+    @Test
+    void parseToken_ShouldRejectTamperedToken() {
+        String token = jwtUtil.generateToken(UUID.randomUUID(), "testuser", "USER");
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertTrue(jwtUtil.parseToken(tampered).isEmpty());
+        assertTrue(jwtUtil.parseToken("not-a-token").isEmpty());
+    }
+}
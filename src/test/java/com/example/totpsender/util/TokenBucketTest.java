@@ -0,0 +1,53 @@
+package com.example.totpsender.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void tryAcquire_ShouldTakeOnlyTokensAvailableNow() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void tryAcquire_ShouldSucceedAgainAfterRefill() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        Thread.sleep(50);
+
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void pause_ShouldRefuseUntilThePauseEnds() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+
+        bucket.pause(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertFalse(bucket.tryAcquire(), "A paused bucket should not hand out its remaining tokens");
+        Thread.sleep(150);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void pause_ShouldNotShortenALongerPause() {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+
+        bucket.pause(10 * SECOND);
+        bucket.pause(1);
+
+        assertFalse(bucket.tryAcquire());
+    }
+}